@@ -0,0 +1,222 @@
+package com.kanishk.tweetstream.data;
+
+import java.io.File;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.kanishk.tweetstream.model.TweetRecord;
+import com.kanishk.tweetstream.task.TweetRecordParser;
+
+/**
+ * The Class IngestAllocationBenchmark. Counts the objects allocated per tweet
+ * from a stream line to a database row, on the earlier path through Gson and
+ * content values and on the path through pooled records and a compiled
+ * statement. Results are written to the log.
+ */
+public class IngestAllocationBenchmark extends AndroidTestCase {
+
+	/** The number of tweets ingested by each path. */
+	private static final int TWEETS = 5000;
+
+	/** The number of distinct users of the tweets. */
+	private static final int USERS = 500;
+
+	/** The number of tweets ingested before counting, loading the classes. */
+	private static final int WARM_UP = 500;
+
+	/** The log tag. */
+	private static final String TAG = IngestAllocationBenchmark.class.getSimpleName();
+
+	/** The benchmark database. */
+	private SQLiteDatabase db;
+
+	/** The benchmark database file. */
+	private File dbFile;
+
+	/** The stream lines. */
+	private char[][] lines;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dbFile = getContext().getDatabasePath("ingest_benchmark");
+		dbFile.getParentFile().mkdirs();
+		SQLiteDatabase.deleteDatabase(dbFile);
+		db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+		db.execSQL(TweetContentProvider.CREATE_QUERY);
+		lines = new char[TWEETS][];
+		for (int i = 0; i < TWEETS; i++) {
+			lines[i] = createLine(i).toCharArray();
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		db.close();
+		SQLiteDatabase.deleteDatabase(dbFile);
+		super.tearDown();
+	}
+
+	/**
+	 * Compares the allocations of both paths.
+	 */
+	public void testAllocationsPerTweet() {
+		Gson gson = new Gson();
+		ingestWithGson(gson, WARM_UP);
+		startCounting();
+		ingestWithGson(gson, TWEETS);
+		long[] before = stopCounting();
+
+		TweetRecordParser parser = new TweetRecordParser(TweetRecord.USER_STRINGS);
+		SQLiteStatement statement = db.compileStatement("INSERT INTO "
+				+ TweetDataConstants.TWEET_TABLE + " (screen_name, name, image_url, tweet) "
+				+ "VALUES (?, ?, ?, ?)");
+		try {
+			ingestWithRecords(parser, statement, WARM_UP);
+			startCounting();
+			ingestWithRecords(parser, statement, TWEETS);
+		} finally {
+			statement.close();
+		}
+		long[] after = stopCounting();
+
+		report("gson and content values", before);
+		report("pooled records", after);
+		assertTrue(after[0] < before[0]);
+	}
+
+	/**
+	 * Ingests tweets the earlier way. Each line is read as a string, parsed
+	 * into new objects by Gson and inserted as content values.
+	 *
+	 * @param gson the gson
+	 * @param count the number of tweets
+	 */
+	private void ingestWithGson(Gson gson, int count) {
+		db.beginTransaction();
+		try {
+			for (int i = 0; i < count; i++) {
+				String line = new String(lines[i], 0, lines[i].length);
+				LegacyTweet tweet = gson.fromJson(line, LegacyTweet.class);
+				ContentValues value = new ContentValues();
+				value.put(TweetDataConstants.FIELD_SCREEN_NAME, tweet.user.screen_name);
+				value.put(TweetDataConstants.FIELD_NAME, tweet.user.name);
+				value.put(TweetDataConstants.FIELD_IMAGE_URL, tweet.user.profile_image_url);
+				value.put(TweetDataConstants.FIELD_TWEET_TEXT, tweet.text);
+				db.insert(TweetDataConstants.TWEET_TABLE, null, value);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Ingests tweets through pooled records and a compiled statement.
+	 *
+	 * @param parser the parser
+	 * @param statement the insert statement
+	 * @param count the number of tweets
+	 */
+	private void ingestWithRecords(TweetRecordParser parser, SQLiteStatement statement,
+			int count) {
+		db.beginTransaction();
+		try {
+			for (int i = 0; i < count; i++) {
+				TweetRecord record = TweetRecord.obtain();
+				assertTrue(parser.parse(lines[i], lines[i].length, record));
+				statement.bindString(1, record.getScreenName());
+				statement.bindString(2, record.getName());
+				statement.bindString(3, record.getImageUrl());
+				statement.bindString(4, record.getText());
+				statement.executeInsert();
+				record.recycle();
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Starts counting the allocations of this thread.
+	 */
+	@SuppressWarnings("deprecation")
+	private static void startCounting() {
+		Debug.resetThreadAllocCount();
+		Debug.resetThreadAllocSize();
+		Debug.startAllocCounting();
+	}
+
+	/**
+	 * Stops counting the allocations of this thread.
+	 *
+	 * @return the number and size(bytes) of the objects allocated
+	 */
+	@SuppressWarnings("deprecation")
+	private static long[] stopCounting() {
+		Debug.stopAllocCounting();
+		return new long[] {Debug.getThreadAllocCount(), Debug.getThreadAllocSize()};
+	}
+
+	/**
+	 * Creates a stream line of a tweet, with the fields the stream sends
+	 * around the ones read.
+	 *
+	 * @param number the number of the tweet
+	 * @return the line
+	 */
+	private static String createLine(int number) {
+		int user = number % USERS;
+		return "{\"created_at\":\"Mon Oct 19 10:00:00 +0000 2026\",\"id\":" + (600000000000L + number)
+				+ ",\"id_str\":\"" + (600000000000L + number) + "\",\"text\":\"Benchmark tweet "
+				+ number + " with some typical text \\u00e9 length\",\"source\":\"web\","
+				+ "\"truncated\":false,\"in_reply_to_status_id\":null,\"user\":{\"id\":" + user
+				+ ",\"name\":\"User " + user + "\",\"screen_name\":\"user" + user + "\","
+				+ "\"location\":null,\"followers_count\":" + (user * 7) + ",\"verified\":false,"
+				+ "\"profile_image_url\":\"http://pbs.twimg.com/profile_images/" + user
+				+ "_normal.png\"},\"entities\":{\"hashtags\":[],\"urls\":[],"
+				+ "\"user_mentions\":[]},\"retweet_count\":0,\"lang\":\"en\"}";
+	}
+
+	/**
+	 * Reports the results to the log.
+	 */
+	private static void report(String mode, long[] allocations) {
+		Log.i(TAG, mode + ": " + allocations[0] / TWEETS + " objects, "
+				+ allocations[1] / TWEETS + " bytes allocated per tweet");
+	}
+
+	/**
+	 * The Class LegacyTweet. The tweet as parsed by Gson before pooled records.
+	 */
+	private static class LegacyTweet {
+
+		/** The text. */
+		String text;
+
+		/** The user. */
+		LegacyUser user;
+	}
+
+	/**
+	 * The Class LegacyUser. The user as parsed by Gson before pooled records.
+	 */
+	private static class LegacyUser {
+
+		/** The screen name. */
+		String screen_name;
+
+		/** The name. */
+		String name;
+
+		/** The profile image url. */
+		String profile_image_url;
+	}
+}
@@ -0,0 +1,122 @@
+package com.kanishk.tweetstream.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * The Class SchemaMigrationsTest. Builds a fixture database for every earlier
+ * schema version and checks that opening it upgrades in place and keeps the
+ * cached tweets.
+ */
+public class SchemaMigrationsTest extends AndroidTestCase {
+
+	/** The Constant DB_NAME. */
+	private static final String DB_NAME = "migration_fixture";
+
+	/** The number of rows in each fixture table. */
+	private static final int ROWS = 50;
+
+	/**
+	 * The schema of each earlier version, indexed by version - 1. New versions
+	 * add the schema of the version they replace.
+	 */
+	private static final String[][] FIXTURES = {
+		{
+			"CREATE TABLE IF NOT EXISTS tweets (_id INTEGER PRIMARY KEY autoincrement, "
+					+ "screen_name TEXT, name TEXT, image_url TEXT, tweet TEXT)",
+			"CREATE TABLE IF NOT EXISTS TweetSearch (_id INTEGER PRIMARY KEY autoincrement, "
+					+ "screen_name TEXT, name TEXT, image_url TEXT, tweet TEXT)"
+		}
+	};
+
+	@Override
+	protected void tearDown() throws Exception {
+		getContext().deleteDatabase(DB_NAME);
+		super.tearDown();
+	}
+
+	/**
+	 * Checks that there's a fixture and a migration for every earlier version.
+	 */
+	public void testEveryVersionHasMigration() {
+		assertEquals(TweetDataConstants.VERSION - 1, FIXTURES.length);
+		for (int version = 1; version < TweetDataConstants.VERSION; version++) {
+			assertTrue(SchemaMigrations.canUpgrade(version, TweetDataConstants.VERSION));
+		}
+	}
+
+	/**
+	 * Upgrades each fixture to the current version.
+	 */
+	public void testUpgradeKeepsTweets() {
+		for (int version = 1; version < TweetDataConstants.VERSION; version++) {
+			getContext().deleteDatabase(DB_NAME);
+			createFixture(version);
+			TweetContentProvider.DBHelper helper = new TweetContentProvider.DBHelper(
+					getContext(), DB_NAME);
+			SQLiteDatabase db = helper.getWritableDatabase();
+			try {
+				assertEquals(TweetDataConstants.VERSION, db.getVersion());
+				assertRows(db, TweetDataConstants.TWEET_TABLE, version);
+				assertRows(db, TweetDataConstants.SEARCH_TABLE, version);
+				db.query(ShardedTweetStore.SHARD_TABLE, null, null, null, null,
+						null, null).close();
+			} finally {
+				helper.close();
+			}
+		}
+	}
+
+	/**
+	 * Creates the fixture database of a version.
+	 *
+	 * @param version the version
+	 */
+	private void createFixture(int version) {
+		SQLiteDatabase db = getContext().openOrCreateDatabase(DB_NAME, 0, null);
+		try {
+			for (String query : FIXTURES[version - 1]) {
+				db.execSQL(query);
+			}
+			insertRows(db, TweetDataConstants.TWEET_TABLE, ROWS, version);
+			insertRows(db, TweetDataConstants.SEARCH_TABLE, ROWS, version);
+			db.setVersion(version);
+		} finally {
+			db.close();
+		}
+	}
+
+	/**
+	 * Inserts numbered rows in a table.
+	 */
+	private static void insertRows(SQLiteDatabase db, String table, int rows, int version) {
+		db.beginTransaction();
+		try {
+			for (int i = 0; i < rows; i++) {
+				db.execSQL("INSERT INTO " + table + " (screen_name, name, image_url, tweet) "
+						+ "VALUES (?, ?, ?, ?)", new Object[] {"user" + i, "User " + i,
+						"http://example.com/" + i + "_normal.png", "v" + version + " tweet " + i});
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Asserts that the fixture rows of a table are all there.
+	 */
+	private static void assertRows(SQLiteDatabase db, String table, int version) {
+		Cursor cursor = db.query(table, TweetDataConstants.COLUMNS, null, null,
+				null, null, TweetDataConstants.FIELD_ID);
+		try {
+			assertEquals(ROWS, cursor.getCount());
+			cursor.moveToLast();
+			assertEquals("v" + version + " tweet " + (ROWS - 1), cursor.getString(
+					cursor.getColumnIndex(TweetDataConstants.FIELD_TWEET_TEXT)));
+		} finally {
+			cursor.close();
+		}
+	}
+}
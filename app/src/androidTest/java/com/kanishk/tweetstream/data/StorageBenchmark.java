@@ -0,0 +1,147 @@
+package com.kanishk.tweetstream.data;
+
+import java.io.File;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * The Class StorageBenchmark. Compares the single tweets table with the time
+ * bucketed storage on sustained ingest and on expiry of the oldest hour, with
+ * one million stored tweets. Results are written to the log.
+ */
+public class StorageBenchmark extends AndroidTestCase {
+
+	/** The number of tweets stored. */
+	private static final int ROWS = 1000000;
+
+	/** The number of tweets inserted per transaction. */
+	private static final int BATCH = 500;
+
+	/** The hours of data stored, one bucket per hour. */
+	private static final int HOURS = TweetDataConstants.SHARD_COUNT;
+
+	/** The log tag. */
+	private static final String TAG = StorageBenchmark.class.getSimpleName();
+
+	/** The benchmark database. */
+	private SQLiteDatabase db;
+
+	/** The benchmark database file. */
+	private File dbFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dbFile = getContext().getDatabasePath("storage_benchmark");
+		dbFile.getParentFile().mkdirs();
+		SQLiteDatabase.deleteDatabase(dbFile);
+		db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		db.close();
+		SQLiteDatabase.deleteDatabase(dbFile);
+		super.tearDown();
+	}
+
+	/**
+	 * Benchmarks the single table. Expiry deletes the oldest hour row by row.
+	 */
+	public void testSingleTable() {
+		db.execSQL(TweetContentProvider.CREATE_QUERY);
+		long start = SystemClock.elapsedRealtime();
+		long maxBatch = 0;
+		for (int i = 0; i < ROWS; i += BATCH) {
+			long batchStart = SystemClock.elapsedRealtime();
+			ContentValues[] values = createBatch(i);
+			db.beginTransaction();
+			try {
+				for (int j = 0; j < BATCH; j++) {
+					db.insert(TweetDataConstants.TWEET_TABLE, null, values[j]);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			maxBatch = Math.max(maxBatch, SystemClock.elapsedRealtime() - batchStart);
+		}
+		long ingest = SystemClock.elapsedRealtime() - start;
+		start = SystemClock.elapsedRealtime();
+		int deleted = db.delete(TweetDataConstants.TWEET_TABLE,
+				TweetDataConstants.FIELD_ID + " <= ?",
+				new String[] {String.valueOf(ROWS / HOURS)});
+		long expiry = SystemClock.elapsedRealtime() - start;
+		report("single table", ingest, maxBatch, expiry);
+		assertEquals(ROWS / HOURS, deleted);
+	}
+
+	/**
+	 * Benchmarks the time bucketed storage. Expiry drops the oldest bucket.
+	 */
+	public void testShardedTables() {
+		db.execSQL(TweetContentProvider.CREATE_QUERY);
+		db.execSQL(ShardedTweetStore.CREATE_SHARD_QUERY);
+		ShardedTweetStore store = new ShardedTweetStore(TweetDataConstants.TWEET_TABLE,
+				TweetDataConstants.SHARD_DURATION, HOURS);
+		long[] ids = new long[BATCH];
+		long start = SystemClock.elapsedRealtime();
+		long maxBatch = 0;
+		for (int i = 0; i < ROWS; i += BATCH) {
+			long batchStart = SystemClock.elapsedRealtime();
+			store.insert(db, getTime(i), ids, createBatch(i));
+			maxBatch = Math.max(maxBatch, SystemClock.elapsedRealtime() - batchStart);
+		}
+		long ingest = SystemClock.elapsedRealtime() - start;
+		start = SystemClock.elapsedRealtime();
+		int dropped = store.expire(db, getTime(ROWS));
+		long expiry = SystemClock.elapsedRealtime() - start;
+		report("sharded tables", ingest, maxBatch, expiry);
+		assertEquals(1, dropped);
+	}
+
+	/**
+	 * Gets the simulated insert time of a row. The rows are spread evenly over
+	 * the stored hours.
+	 *
+	 * @param row the row number
+	 * @return the time(milliseconds)
+	 */
+	private static long getTime(int row) {
+		return (long) row * HOURS * TweetDataConstants.SHARD_DURATION / ROWS;
+	}
+
+	/**
+	 * Creates a batch of tweet rows.
+	 *
+	 * @param first the number of the first row
+	 * @return the values
+	 */
+	private static ContentValues[] createBatch(int first) {
+		ContentValues[] values = new ContentValues[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			ContentValues value = new ContentValues();
+			value.put(TweetDataConstants.FIELD_SCREEN_NAME, "user" + (first + i) % 5000);
+			value.put(TweetDataConstants.FIELD_NAME, "User " + (first + i) % 5000);
+			value.put(TweetDataConstants.FIELD_IMAGE_URL,
+					"https://pbs.twimg.com/profile_images/" + (first + i) % 5000 + "_normal.png");
+			value.put(TweetDataConstants.FIELD_TWEET_TEXT,
+					"Benchmark tweet number " + (first + i) + " with some typical text length");
+			values[i] = value;
+		}
+		return values;
+	}
+
+	/**
+	 * Reports the results to the log.
+	 */
+	private void report(String mode, long ingest, long maxBatch, long expiry) {
+		Log.i(TAG, mode + ": ingest " + ingest + " ms (" + (ROWS * 1000L / Math.max(ingest, 1))
+				+ " tweets/s, slowest batch " + maxBatch + " ms), expiry of the oldest hour "
+				+ expiry + " ms, file " + dbFile.length() / 1024 + " KB");
+	}
+}
@@ -0,0 +1,157 @@
+package com.kanishk.tweetstream.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+
+/**
+ * The Class TweetWindowTest. Cuts a full window down to a smaller capacity
+ * around a row and checks the rows dropped at each end. The window reads a
+ * stand-in provider holding numbered rows, newest first.
+ */
+public class TweetWindowTest extends AndroidTestCase {
+
+	/** The Constant AUTHORITY. The authority of the stand-in provider. */
+	private static final String AUTHORITY = "com.kanishk.tweetstream.test";
+
+	/** The Constant DATA_URI. */
+	private static final Uri DATA_URI = Uri.parse("content://" + AUTHORITY + "/tweets");
+
+	/** The Constant ROWS. The number of rows of the table, with ids 1 to ROWS. */
+	private static final int ROWS = 1000;
+
+	/** The Constant CAPACITY. The capacity of the full window. */
+	private static final int CAPACITY = 300;
+
+	/** The Constant CUT_CAPACITY. The capacity the window is cut to. */
+	private static final int CUT_CAPACITY = 100;
+
+	/** The window, holding the newest {@link #CAPACITY} rows. */
+	private TweetWindow window;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		MockContentResolver resolver = new MockContentResolver();
+		resolver.addProvider(AUTHORITY, new RowsProvider());
+		window = new TweetWindow(resolver, DATA_URI, CAPACITY);
+		TweetWindow.Change change = window.refreshHead(CAPACITY);
+		assertEquals(CAPACITY, change.cursor.getCount());
+	}
+
+	/**
+	 * Checks the rows dropped from the top for each anchor position.
+	 */
+	public void testDroppedTop() {
+		// Rows above the anchor are kept up to a quarter of the capacity
+		assertEquals(0, TweetWindow.getDroppedTop(CAPACITY, CUT_CAPACITY, 0));
+		assertEquals(0, TweetWindow.getDroppedTop(CAPACITY, CUT_CAPACITY, 25));
+		assertEquals(1, TweetWindow.getDroppedTop(CAPACITY, CUT_CAPACITY, 26));
+		assertEquals(125, TweetWindow.getDroppedTop(CAPACITY, CUT_CAPACITY, 150));
+		// No more than the overflow, the anchor then sits lower in the window
+		assertEquals(200, TweetWindow.getDroppedTop(CAPACITY, CUT_CAPACITY, 225));
+		assertEquals(200, TweetWindow.getDroppedTop(CAPACITY, CUT_CAPACITY, 299));
+	}
+
+	/**
+	 * Checks a window anchored at the top only drops rows from the bottom and
+	 * stays at the head.
+	 */
+	public void testCutAtTop() {
+		TweetWindow.Change change = window.setCapacity(CUT_CAPACITY, ROWS);
+		assertCut(change, 0, 200, ROWS);
+		assertTrue(window.isAtHead());
+		assertTrue(change.hasOlder);
+	}
+
+	/**
+	 * Checks a window anchored in the middle drops rows at both ends, keeping
+	 * a quarter of the capacity above the anchor.
+	 */
+	public void testCutInMiddle() {
+		long anchorId = ROWS - 150;
+		TweetWindow.Change change = window.setCapacity(CUT_CAPACITY, anchorId);
+		assertCut(change, 125, 75, ROWS - 125);
+		assertEquals(anchorId, getId(change.cursor, CUT_CAPACITY / 4));
+		assertFalse(window.isAtHead());
+	}
+
+	/**
+	 * Checks a window anchored near the bottom only drops rows from the top.
+	 */
+	public void testCutAtBottom() {
+		TweetWindow.Change change = window.setCapacity(CUT_CAPACITY, ROWS - 290);
+		assertCut(change, 200, 0, ROWS - 200);
+		assertFalse(window.isAtHead());
+	}
+
+	/**
+	 * Checks a window whose anchor row is gone drops rows from the bottom.
+	 */
+	public void testCutWithoutAnchor() {
+		TweetWindow.Change change = window.setCapacity(CUT_CAPACITY, -1);
+		assertCut(change, 0, 200, ROWS);
+		assertTrue(window.isAtHead());
+	}
+
+	/**
+	 * Checks a capacity at least the window size drops nothing.
+	 */
+	public void testNoCut() {
+		assertNull(window.setCapacity(CAPACITY, ROWS - 150));
+		assertNull(window.setCapacity(CAPACITY * 2, ROWS - 150));
+	}
+
+	/**
+	 * Asserts the rows dropped by a cut and the rows left.
+	 *
+	 * @param change the change
+	 * @param removedTop the rows dropped from the top
+	 * @param removedBottom the rows dropped from the bottom
+	 * @param firstId the id of the first row left
+	 */
+	private static void assertCut(TweetWindow.Change change, int removedTop,
+			int removedBottom, long firstId) {
+		assertNotNull(change);
+		assertEquals(removedTop, change.removedTop);
+		assertEquals(removedBottom, change.removedBottom);
+		assertEquals(0, change.addedTop);
+		assertEquals(0, change.addedBottom);
+		assertEquals(CUT_CAPACITY, change.cursor.getCount());
+		assertEquals(firstId, getId(change.cursor, 0));
+		assertEquals(firstId - CUT_CAPACITY + 1, getId(change.cursor, CUT_CAPACITY - 1));
+		// Every row has its own image
+		assertEquals(removedTop + removedBottom, change.released.size());
+	}
+
+	/**
+	 * Gets the id of a row of a cursor.
+	 */
+	private static long getId(Cursor cursor, int position) {
+		assertTrue(cursor.moveToPosition(position));
+		return cursor.getLong(cursor.getColumnIndex(TweetDataConstants.FIELD_ID));
+	}
+
+	/**
+	 * The Class RowsProvider. Serves the newest rows of a numbered table, as
+	 * the head queries of the window ask for them.
+	 */
+	private static class RowsProvider extends MockContentProvider {
+
+		@Override
+		public Cursor query(Uri uri, String[] projection, String selection,
+				String[] selectionArgs, String sortOrder) {
+			int limit = Integer.parseInt(sortOrder.substring(sortOrder.lastIndexOf(' ') + 1));
+			MatrixCursor cursor = new MatrixCursor(TweetDataConstants.COLUMNS, limit);
+			for (int id = ROWS; id > ROWS - limit && id > 0; id--) {
+				cursor.addRow(new Object[] {"user" + id, "User " + id,
+						"http://example.com/" + id + "_normal.png", "Tweet " + id,
+						String.valueOf(id)});
+			}
+			return cursor;
+		}
+	}
+}
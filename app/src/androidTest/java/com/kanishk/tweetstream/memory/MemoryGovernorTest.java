@@ -0,0 +1,62 @@
+package com.kanishk.tweetstream.memory;
+
+import junit.framework.TestCase;
+
+import android.content.ComponentCallbacks2;
+
+/**
+ * The Class MemoryGovernorTest. Checks the stage each trim level of the system
+ * maps to, and the share of a full size kept at each stage.
+ */
+public class MemoryGovernorTest extends TestCase {
+
+	/**
+	 * Checks the trim levels of a running app.
+	 */
+	public void testRunningLevels() {
+		assertEquals(MemoryGovernor.STAGE_REDUCED, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+		assertEquals(MemoryGovernor.STAGE_LOW, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+		assertEquals(MemoryGovernor.STAGE_CRITICAL, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+	}
+
+	/**
+	 * Checks the trim levels of a hidden or cached app.
+	 */
+	public void testBackgroundLevels() {
+		assertEquals(MemoryGovernor.STAGE_REDUCED, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+		assertEquals(MemoryGovernor.STAGE_REDUCED, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+		assertEquals(MemoryGovernor.STAGE_LOW, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_MODERATE));
+		assertEquals(MemoryGovernor.STAGE_CRITICAL, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+	}
+
+	/**
+	 * Checks levels between the known ones map to the stage of the level
+	 * below them.
+	 */
+	public void testUnknownLevels() {
+		assertEquals(MemoryGovernor.STAGE_REDUCED, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_BACKGROUND + 1));
+		assertEquals(MemoryGovernor.STAGE_LOW, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_MODERATE + 1));
+		assertEquals(MemoryGovernor.STAGE_CRITICAL, MemoryGovernor.getStage(
+				ComponentCallbacks2.TRIM_MEMORY_COMPLETE + 1));
+	}
+
+	/**
+	 * Checks the share of a full size kept at each stage.
+	 */
+	public void testScale() {
+		assertEquals(300, MemoryGovernor.scale(300, MemoryGovernor.STAGE_NORMAL));
+		assertEquals(150, MemoryGovernor.scale(300, MemoryGovernor.STAGE_REDUCED));
+		assertEquals(75, MemoryGovernor.scale(300, MemoryGovernor.STAGE_LOW));
+		assertEquals(0, MemoryGovernor.scale(300, MemoryGovernor.STAGE_CRITICAL));
+		assertEquals(0, MemoryGovernor.scale(3, MemoryGovernor.STAGE_LOW));
+	}
+}
@@ -0,0 +1,89 @@
+package com.kanishk.tweetstream.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class FrameMonitorTest. Feeds frame durations to the {@link FrameMonitor}
+ * and checks the frames dropped and the tags they are recorded under. The
+ * metrics are shared by the process, so the checks compare their values
+ * before and after each frame.
+ */
+public class FrameMonitorTest extends TestCase {
+
+	/** The Constant INTERVAL. The time(nanoseconds) between two refreshes at 60Hz. */
+	private static final long INTERVAL = 1000000000L / 60;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		FrameMonitor.stop();
+		// Drops the tags marked before the test
+		FrameMonitor.onFrame(INTERVAL, INTERVAL);
+	}
+
+	/**
+	 * Checks the refreshes missed are rounded to the nearest frame.
+	 */
+	public void testDroppedFrames() {
+		assertEquals(0, FrameMonitor.getDroppedFrames(0, INTERVAL));
+		assertEquals(0, FrameMonitor.getDroppedFrames(INTERVAL, INTERVAL));
+		assertEquals(0, FrameMonitor.getDroppedFrames(INTERVAL * 14 / 10, INTERVAL));
+		assertEquals(1, FrameMonitor.getDroppedFrames(INTERVAL * 3 / 2, INTERVAL));
+		assertEquals(1, FrameMonitor.getDroppedFrames(INTERVAL * 2, INTERVAL));
+		assertEquals(1, FrameMonitor.getDroppedFrames(INTERVAL * 24 / 10, INTERVAL));
+		assertEquals(2, FrameMonitor.getDroppedFrames(INTERVAL * 26 / 10, INTERVAL));
+		assertEquals(9, FrameMonitor.getDroppedFrames(INTERVAL * 10, INTERVAL));
+	}
+
+	/**
+	 * Checks a frame is recorded under the tags marked since the previous
+	 * frame, and only once per tag.
+	 */
+	public void testTagAttribution() {
+		LatencyHistogram swap = MetricsRegistry.histogram("frame.duration.cursor_swap", "ms");
+		Counter swapDropped = MetricsRegistry.counter("frame.dropped.cursor_swap");
+		LatencyHistogram image = MetricsRegistry.histogram("frame.duration.image_decode", "ms");
+		LatencyHistogram provider = MetricsRegistry.histogram(
+				"frame.duration.main_thread_provider", "ms");
+		Counter dropped = MetricsRegistry.counter("frame.dropped");
+		Counter janky = MetricsRegistry.counter("frame.janky");
+		long swapCount = swap.getCount();
+		long swapDroppedValue = swapDropped.getValue();
+		long imageCount = image.getCount();
+		long providerCount = provider.getCount();
+		long droppedValue = dropped.getValue();
+		long jankyValue = janky.getValue();
+
+		FrameMonitor.mark(FrameMonitor.TAG_CURSOR_SWAP);
+		FrameMonitor.mark(FrameMonitor.TAG_IMAGE_DECODE);
+		FrameMonitor.mark(FrameMonitor.TAG_CURSOR_SWAP);
+		FrameMonitor.onFrame(INTERVAL * 3, INTERVAL);
+		assertEquals(swapCount + 1, swap.getCount());
+		assertEquals(swapDroppedValue + 2, swapDropped.getValue());
+		assertEquals(imageCount + 1, image.getCount());
+		assertEquals(providerCount, provider.getCount());
+		assertEquals(droppedValue + 2, dropped.getValue());
+		assertEquals(jankyValue + 1, janky.getValue());
+
+		// The tags are cleared by the frame they were recorded under
+		FrameMonitor.onFrame(INTERVAL, INTERVAL);
+		assertEquals(swapCount + 1, swap.getCount());
+		assertEquals(imageCount + 1, image.getCount());
+		assertEquals(jankyValue + 1, janky.getValue());
+	}
+
+	/**
+	 * Checks every frame of a fling is tagged until it ends.
+	 */
+	public void testFlingTag() {
+		LatencyHistogram fling = MetricsRegistry.histogram("frame.duration.fling", "ms");
+		long flingCount = fling.getCount();
+		FrameMonitor.setFlinging(true);
+		FrameMonitor.onFrame(INTERVAL, INTERVAL);
+		FrameMonitor.onFrame(INTERVAL, INTERVAL);
+		assertEquals(flingCount + 2, fling.getCount());
+		FrameMonitor.setFlinging(false);
+		FrameMonitor.onFrame(INTERVAL, INTERVAL);
+		assertEquals(flingCount + 2, fling.getCount());
+	}
+}
@@ -0,0 +1,141 @@
+package com.kanishk.tweetstream.task;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class AdaptiveBatcherTest. Simulates streams at a steady rate against an
+ * {@link AdaptiveBatcher}, closing batches the way {@link TwitterTask} does on
+ * a simulated clock, and checks the batch size the batcher settles at and
+ * that the p99 delivery latency stays under the target.
+ */
+public class AdaptiveBatcherTest extends TestCase {
+
+	/** The Constant TARGET. The target p99 latency(milliseconds). */
+	private static final long TARGET = 1000;
+
+	/** The Constant DURATION. The simulated time(milliseconds) of each rate. */
+	private static final long DURATION = 120 * 1000;
+
+	/** The batcher. */
+	private AdaptiveBatcher batcher;
+
+	/** The simulated time(milliseconds). */
+	private long now;
+
+	/** The arrival time(milliseconds) of the next tweet. */
+	private double nextArrival;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		batcher = new AdaptiveBatcher(TARGET);
+		now = 1000;
+		nextArrival = now;
+	}
+
+	/**
+	 * Checks a burst fills the largest batches.
+	 */
+	public void testBurst() {
+		simulate(1000);
+		assertEquals(AdaptiveBatcher.MAX_BATCH, batcher.getBatchSize());
+		assertTrue("p99 " + batcher.getP99(), batcher.getP99() < TARGET);
+	}
+
+	/**
+	 * Checks a moderate stream gets batches of the tweets arriving within the
+	 * flush delay.
+	 */
+	public void testModerate() {
+		simulate(50);
+		int batchSize = batcher.getBatchSize();
+		assertTrue("batch " + batchSize, batchSize >= 40 && batchSize <= 50);
+		assertTrue("p99 " + batcher.getP99(), batcher.getP99() < TARGET);
+	}
+
+	/**
+	 * Checks a quiet stream gets the smallest batches, closed by the flush
+	 * delay.
+	 */
+	public void testQuiet() {
+		simulate(2);
+		assertEquals(AdaptiveBatcher.MIN_BATCH, batcher.getBatchSize());
+		assertTrue("p99 " + batcher.getP99(), batcher.getP99() < TARGET);
+	}
+
+	/**
+	 * Checks the batcher adapts when the rate drops from a burst to a quiet
+	 * stream.
+	 */
+	public void testRateChanges() {
+		simulate(1000);
+		assertEquals(AdaptiveBatcher.MAX_BATCH, batcher.getBatchSize());
+		simulate(50);
+		int batchSize = batcher.getBatchSize();
+		assertTrue("batch " + batchSize, batchSize >= 40 && batchSize <= 50);
+		assertTrue("p99 " + batcher.getP99(), batcher.getP99() < TARGET);
+		simulate(2);
+		assertEquals(AdaptiveBatcher.MIN_BATCH, batcher.getBatchSize());
+		assertTrue("p99 " + batcher.getP99(), batcher.getP99() < TARGET);
+	}
+
+	/**
+	 * Checks a stream read between pull-style refreshes, which queues a backlog
+	 * of old lines before each batch opens, does not shrink the batches.
+	 */
+	public void testBacklogBetweenRefreshes() {
+		simulate(50);
+		int batchSize = batcher.getBatchSize();
+		double interval = 1000.0 / 50;
+		for (int i = 0; i < 20; i++) {
+			// The lines keep queueing while no batch is open
+			now += 5000;
+			runBatch(interval);
+		}
+		assertTrue("batch " + batcher.getBatchSize(), batcher.getBatchSize() >= batchSize);
+		assertTrue("p99 " + batcher.getP99(), batcher.getP99() < TARGET);
+	}
+
+	/**
+	 * Runs batches for {@link #DURATION} with tweets arriving at a steady rate.
+	 *
+	 * @param rate the tweets per second
+	 */
+	private void simulate(int rate) {
+		double interval = 1000.0 / rate;
+		nextArrival = Math.max(nextArrival, now);
+		long end = now + DURATION;
+		while (now < end) {
+			runBatch(interval);
+		}
+	}
+
+	/**
+	 * Runs a batch: gathers tweets until the batch size is reached or the
+	 * deadline passes, then flushes.
+	 *
+	 * @param interval the time(milliseconds) between two tweets
+	 */
+	private void runBatch(double interval) {
+		int batchSize = batcher.getBatchSize();
+		long[] arrivals = new long[batchSize];
+		int count = 0;
+		long start = now;
+		long deadline = start + AdaptiveBatcher.IDLE_TIMEOUT;
+		while (count < batchSize) {
+			long arrival = (long) nextArrival;
+			if (arrival >= deadline) {
+				now = Math.max(now, deadline);
+				break;
+			}
+			nextArrival += interval;
+			now = Math.max(now, arrival);
+			arrivals[count++] = Math.max(arrival, start);
+			batcher.onArrival(arrival);
+			if (count == 1) {
+				deadline = Math.max(arrival, start) + batcher.getFlushDelay();
+			}
+		}
+		batcher.onFlush(now, arrivals, count);
+	}
+}
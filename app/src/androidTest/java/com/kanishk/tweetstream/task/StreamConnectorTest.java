@@ -0,0 +1,198 @@
+package com.kanishk.tweetstream.task;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+/**
+ * The Class StreamConnectorTest. Reconnects to a local TLS stand-in for the
+ * stream API, first with a new TLS context for every connect as before, then
+ * through one {@link StreamConnector}. The stand-in closes every connection,
+ * so each reconnect needs a handshake. Reconnect latencies are written to the
+ * log.
+ */
+public class StreamConnectorTest extends InstrumentationTestCase {
+
+	/** The number of reconnects. */
+	private static final int RECONNECTS = 10;
+
+	/** The keystore of the stand-in, holding a certificate for localhost. */
+	private static final String KEYSTORE = "standin.p12";
+
+	/** The keystore password. */
+	private static final char[] PASSWORD = "standin".toCharArray();
+
+	/** The log tag. */
+	private static final String TAG = StreamConnectorTest.class.getSimpleName();
+
+	/** The stand-in server socket. */
+	private SSLServerSocket serverSocket;
+
+	/** The stand-in server thread. */
+	private Thread serverThread;
+
+	/** The trust managers trusting the stand-in certificate. */
+	private TrustManager[] trustManagers;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		InputStream input = getInstrumentation().getContext().getAssets().open(KEYSTORE);
+		try {
+			keyStore.load(input, PASSWORD);
+		} finally {
+			input.close();
+		}
+		KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(
+				KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(keyStore, PASSWORD);
+		SSLContext serverContext = SSLContext.getInstance("TLS");
+		serverContext.init(keyManagers.getKeyManagers(), null, null);
+		serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0);
+		serverThread = new Thread(new StandInServer(serverSocket), "stand-in");
+		serverThread.start();
+
+		Certificate certificate = keyStore.getCertificate(keyStore.aliases().nextElement());
+		KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+		trustStore.load(null, null);
+		trustStore.setCertificateEntry("stand-in", certificate);
+		TrustManagerFactory trustFactory = TrustManagerFactory.getInstance(
+				TrustManagerFactory.getDefaultAlgorithm());
+		trustFactory.init(trustStore);
+		trustManagers = trustFactory.getTrustManagers();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		serverSocket.close();
+		serverThread.join();
+		super.tearDown();
+	}
+
+	/**
+	 * Compares reconnects with a new TLS context each time against reconnects
+	 * through a shared connector.
+	 *
+	 * @throws Exception the exception
+	 */
+	public void testReconnectResumesSession() throws Exception {
+		long before = 0;
+		for (int i = 0; i < RECONNECTS; i++) {
+			StreamConnector.ConnectTiming timing = connect(new StreamConnector(trustManagers));
+			assertFalse(timing.isResumed());
+			before += timing.getFirstByteTime();
+		}
+		StreamConnector connector = new StreamConnector(trustManagers);
+		connect(connector);
+		long after = 0;
+		for (int i = 0; i < RECONNECTS; i++) {
+			after += connect(connector).getFirstByteTime();
+		}
+		Log.i(TAG, "Reconnect mean before: " + before / RECONNECTS + "ms, after: "
+				+ after / RECONNECTS + "ms, " + connector);
+		assertEquals(RECONNECTS + 1, connector.getConnectCount());
+		assertEquals(0, connector.getPooledConnectCount());
+		assertTrue(connector.getResumedHandshakeCount() > 0);
+	}
+
+	/**
+	 * Connects to the stand-in and reads the response.
+	 *
+	 * @param connector the connector
+	 * @return the timing of the connect
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private StreamConnector.ConnectTiming connect(StreamConnector connector) throws IOException {
+		URL url = new URL("https://localhost:" + serverSocket.getLocalPort() + "/stream");
+		HttpsURLConnection connection = connector.open(url, 5000);
+		Response response = connector.connect(connection);
+		try {
+			assertTrue(response.isSuccess());
+			assertEquals(StandInServer.BODY, response.streamReader().readLine());
+		} finally {
+			response.releaseResources();
+		}
+		StreamConnector.ConnectTiming timing = response.getConnectTiming();
+		assertNotNull(timing);
+		assertFalse(timing.isPooled());
+		return timing;
+	}
+
+	/**
+	 * The Class StandInServer. Answers each request with a single tweet line
+	 * and closes the connection.
+	 */
+	private static class StandInServer implements Runnable {
+
+		/** The Constant BODY. */
+		static final String BODY = "{\"text\":\"stand-in\",\"user\":{\"screen_name\":\"local\"}}";
+
+		/** The server socket. */
+		private final SSLServerSocket serverSocket;
+
+		/**
+		 * Instantiates a new stand-in server.
+		 *
+		 * @param serverSocket the server socket
+		 */
+		StandInServer(SSLServerSocket serverSocket) {
+			this.serverSocket = serverSocket;
+		}
+
+		@Override
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try {
+					SSLSocket socket = (SSLSocket) serverSocket.accept();
+					try {
+						serve(socket);
+					} finally {
+						socket.close();
+					}
+				} catch (IOException e) {
+					if (!serverSocket.isClosed()) {
+						Log.e(TAG, e.toString());
+					}
+				}
+			}
+		}
+
+		/**
+		 * Reads a request and writes the response.
+		 *
+		 * @param socket the socket
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void serve(SSLSocket socket) throws IOException {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null && !line.isEmpty()) {
+				// Skips the request headers
+			}
+			OutputStream output = socket.getOutputStream();
+			output.write(("HTTP/1.1 200 OK\r\n"
+					+ "Content-Type: application/json\r\n"
+					+ "Connection: close\r\n\r\n"
+					+ BODY + "\r\n").getBytes("UTF-8"));
+			output.flush();
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.kanishk.tweetstream.task;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import com.kanishk.tweetstream.data.TweetContentProvider;
+import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.metrics.LatencyHistogram;
+import com.kanishk.tweetstream.metrics.TweetLatency;
+import com.kanishk.tweetstream.model.TweetRecord;
+
+/**
+ * The Class TweetLatencyReplayTest. Replays recorded stream lines through the
+ * parser and the content provider into the search table, binding the rows
+ * once committed, and checks the latency of each stage against the delivery
+ * target. The provider runs on a test database, leaving the tweets of the app
+ * alone. The histograms are written to the log.
+ */
+public class TweetLatencyReplayTest extends ProviderTestCase2<TweetContentProvider> {
+
+	/** The number of tweets replayed. */
+	private static final int TWEETS = 2000;
+
+	/** The number of tweets per batch. */
+	private static final int BATCH = 100;
+
+	/** The time(milliseconds) the tweets were created before being replayed. */
+	private static final long CREATED_BEFORE = 2000;
+
+	/** The log tag. */
+	private static final String TAG = TweetLatencyReplayTest.class.getSimpleName();
+
+	/** The content resolver. */
+	private ContentResolver resolver;
+
+	/**
+	 * Instantiates a new tweet latency replay test.
+	 */
+	public TweetLatencyReplayTest() {
+		super(TweetContentProvider.class, TweetDataConstants.AUTHORITY);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// Left by an interrupted run; the provider opens it on first use
+		getMockContext().deleteDatabase(TweetDataConstants.DB_NAME);
+		resolver = getMockContentResolver();
+		TweetLatency.reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		TweetLatency.reset();
+		super.tearDown();
+		getMockContext().deleteDatabase(TweetDataConstants.DB_NAME);
+	}
+
+	/**
+	 * Checks that the buckets keep percentiles within an eighth of their value.
+	 */
+	public void testHistogramPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500, histogram.getMean());
+		assertEquals(1000, histogram.getMax());
+		long p50 = histogram.getPercentile(50);
+		assertTrue(p50 >= 500 && p50 <= 500 + 500 / 8);
+		long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 990 && p99 <= 1000);
+		histogram.record(-5);
+		assertEquals(0, histogram.getPercentile(0));
+	}
+
+	/**
+	 * Replays the lines and checks every stage is measured, and that tweets
+	 * reach the database within the delivery target.
+	 */
+	public void testReplayLatency() {
+		char[][] lines = createLines(System.currentTimeMillis() - CREATED_BEFORE);
+		TweetRecordParser parser = new TweetRecordParser(TweetRecord.USER_STRINGS);
+		List<TweetRecord> batch = new ArrayList<>(BATCH);
+		for (int i = 0; i < TWEETS; i++) {
+			long received = SystemClock.uptimeMillis();
+			TweetRecord record = TweetRecord.obtain();
+			assertTrue(parser.parse(lines[i], lines[i].length, record));
+			record.setReceivedTime(received);
+			record.setParsedTime(SystemClock.uptimeMillis());
+			batch.add(record);
+			if (batch.size() == BATCH) {
+				assertEquals(BATCH, TweetContentProvider.insertRecords(resolver,
+						TweetDataConstants.CONTENT_SEARCH_URI, batch));
+				TweetRecord.recycleAll(batch);
+				bindNewest(BATCH);
+			}
+		}
+		for (LatencyHistogram histogram : TweetLatency.ALL) {
+			Log.i(TAG, histogram.toString());
+			assertEquals(histogram.getName(), TWEETS, histogram.getCount());
+		}
+		// The creation times are in seconds, so delivery may be up to a second longer
+		assertTrue(TweetLatency.DELIVERY.getPercentile(50) >= CREATED_BEFORE);
+		assertTrue(TweetLatency.PARSE.getPercentile(99) + TweetLatency.COMMIT.getPercentile(99)
+				< TweetDataConstants.DELIVERY_LATENCY_TARGET);
+	}
+
+	/**
+	 * Checks that records without stamps, as replayed from the journal of an
+	 * earlier process, are written but not measured.
+	 */
+	public void testUnstampedNotMeasured() {
+		char[][] lines = createLines(System.currentTimeMillis() - CREATED_BEFORE);
+		TweetRecordParser parser = new TweetRecordParser(TweetRecord.USER_STRINGS);
+		List<TweetRecord> batch = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			TweetRecord record = TweetRecord.obtain();
+			assertTrue(parser.parse(lines[i], lines[i].length, record));
+			batch.add(record);
+		}
+		assertEquals(BATCH, TweetContentProvider.insertRecords(resolver,
+				TweetDataConstants.CONTENT_SEARCH_URI, batch));
+		TweetRecord.recycleAll(batch);
+		bindNewest(BATCH);
+		for (LatencyHistogram histogram : TweetLatency.ALL) {
+			assertEquals(histogram.getName(), 0, histogram.getCount());
+		}
+	}
+
+	/**
+	 * Checks that records committed without their row ids, as through the
+	 * provider of another process, are measured up to the commit only.
+	 */
+	public void testUnknownIdsMeasuredToCommit() {
+		char[][] lines = createLines(System.currentTimeMillis() - CREATED_BEFORE);
+		TweetRecordParser parser = new TweetRecordParser(TweetRecord.USER_STRINGS);
+		List<TweetRecord> batch = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			TweetRecord record = TweetRecord.obtain();
+			assertTrue(parser.parse(lines[i], lines[i].length, record));
+			record.setReceivedTime(SystemClock.uptimeMillis());
+			record.setParsedTime(SystemClock.uptimeMillis());
+			batch.add(record);
+		}
+		TweetLatency.onCommitted(null, batch);
+		TweetRecord.recycleAll(batch);
+		assertEquals(BATCH, TweetLatency.DELIVERY.getCount());
+		assertEquals(BATCH, TweetLatency.PARSE.getCount());
+		assertEquals(BATCH, TweetLatency.COMMIT.getCount());
+		assertEquals(0, TweetLatency.DISPLAY.getCount());
+		assertEquals(0, TweetLatency.END_TO_END.getCount());
+	}
+
+	/**
+	 * Binds the newest rows of the search table, as the list does once they are
+	 * loaded.
+	 *
+	 * @param count the number of rows
+	 */
+	private void bindNewest(int count) {
+		Cursor cursor = resolver.query(TweetDataConstants.CONTENT_SEARCH_URI,
+				TweetDataConstants.COLUMNS, null, null, TweetDataConstants.ORDER_BY + count);
+		try {
+			int idIndex = cursor.getColumnIndexOrThrow(TweetDataConstants.FIELD_ID);
+			while (cursor.moveToNext()) {
+				TweetLatency.onBound(cursor.getLong(idIndex));
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Creates the stream lines of tweets created at a given time.
+	 *
+	 * @param createdAt the creation time(milliseconds)
+	 * @return the lines
+	 */
+	private static char[][] createLines(long createdAt) {
+		SimpleDateFormat format = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy",
+				Locale.ENGLISH);
+		String created = format.format(new Date(createdAt));
+		char[][] lines = new char[TWEETS][];
+		for (int i = 0; i < TWEETS; i++) {
+			int user = i % 100;
+			lines[i] = ("{\"created_at\":\"" + created + "\",\"id\":" + i + ",\"text\":\"Replayed tweet "
+					+ i + "\",\"user\":{\"id\":" + user + ",\"name\":\"User " + user
+					+ "\",\"screen_name\":\"user" + user + "\",\"profile_image_url\":"
+					+ "\"http://pbs.twimg.com/profile_images/" + user + "_normal.png\"}}")
+					.toCharArray();
+		}
+		return lines;
+	}
+}
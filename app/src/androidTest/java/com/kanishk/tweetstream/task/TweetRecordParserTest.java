@@ -0,0 +1,186 @@
+package com.kanishk.tweetstream.task;
+
+import junit.framework.TestCase;
+
+import com.kanishk.tweetstream.model.StringInterner;
+import com.kanishk.tweetstream.model.TweetRecord;
+
+/**
+ * The Class TweetRecordParserTest. Parses lines as delivered by the stream API
+ * and checks the fields read into the record.
+ */
+public class TweetRecordParserTest extends TestCase {
+
+	/** The Constant CREATED_AT. The creation time of the test tweets. */
+	private static final long CREATED_AT = 1219842525000L;
+
+	/** The Constant IMAGE_URL. The profile image url of the test user. */
+	private static final String IMAGE_URL =
+			"http://pbs.twimg.com/profile_images/1234/avatar_normal.png";
+
+	/** The Constant USER. The user object of the test tweets. */
+	private static final String USER = "{\"id\":6253282,\"id_str\":\"6253282\","
+			+ "\"name\":\"Twitter API\",\"screen_name\":\"twitterapi\","
+			+ "\"location\":\"San Francisco, CA\",\"url\":null,"
+			+ "\"entities\":{\"description\":{\"urls\":[]}},\"protected\":false,"
+			+ "\"followers_count\":6133636,\"verified\":true,"
+			+ "\"profile_image_url\":\"http:\\/\\/pbs.twimg.com\\/profile_images\\/1234\\/avatar_normal.png\","
+			+ "\"profile_image_url_https\":\"https:\\/\\/pbs.twimg.com\\/profile_images\\/1234\\/avatar_normal.png\"}";
+
+	/** The parser. */
+	private TweetRecordParser parser;
+
+	/** The record. */
+	private TweetRecord record;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		parser = new TweetRecordParser(new StringInterner(64));
+		record = TweetRecord.obtain();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		record.recycle();
+		super.tearDown();
+	}
+
+	/**
+	 * Checks a plain tweet.
+	 */
+	public void testTweet() {
+		assertTrue(parse("{\"created_at\":\"Wed Aug 27 13:08:45 +0000 2008\","
+				+ "\"id\":114749583439036416,\"id_str\":\"114749583439036416\","
+				+ "\"text\":\"Tweeting from the API\",\"source\":\"web\","
+				+ "\"truncated\":false,\"in_reply_to_status_id\":null,"
+				+ "\"user\":" + USER + ",\"geo\":null,\"retweet_count\":0,"
+				+ "\"favorited\":false,\"lang\":\"en\",\"timestamp_ms\":\"1219842525000\"}"));
+		assertEquals("Tweeting from the API", record.getText());
+		assertEquals(CREATED_AT, record.getCreatedAt());
+		assertUser();
+		assertEquals(-1, parser.getLimitTrack());
+	}
+
+	/**
+	 * Checks the escapes of strings, including unicode escapes and surrogate
+	 * pairs.
+	 */
+	public void testEscapes() {
+		assertTrue(parse("{\"text\":\"caf\\u00e9 \\\"quoted\\\" back\\\\slash "
+				+ "a\\/b\\n\\ttab \\ud83d\\ude00 \\u00E9\",\"user\":{\"screen_name\":"
+				+ "\"z\\u00fcrich\",\"name\":\"Line\\r\\nBreak\",\"profile_image_url\":"
+				+ "\"http:\\/\\/example.com\\/a_normal.png\"}}"));
+		assertEquals("caf\u00e9 \"quoted\" back\\slash a/b\n\ttab \ud83d\ude00 \u00e9",
+				record.getText());
+		assertEquals("z\u00fcrich", record.getScreenName());
+		assertEquals("Line\r\nBreak", record.getName());
+		assertEquals("http://example.com/a_normal.png", record.getImageUrl());
+	}
+
+	/**
+	 * Checks nested objects and arrays before and after the user are skipped,
+	 * including ones holding "text" and "user" keys and brackets in strings.
+	 */
+	public void testNestedValues() {
+		assertTrue(parse("{\"entities\":{\"hashtags\":[{\"text\":\"api\",\"indices\":[0,4]}],"
+				+ "\"user_mentions\":[{\"screen_name\":\"other\",\"name\":\"Other\","
+				+ "\"indices\":[5,11]}],\"urls\":[]},\"place\":{\"name\":\"} ] {\","
+				+ "\"bounding_box\":{\"coordinates\":[[[-122.5,37.7],[-122.3,37.8]]]}},"
+				+ "\"user\":" + USER + ","
+				+ "\"extended_entities\":{\"media\":[{\"id\":1,\"sizes\":{\"thumb\":"
+				+ "{\"w\":150,\"h\":150}},\"user\":{\"screen_name\":\"media\"}}]},"
+				+ "\"text\":\"#api @other\",\"created_at\":\"Wed Aug 27 13:08:45 +0000 2008\"}"));
+		assertEquals("#api @other", record.getText());
+		assertEquals(CREATED_AT, record.getCreatedAt());
+		assertUser();
+	}
+
+	/**
+	 * Checks a tweet with a null user keeps its text and no user fields.
+	 */
+	public void testNullUser() {
+		assertTrue(parse("{\"text\":\"no user\",\"user\":null,\"coordinates\":null}"));
+		assertEquals("no user", record.getText());
+		assertNull(record.getScreenName());
+		assertNull(record.getName());
+		assertNull(record.getImageUrl());
+	}
+
+	/**
+	 * Checks a retweet reads the text and user of the retweet, not the ones
+	 * of the retweeted status, whichever comes first.
+	 */
+	public void testRetweet() {
+		String retweeted = "{\"created_at\":\"Tue Aug 26 10:00:00 +0000 2008\","
+				+ "\"text\":\"original text\",\"user\":{\"name\":\"Original\","
+				+ "\"screen_name\":\"original\",\"profile_image_url\":"
+				+ "\"http:\\/\\/example.com\\/original_normal.png\"},"
+				+ "\"entities\":{\"hashtags\":[]}}";
+		assertTrue(parse("{\"created_at\":\"Wed Aug 27 13:08:45 +0000 2008\","
+				+ "\"retweeted_status\":" + retweeted + ","
+				+ "\"text\":\"RT @original: original text\",\"user\":" + USER + "}"));
+		assertEquals("RT @original: original text", record.getText());
+		assertEquals(CREATED_AT, record.getCreatedAt());
+		assertUser();
+
+		assertTrue(parse("{\"text\":\"RT @original: original text\",\"user\":" + USER
+				+ ",\"retweeted_status\":" + retweeted + "}"));
+		assertEquals("RT @original: original text", record.getText());
+		assertEquals(0, record.getCreatedAt());
+		assertUser();
+	}
+
+	/**
+	 * Checks a delete notice is not a tweet.
+	 */
+	public void testDeleteNotice() {
+		assertFalse(parse("{\"delete\":{\"status\":{\"id\":1234,\"id_str\":\"1234\","
+				+ "\"user_id\":3,\"user_id_str\":\"3\"},\"timestamp_ms\":\"1219842525000\"}}"));
+		assertNull(record.getText());
+		assertEquals(-1, parser.getLimitTrack());
+	}
+
+	/**
+	 * Checks a limit notice is not a tweet and its undelivered count is read.
+	 */
+	public void testLimitNotice() {
+		assertFalse(parse("{\"limit\":{\"track\":1234,\"timestamp_ms\":\"1219842525000\"}}"));
+		assertNull(record.getText());
+		assertEquals(1234, parser.getLimitTrack());
+
+		assertTrue(parse("{\"text\":\"after the notice\"}"));
+		assertEquals(-1, parser.getLimitTrack());
+	}
+
+	/**
+	 * Checks malformed lines are not tweets.
+	 */
+	public void testMalformed() {
+		assertFalse(parse(""));
+		assertFalse(parse("{\"text\":\"unterminated}"));
+		assertFalse(parse("{\"text\":\"bad escape \\u12\"}"));
+		assertFalse(parse("{\"text\":\"x\",\"user\":{\"screen_name\":\"bad \\u00\"}}"));
+		assertFalse(parse("{\"text\":\"missing brace\""));
+	}
+
+	/**
+	 * Parses a line into the record.
+	 *
+	 * @param line the line
+	 * @return true, if the line is a tweet
+	 */
+	private boolean parse(String line) {
+		char[] chars = line.toCharArray();
+		return parser.parse(chars, chars.length, record);
+	}
+
+	/**
+	 * Asserts that the record holds the test user.
+	 */
+	private void assertUser() {
+		assertEquals("twitterapi", record.getScreenName());
+		assertEquals("Twitter API", record.getName());
+		assertEquals(IMAGE_URL, record.getImageUrl());
+	}
+}
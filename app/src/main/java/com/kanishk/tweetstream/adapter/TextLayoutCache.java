@@ -0,0 +1,288 @@
+package com.kanishk.tweetstream.adapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import com.kanishk.tweetstream.memory.MemoryGovernor;
+import com.kanishk.tweetstream.memory.MemoryGovernor.OnMemoryStageListener;
+import com.kanishk.tweetstream.operations.R;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
+
+/**
+ * The Class TextLayoutCache. A bounded cache of the text layouts of tweet
+ * rows, keyed by row id for the current text width. Layouts of the rows about
+ * to appear are built in the background, so binding a row needs no text
+ * measurement. The layouts of rows bound before theirs is built are built in
+ * the background too, and handed to the waiting views. All the layouts are dropped when the width changes, and the
+ * least recently used ones under memory pressure.
+ */
+public class TextLayoutCache implements OnMemoryStageListener {
+
+	/** The Constant MAX_LAYOUTS. The maximum number of layouts cached. */
+	public static final int MAX_LAYOUTS = 200;
+
+	/** The Constant PREFETCH_ROWS. The number of rows ahead of the visible ones
+	 * whose layouts are precomputed. */
+	public static final int PREFETCH_ROWS = 10;
+
+	/** The paint the tweet text is drawn with. */
+	private final TextPaint paint;
+
+	/** The cached layouts by row id. */
+	private final LruCache<Long, Layout> layouts;
+
+	/** The ids of the rows whose layout is being built. */
+	private final Set<Long> pending;
+
+	/** The listeners waiting for a layout, by row id. Used from the main thread. */
+	private final Map<Long, List<OnLayoutReadyListener>> waiting;
+
+	/** The executor building the layouts. */
+	private final Executor executor;
+
+	/** The handler handing the layouts built to the main thread. */
+	private final Handler handler;
+
+	/** The text width, 0 until the row views are measured. */
+	private volatile int width;
+
+	/** The number of layouts kept at the current memory stage. */
+	private volatile int maxLayouts = MAX_LAYOUTS;
+
+	/**
+	 * Instantiates a new text layout cache. The paint matches the tweet text
+	 * style of the row layout.
+	 *
+	 * @param context the context
+	 */
+	public TextLayoutCache(Context context) {
+		Resources resources = context.getResources();
+		paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+		paint.setTextSize(resources.getDimension(R.dimen.tweet_text));
+		paint.setColor(resources.getColor(android.R.color.black));
+		paint.density = resources.getDisplayMetrics().density;
+		layouts = new LruCache<>(MAX_LAYOUTS);
+		pending = new HashSet<>();
+		waiting = new HashMap<>();
+		executor = TaskScheduler.LAYOUT;
+		handler = new Handler(Looper.getMainLooper());
+		MemoryGovernor.register(this);
+	}
+
+	/**
+	 * Gets the layout of a row. If it has not been precomputed, it's built in
+	 * the background and handed to the listener once built. Call from the main
+	 * thread.
+	 *
+	 * @param id the row id
+	 * @param text the text
+	 * @param listener the listener waiting for the layout if it's not cached
+	 * @return the layout, null if the width is not known yet, there's no text
+	 *         or the layout is being built
+	 */
+	public Layout get(long id, CharSequence text, OnLayoutReadyListener listener) {
+		int currentWidth = width;
+		if (currentWidth <= 0 || text == null) {
+			return null;
+		}
+		Layout layout = layouts.get(id);
+		if (layout != null && layout.getWidth() == currentWidth) {
+			return layout;
+		}
+		List<OnLayoutReadyListener> listeners = waiting.get(id);
+		if (listeners == null) {
+			listeners = new ArrayList<>(1);
+			waiting.put(id, listeners);
+		}
+		if (!listeners.contains(listener)) {
+			listeners.add(listener);
+		}
+		precompute(id, text);
+		return null;
+	}
+
+	/**
+	 * Gets the height of the text of a row, estimated from its length without
+	 * measuring it, to lay the row out while its layout is being built.
+	 *
+	 * @param text the text
+	 * @return the estimated height, 0 if the width is not known yet
+	 */
+	public int getEstimatedHeight(CharSequence text) {
+		int currentWidth = width;
+		if (currentWidth <= 0 || text == null) {
+			return 0;
+		}
+		// About two characters fit in the text size
+		float textWidth = text.length() * paint.getTextSize() / 2;
+		int lines = Math.max(1, (int) Math.ceil(textWidth / currentWidth));
+		return lines * paint.getFontMetricsInt(null);
+	}
+
+	/**
+	 * Builds the layout of a row in the background, unless it's cached or
+	 * already being built.
+	 *
+	 * @param id the row id
+	 * @param text the text
+	 */
+	public void precompute(final long id, final CharSequence text) {
+		final int currentWidth = width;
+		if (currentWidth <= 0 || text == null || layouts.get(id) != null) {
+			return;
+		}
+		synchronized (pending) {
+			if (!pending.add(id)) {
+				return;
+			}
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Layout layout = null;
+				try {
+					if (width == currentWidth) {
+						layout = build(text, currentWidth);
+						cache(id, layout);
+					}
+				} finally {
+					synchronized (pending) {
+						pending.remove(id);
+					}
+					deliver(id, text, layout);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Hands a layout built in the background to the listeners waiting for it,
+	 * on the main thread. A layout built for a width that has since changed is
+	 * built again.
+	 *
+	 * @param id the row id
+	 * @param text the text
+	 * @param layout the layout, null if it wasn't built
+	 */
+	private void deliver(final long id, final CharSequence text, final Layout layout) {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				List<OnLayoutReadyListener> listeners = waiting.get(id);
+				if (listeners == null) {
+					return;
+				}
+				if (layout == null || layout.getWidth() != width) {
+					if (width > 0) {
+						precompute(id, text);
+					}
+					return;
+				}
+				waiting.remove(id);
+				for (OnLayoutReadyListener listener : listeners) {
+					listener.onLayoutReady(id, layout);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sets the text width. Drops all the layouts if the width changes.
+	 *
+	 * @param newWidth the new width
+	 */
+	public void setWidth(int newWidth) {
+		if (newWidth != width) {
+			width = newWidth;
+			layouts.evictAll();
+		}
+	}
+
+	@Override
+	public void onMemoryStage(int stage) {
+		maxLayouts = MemoryGovernor.scale(MAX_LAYOUTS, stage);
+		trim();
+	}
+
+	/**
+	 * Caches a layout, within the number of layouts of the memory stage.
+	 *
+	 * @param id the row id
+	 * @param layout the layout
+	 */
+	private void cache(long id, Layout layout) {
+		if (maxLayouts > 0) {
+			layouts.put(id, layout);
+			if (maxLayouts < MAX_LAYOUTS) {
+				trim();
+			}
+		}
+	}
+
+	/**
+	 * Drops the least recently used layouts beyond the number of the memory
+	 * stage.
+	 */
+	private void trim() {
+		int max = maxLayouts;
+		if (max <= 0) {
+			layouts.evictAll();
+		} else {
+			layouts.trimToSize(max);
+		}
+	}
+
+	/**
+	 * Gets the paint the text is drawn with.
+	 *
+	 * @return the paint
+	 */
+	public TextPaint getPaint() {
+		return paint;
+	}
+
+	/**
+	 * Builds a layout. The only text measurement of the rows, run on the
+	 * layout executor.
+	 *
+	 * @param text the text
+	 * @param layoutWidth the width
+	 * @return the layout
+	 */
+	private Layout build(CharSequence text, int layoutWidth) {
+		return new StaticLayout(text == null ? "" : text, paint, layoutWidth,
+				Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+	}
+
+	/**
+	 * The listener interface for receiving the layout of a row built in the
+	 * background. The view of the row implements this interface and passes
+	 * itself to {@link TextLayoutCache#get(long, CharSequence, OnLayoutReadyListener)}.
+	 * It's called on the main thread, and may have been bound to another row
+	 * since.
+	 */
+	public static interface OnLayoutReadyListener {
+
+		/**
+		 * Takes the layout of a row.
+		 *
+		 * @param id the row id
+		 * @param layout the layout
+		 */
+		void onLayoutReady(long id, Layout layout);
+	}
+}
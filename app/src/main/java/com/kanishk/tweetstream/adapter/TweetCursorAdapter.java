@@ -5,21 +5,33 @@ import android.database.Cursor;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView.RecyclerListener;
 import android.widget.CursorAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.image.AvatarVariant;
+import com.kanishk.tweetstream.image.ImagePrefetcher;
+import com.kanishk.tweetstream.image.SingleFlightLoader;
+import com.kanishk.tweetstream.metrics.TweetLatency;
 import com.kanishk.tweetstream.operations.R;
 import com.nostra13.universalimageloader.core.ImageLoader;
 
 /**
- * The Class TweetCursorAdapter.
+ * The Class TweetCursorAdapter. Set as the {@link RecyclerListener} of its
+ * list, it cancels the image loads of rows scrolled out of view.
  */
-public class TweetCursorAdapter extends CursorAdapter {
+public class TweetCursorAdapter extends CursorAdapter implements RecyclerListener {
 	
-	/** The image loader. */
-	private ImageLoader imageLoader;
+	/** The loader displaying the profile images. */
+	private SingleFlightLoader imageLoader;
+
+	/** The cache of precomputed tweet text layouts. */
+	private TextLayoutCache layoutCache;
+
+	/** The size(pixels) of the profile images. */
+	private int imageSize;
 	
 	/**
 	 * Instantiates a new tweet cursor adapter.
@@ -30,7 +42,61 @@ public class TweetCursorAdapter extends CursorAdapter {
 	 */
 	public TweetCursorAdapter(Context context, Cursor c, ImageLoader loader) {
 		super(context, c, CursorAdapter.FLAG_REGISTER_CONTENT_OBSERVER);
-		this.imageLoader = loader;
+		this.imageLoader = new SingleFlightLoader(context, loader,
+				TweetDataConstants.IMAGE_DISPLAY_OPTIONS);
+		this.layoutCache = new TextLayoutCache(context);
+		this.imageSize = AvatarVariant.getTargetSize(context);
+	}
+
+	/**
+	 * Gets the uri the profile image of a row is loaded and cached under.
+	 *
+	 * @param imageUrl the image url stored in the row
+	 * @param screenName the screen name stored in the row
+	 * @return the uri of the variant matching the image size
+	 */
+	public String getImageUri(String imageUrl, String screenName) {
+		return AvatarVariant.getUri(imageUrl, screenName, imageSize);
+	}
+
+	/**
+	 * Precomputes the text layouts of rows in the background, typically of the
+	 * rows about to be scrolled into view.
+	 *
+	 * @param from the first position
+	 * @param count the number of rows
+	 */
+	public void precomputeLayouts(int from, int count) {
+		Cursor cursor = getCursor();
+		if (cursor == null || cursor.isClosed()) {
+			return;
+		}
+		int end = Math.min(from + count, cursor.getCount());
+		for (int position = Math.max(from, 0); position < end; position++) {
+			if (cursor.moveToPosition(position)) {
+				layoutCache.precompute(cursor.getLong(4), cursor.getString(3));
+			}
+		}
+	}
+
+	/**
+	 * Prefetches the profile images of rows, typically of the rows about to be
+	 * scrolled into view.
+	 *
+	 * @param from the first position
+	 * @param count the number of rows
+	 */
+	public void prefetchImages(int from, int count) {
+		Cursor cursor = getCursor();
+		if (cursor == null || cursor.isClosed()) {
+			return;
+		}
+		int end = Math.min(from + count, cursor.getCount());
+		for (int position = Math.max(from, 0); position < end; position++) {
+			if (cursor.moveToPosition(position)) {
+				ImagePrefetcher.getInstance().prefetch(cursor.getString(2), cursor.getString(0));
+			}
+		}
 	}
 
 	@Override
@@ -41,7 +107,7 @@ public class TweetCursorAdapter extends CursorAdapter {
 		holder.screenName = (TextView) retView
 				.findViewById(R.id.user_name);
 		holder.name = (TextView) retView.findViewById(R.id.user_id);
-		holder.tweet = (TextView) retView.findViewById(R.id.tweet);
+		holder.tweet = (TweetTextView) retView.findViewById(R.id.tweet);
 		holder.image = (ImageView) retView.findViewById(R.id.image);
 		retView.setTag(holder);
 		return retView;
@@ -50,12 +116,20 @@ public class TweetCursorAdapter extends CursorAdapter {
 	@Override
 	public void bindView(View view, Context context, Cursor cursor) {
 		ViewHolder holder = (ViewHolder) view.getTag();
-		cursor.getString(0);
 		holder.name.setText(cursor.getString(0));
 		holder.screenName.setText(cursor.getString(1));
-		holder.tweet.setText(cursor.getString(3));
-		imageLoader.displayImage(cursor.getString(2), holder.image, 
-				TweetDataConstants.IMAGE_DISPLAY_OPTIONS);
+		holder.tweet.bind(layoutCache, cursor.getLong(4), cursor.getString(3));
+		TweetLatency.onBound(cursor.getLong(4));
+		imageLoader.displayImage(getImageUri(cursor.getString(2), cursor.getString(0)),
+				holder.image);
+	}
+
+	@Override
+	public void onMovedToScrapHeap(View view) {
+		ViewHolder holder = (ViewHolder) view.getTag();
+		if (holder != null) {
+			imageLoader.cancel(holder.image);
+		}
 	}
 
 	/**
@@ -71,7 +145,7 @@ public class TweetCursorAdapter extends CursorAdapter {
 		TextView name;
 		
 		/** The tweet. */
-		TextView tweet;
+		TweetTextView tweet;
 		
 		/** The image. */
 		ImageView image;
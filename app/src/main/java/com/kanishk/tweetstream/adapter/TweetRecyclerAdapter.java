@@ -0,0 +1,189 @@
+package com.kanishk.tweetstream.adapter;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.data.TweetSnapshot;
+import com.kanishk.tweetstream.image.AvatarVariant;
+import com.kanishk.tweetstream.image.ImagePrefetcher;
+import com.kanishk.tweetstream.image.SingleFlightLoader;
+import com.kanishk.tweetstream.metrics.TweetLatency;
+import com.kanishk.tweetstream.operations.R;
+import com.nostra13.universalimageloader.core.ImageLoader;
+
+/**
+ * The Class TweetRecyclerAdapter. The {@link RecyclerView} adapter for the
+ * tweet list. Rows have stable ids, and a new {@link TweetSnapshot} only
+ * dispatches the rows inserted or removed since the previous one, so the rows
+ * already on screen are neither rebound nor moved.
+ */
+public class TweetRecyclerAdapter extends RecyclerView.Adapter<TweetRecyclerAdapter.ViewHolder> {
+
+	/** The loader displaying the profile images. */
+	private SingleFlightLoader imageLoader;
+
+	/** The cache of precomputed tweet text layouts. */
+	private TextLayoutCache layoutCache;
+
+	/** The snapshot shown. */
+	private TweetSnapshot snapshot;
+
+	/** The size(pixels) of the profile images. */
+	private int imageSize;
+
+	/**
+	 * Instantiates a new tweet recycler adapter.
+	 *
+	 * @param context the context
+	 * @param loader the image loader
+	 */
+	public TweetRecyclerAdapter(Context context, ImageLoader loader) {
+		this.imageLoader = new SingleFlightLoader(context, loader,
+				TweetDataConstants.IMAGE_DISPLAY_OPTIONS);
+		this.layoutCache = new TextLayoutCache(context);
+		this.imageSize = AvatarVariant.getTargetSize(context);
+		this.snapshot = TweetSnapshot.EMPTY;
+		setHasStableIds(true);
+	}
+
+	/**
+	 * Swaps the snapshot shown, dispatching only the changes it carries.
+	 * Must be called on the main thread.
+	 *
+	 * @param newSnapshot the new snapshot, null to clear the list
+	 */
+	public void swapSnapshot(TweetSnapshot newSnapshot) {
+		if (newSnapshot == null) {
+			newSnapshot = TweetSnapshot.EMPTY;
+		}
+		if (newSnapshot == snapshot) {
+			return;
+		}
+		boolean fullChange = newSnapshot.isFullChange(snapshot);
+		this.snapshot = newSnapshot;
+		if (fullChange) {
+			notifyDataSetChanged();
+			return;
+		}
+		int top = newSnapshot.getTopInserted();
+		int common = newSnapshot.getCount() - top - newSnapshot.getBottomInserted();
+		if (top > 0) {
+			notifyItemRangeInserted(0, top);
+		}
+		if (newSnapshot.getBottomRemoved() > 0) {
+			notifyItemRangeRemoved(top + common, newSnapshot.getBottomRemoved());
+		}
+		if (newSnapshot.getBottomInserted() > 0) {
+			notifyItemRangeInserted(top + common, newSnapshot.getBottomInserted());
+		}
+	}
+
+	/**
+	 * Precomputes the text layouts of rows in the background, typically of the
+	 * rows about to be scrolled into view.
+	 *
+	 * @param from the first position
+	 * @param count the number of rows
+	 */
+	public void precomputeLayouts(int from, int count) {
+		int end = Math.min(from + count, snapshot.getCount());
+		for (int position = Math.max(from, 0); position < end; position++) {
+			layoutCache.precompute(snapshot.getId(position), snapshot.getString(position, 3));
+		}
+	}
+
+	/**
+	 * Prefetches the profile images of rows, typically of the rows about to be
+	 * scrolled into view.
+	 *
+	 * @param from the first position
+	 * @param count the number of rows
+	 */
+	public void prefetchImages(int from, int count) {
+		int end = Math.min(from + count, snapshot.getCount());
+		for (int position = Math.max(from, 0); position < end; position++) {
+			ImagePrefetcher.getInstance().prefetch(snapshot.getString(position, 2),
+					snapshot.getString(position, 0));
+		}
+	}
+
+	/**
+	 * Gets the snapshot shown.
+	 *
+	 * @return the snapshot
+	 */
+	public TweetSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	@Override
+	public int getItemCount() {
+		return snapshot.getCount();
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return snapshot.getId(position);
+	}
+
+	@Override
+	public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+		LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+		View retView = inflater.inflate(R.layout.list_layout, parent, false);
+		return new ViewHolder(retView);
+	}
+
+	@Override
+	public void onBindViewHolder(ViewHolder holder, int position) {
+		holder.name.setText(snapshot.getString(position, 0));
+		holder.screenName.setText(snapshot.getString(position, 1));
+		holder.tweet.bind(layoutCache, snapshot.getId(position),
+				snapshot.getString(position, 3));
+		TweetLatency.onBound(snapshot.getId(position));
+		imageLoader.displayImage(AvatarVariant.getUri(snapshot.getString(position, 2),
+				snapshot.getString(position, 0), imageSize), holder.image);
+	}
+
+	@Override
+	public void onViewRecycled(ViewHolder holder) {
+		imageLoader.cancel(holder.image);
+	}
+
+	/**
+	 * The Class ViewHolder. A holder class to avoid calling findview by id
+	 * in the adapter.
+	 */
+	static class ViewHolder extends RecyclerView.ViewHolder {
+
+		/** The screen name. */
+		TextView screenName;
+
+		/** The name. */
+		TextView name;
+
+		/** The tweet. */
+		TweetTextView tweet;
+
+		/** The image. */
+		ImageView image;
+
+		/**
+		 * Instantiates a new view holder.
+		 *
+		 * @param view the row view
+		 */
+		ViewHolder(View view) {
+			super(view);
+			screenName = (TextView) view.findViewById(R.id.user_name);
+			name = (TextView) view.findViewById(R.id.user_id);
+			tweet = (TweetTextView) view.findViewById(R.id.tweet);
+			image = (ImageView) view.findViewById(R.id.image);
+		}
+	}
+}
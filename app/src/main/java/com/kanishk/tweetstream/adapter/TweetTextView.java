@@ -0,0 +1,123 @@
+package com.kanishk.tweetstream.adapter;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.kanishk.tweetstream.adapter.TextLayoutCache.OnLayoutReadyListener;
+
+/**
+ * The Class TweetTextView. A view drawing a precomputed text {@link Layout}
+ * directly, so showing the text of a row costs no measurement. The view has
+ * to be laid out with a fixed width, and reports the width available to the
+ * text to its {@link TextLayoutCache}. While the layout is being built the
+ * view takes the estimated height of the text and draws nothing.
+ */
+public class TweetTextView extends View implements OnLayoutReadyListener {
+
+	/** The text layout drawn. */
+	private Layout textLayout;
+
+	/** The cache the text width is reported to. */
+	private TextLayoutCache layoutCache;
+
+	/** The id of the row bound. */
+	private long rowId;
+
+	/** The text of the row bound. */
+	private CharSequence text;
+
+	/**
+	 * Instantiates a new tweet text view.
+	 *
+	 * @param context the context
+	 * @param attrs the attrs
+	 */
+	public TweetTextView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+	}
+
+	/**
+	 * Binds the text of a row. The layout is taken from the cache, or set once
+	 * built in the background if it's not cached or the text width is not
+	 * known yet.
+	 *
+	 * @param cache the layout cache
+	 * @param id the row id
+	 * @param text the text
+	 */
+	public void bind(TextLayoutCache cache, long id, CharSequence text) {
+		this.layoutCache = cache;
+		this.rowId = id;
+		this.text = text;
+		setTextLayout(cache.get(id, text, this));
+	}
+
+	@Override
+	public void onLayoutReady(long id, Layout layout) {
+		if (id == rowId) {
+			setTextLayout(layout);
+		}
+	}
+
+	/**
+	 * Sets the text layout drawn, null while it's being built. Requests a new
+	 * layout pass only if the height changes.
+	 *
+	 * @param layout the text layout
+	 */
+	private void setTextLayout(Layout layout) {
+		int oldHeight = getTextHeight();
+		this.textLayout = layout;
+		setContentDescription(text);
+		if (getTextHeight() != oldHeight) {
+			requestLayout();
+		}
+		invalidate();
+	}
+
+	/**
+	 * Gets the height of the text, estimated while its layout is being built.
+	 *
+	 * @return the height
+	 */
+	private int getTextHeight() {
+		if (textLayout != null) {
+			return textLayout.getHeight();
+		}
+		return layoutCache == null ? 0 : layoutCache.getEstimatedHeight(text);
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		int width = MeasureSpec.getSize(widthMeasureSpec);
+		int height = getTextHeight() + getPaddingTop() + getPaddingBottom();
+		setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		if (layoutCache != null && w != oldw) {
+			int textWidth = w - getPaddingLeft() - getPaddingRight();
+			layoutCache.setWidth(textWidth);
+			if (text != null && (textLayout == null || textLayout.getWidth() != textWidth)) {
+				// Bound before the width was known, or the width changed
+				setTextLayout(layoutCache.get(rowId, text, this));
+			}
+		}
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (textLayout != null) {
+			canvas.save();
+			canvas.translate(getPaddingLeft(), getPaddingTop());
+			textLayout.draw(canvas);
+			canvas.restore();
+		}
+	}
+}
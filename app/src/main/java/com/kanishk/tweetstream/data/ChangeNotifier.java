@@ -0,0 +1,138 @@
+package com.kanishk.tweetstream.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * The Class ChangeNotifier. Coalesces content change notifications sent by the
+ * content provider. At most one notification per URI is sent in an interval.
+ * Changes arriving inside the interval are folded into a single trailing
+ * notification, so no change is lost and the number of loader requeries stays
+ * bounded whatever the insert rate is.
+ */
+public class ChangeNotifier {
+
+	/** The content resolver used to send the notifications. */
+	private ContentResolver resolver;
+
+	/** The minimum interval(milliseconds) between two notifications of a URI. */
+	private long interval;
+
+	/** The handler for posting trailing notifications. */
+	private Handler handler;
+
+	/** The states of notified URIs. */
+	private Map<Uri, UriState> states;
+
+	/**
+	 * Instantiates a new change notifier.
+	 *
+	 * @param resolver the content resolver
+	 * @param interval the minimum interval(milliseconds) between two notifications
+	 * of the same URI
+	 */
+	public ChangeNotifier(ContentResolver resolver, long interval) {
+		this.resolver = resolver;
+		this.interval = interval;
+		this.handler = new Handler(Looper.getMainLooper());
+		this.states = new HashMap<>();
+	}
+
+	/**
+	 * Notifies a change on the URI. Sends the notification right away if none
+	 * was sent in the last interval, otherwise schedules a trailing notification
+	 * at the end of the interval. Safe to call from any thread.
+	 *
+	 * @param uri the changed uri
+	 */
+	public void notifyChange(Uri uri) {
+		long now = SystemClock.uptimeMillis();
+		synchronized (states) {
+			UriState state = states.get(uri);
+			if (state == null) {
+				state = new UriState(uri);
+				states.put(uri, state);
+			}
+			if (state.pending) {
+				return;
+			}
+			long next = state.lastSent + interval;
+			if (now >= next) {
+				state.lastSent = now;
+			} else {
+				state.pending = true;
+				handler.postAtTime(state, next);
+				return;
+			}
+		}
+		resolver.notifyChange(uri, null);
+	}
+
+	/**
+	 * Sends all the pending notifications right away, on the calling thread.
+	 * Called when the provider shuts down, before its handler callbacks would run.
+	 */
+	public void flush() {
+		List<Uri> uris = new ArrayList<>();
+		synchronized (states) {
+			long now = SystemClock.uptimeMillis();
+			for (UriState state : states.values()) {
+				if (state.pending) {
+					handler.removeCallbacks(state);
+					state.pending = false;
+					state.lastSent = now;
+					uris.add(state.uri);
+				}
+			}
+		}
+		for (Uri uri : uris) {
+			resolver.notifyChange(uri, null);
+		}
+	}
+
+	/**
+	 * The Class UriState. The throttling state of a single URI. Runs as the
+	 * trailing notification of the URI.
+	 */
+	private class UriState implements Runnable {
+
+		/** The uri. */
+		private final Uri uri;
+
+		/** The time of the last notification sent. */
+		private long lastSent;
+
+		/** The check whether a trailing notification is scheduled or not. */
+		private boolean pending;
+
+		/**
+		 * Instantiates a new uri state.
+		 *
+		 * @param uri the uri
+		 */
+		UriState(Uri uri) {
+			this.uri = uri;
+			this.lastSent = Long.MIN_VALUE / 2;
+		}
+
+		@Override
+		public void run() {
+			synchronized (states) {
+				if (!pending) {
+					return;
+				}
+				pending = false;
+				lastSent = SystemClock.uptimeMillis();
+			}
+			resolver.notifyChange(uri, null);
+		}
+	}
+}
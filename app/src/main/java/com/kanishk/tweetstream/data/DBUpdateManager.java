@@ -1,14 +1,17 @@
 package com.kanishk.tweetstream.data;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import android.content.ContentResolver;
-import android.content.ContentValues;
+import android.content.Context;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.util.Log;
 
-import com.kanishk.tweetstream.model.Tweet;
-import com.kanishk.tweetstream.model.User;
+import com.kanishk.tweetstream.image.ImagePrefetcher;
+import com.kanishk.tweetstream.model.TweetRecord;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
 
 /**
  * The Class DBUpdateManager. An update manager to perform CRUD operations on
@@ -24,6 +27,9 @@ public class DBUpdateManager {
 		manager = new DBUpdateManager();
 	}
 
+	/** The journal the tweets are written to before reaching the database. */
+	private volatile TweetJournal journal;
+
 	/**
 	 * Gets the single instance of DBUpdateManager.
 	 * 
@@ -33,6 +39,64 @@ public class DBUpdateManager {
 		return manager;
 	}
 
+	/**
+	 * Initializes the ingest journal. Tweets are then written to the journal
+	 * as they are parsed and loaded in the database in batches. Records left
+	 * unapplied by a previous process are replayed. Does nothing if already
+	 * initialized.
+	 *
+	 * @param context the context
+	 */
+	public synchronized void initJournal(Context context) {
+		if (journal == null) {
+			Context appContext = context.getApplicationContext();
+			journal = new TweetJournal(appContext.getFilesDir(),
+					appContext.getContentResolver());
+		}
+	}
+
+	/**
+	 * Writes a parsed tweet to the journal, before it's gathered in a batch.
+	 * A journaled tweet is loaded in the database by the journal, and the
+	 * insert of its batch skips it. Tweets are left unjournaled if there is no
+	 * journal or the write fails.
+	 *
+	 * @param dataURI the uri of the table
+	 * @param record the record
+	 */
+	public void journalTweet(Uri dataURI, TweetRecord record) {
+		TweetJournal journal = this.journal;
+		if (journal != null) {
+			try {
+				journal.append(dataURI, record);
+				record.setJournaled(true);
+			} catch (IOException e) {
+				Log.e(DBUpdateManager.class.toString(), e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Writes the clearing of a table to the journal, ahead of the tweets
+	 * parsed afterwards.
+	 *
+	 * @param dataURI the uri of the table
+	 * @return true, if journaled; false if the table has to be cleared by
+	 * the next insert instead
+	 */
+	public boolean journalClear(Uri dataURI) {
+		TweetJournal journal = this.journal;
+		if (journal != null) {
+			try {
+				journal.appendClear(dataURI);
+				return true;
+			} catch (IOException e) {
+				Log.e(DBUpdateManager.class.toString(), e.toString());
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Insert rows in the database in a separate thread.
 	 * 
@@ -41,9 +105,9 @@ public class DBUpdateManager {
 	 * @param resolver
 	 *            the resolver
 	 */
-	public void insertRows(List<Tweet> tweetList, ContentResolver resolver) {
-		AsyncTask.THREAD_POOL_EXECUTOR.execute(new InsertTask(TweetDataConstants.CONTENT_URI,
-				tweetList, resolver, false));
+	public void insertRows(List<TweetRecord> tweetList, ContentResolver resolver) {
+		TaskScheduler.STORAGE.execute(new InsertTask(TweetDataConstants.CONTENT_URI,
+				tweetList, resolver, false, journal));
 	}
 
 	/**
@@ -56,11 +120,11 @@ public class DBUpdateManager {
 	 * @param refresh
 	 *            . Check whether to clear previous entries or not. Set true if it's a new search
 	 */
-	public void insertSearchResults(List<Tweet> tweetList,
+	public void insertSearchResults(List<TweetRecord> tweetList,
 			ContentResolver resolver, boolean refresh) {
-		AsyncTask.THREAD_POOL_EXECUTOR.execute(new InsertTask(
+		TaskScheduler.STORAGE.execute(new InsertTask(
 				TweetDataConstants.CONTENT_SEARCH_URI, tweetList, resolver,
-				refresh));
+				refresh, journal));
 	}
 	
 	/**
@@ -69,12 +133,15 @@ public class DBUpdateManager {
 	 */
 	public void clearSearchTable(ContentResolver resolver) {
 		resolver.delete(TweetDataConstants.CONTENT_SEARCH_URI, "1", null);
-//		AsyncTask.THREAD_POOL_EXECUTOR.execute(new DeleteTask(TweetDataConstants.CONTENT_SEARCH_URI,
+//		TaskScheduler.STORAGE.execute(new DeleteTask(TweetDataConstants.CONTENT_SEARCH_URI,
 //				resolver));
 	}
 
 	/**
 	 * The Class InsertTask. A runnable task to insert data using the content provider.
+	 * Journaled records are skipped, as the journal loads them. The others
+	 * are inserted once the journal is applied, so they keep their order.
+	 * The records are handed back to their pool once written.
 	 */
 	private static class InsertTask implements Runnable {
 
@@ -82,7 +149,7 @@ public class DBUpdateManager {
 		private Uri dataURI;
 
 		/** The tweet list. */
-		private List<Tweet> tweetList;
+		private List<TweetRecord> tweetList;
 
 		/** The resolver. */
 		private ContentResolver resolver;
@@ -90,6 +157,9 @@ public class DBUpdateManager {
 		/** The clear. */
 		private boolean clear;
 
+		/** The journal, null if inserts go straight to the database. */
+		private TweetJournal journal;
+
 		/**
 		 * Instantiates a new insert task.
 		 * 
@@ -101,42 +171,69 @@ public class DBUpdateManager {
 		 *            the resolver
 		 * @param clearTable
 		 *            the clear table
+		 * @param journal
+		 *            the journal, null to insert straight to the database
 		 */
-		public InsertTask(Uri dataURI, List<Tweet> tweetList,
-				ContentResolver resolver, boolean clearTable) {
+		public InsertTask(Uri dataURI, List<TweetRecord> tweetList,
+				ContentResolver resolver, boolean clearTable, TweetJournal journal) {
 			this.dataURI = dataURI;
 			this.tweetList = tweetList;
 			this.resolver = resolver;
 			this.clear = clearTable;
+			this.journal = journal;
 		}
 
 		@Override
 		public void run() {
-			if (this.clear) {
-				resolver.delete(dataURI, null, null);
+			prefetchImages();
+			try {
+				List<TweetRecord> unjournaled = getUnjournaled();
+				if (!this.clear && unjournaled.isEmpty()) {
+					return;
+				}
+				if (journal != null) {
+					journal.awaitApplied();
+				}
+				if (this.clear) {
+					resolver.delete(dataURI, null, null);
+				}
+				if (!unjournaled.isEmpty()) {
+					TweetContentProvider.insertRecords(resolver, dataURI, unjournaled);
+				}
+			} finally {
+				TweetRecord.recycleAll(tweetList);
+			}
+		}
+
+		/**
+		 * Gets the records not written to the journal.
+		 *
+		 * @return the records, the tweet list itself if none is journaled
+		 */
+		private List<TweetRecord> getUnjournaled() {
+			List<TweetRecord> unjournaled = null;
+			for (int i = 0; i < tweetList.size(); i++) {
+				TweetRecord record = tweetList.get(i);
+				if (record.isJournaled() && unjournaled == null) {
+					unjournaled = new ArrayList<>(tweetList.subList(0, i));
+				} else if (!record.isJournaled() && unjournaled != null) {
+					unjournaled.add(record);
+				}
 			}
-			insertRows();
+			return unjournaled != null ? unjournaled : tweetList;
 		}
 
 		/**
-		 * Insert rows.
+		 * Prefetches the profile images of the newest tweets, so they are
+		 * cached by the time the rows are shown.
 		 */
-		private void insertRows() {
-			int index = 0;
-			ContentValues[] values = new ContentValues[tweetList.size()];
-			for (Tweet tweet : tweetList) {
-				ContentValues value = new ContentValues();
-				User user = tweet.getUser();
-				value.put(TweetDataConstants.FIELD_TWEET_TEXT, tweet.getText());
-				value.put(TweetDataConstants.FIELD_IMAGE_URL,
-						user.getProfile_image_url());
-				value.put(TweetDataConstants.FIELD_NAME, user.getName());
-				value.put(TweetDataConstants.FIELD_SCREEN_NAME,
-						user.getScreen_name());
-				values[index] = value;
-				index++;
+		private void prefetchImages() {
+			int end = Math.max(0, tweetList.size() - ImagePrefetcher.INSERT_PREFETCH_LIMIT);
+			for (int i = tweetList.size() - 1; i >= end; i--) {
+				TweetRecord record = tweetList.get(i);
+				ImagePrefetcher.getInstance().prefetch(record.getImageUrl(),
+						record.getScreenName());
 			}
-			resolver.bulkInsert(dataURI, values);
 		}
 	}
 	
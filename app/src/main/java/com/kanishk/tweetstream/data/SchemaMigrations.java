@@ -0,0 +1,101 @@
+package com.kanishk.tweetstream.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * The Class SchemaMigrations. The versioned steps upgrading the tweet database
+ * in place, so that the cached tweets survive a schema change. Each step
+ * upgrades the database from the previous version to its own version. Steps
+ * should prefer changes that don't rewrite the tables, like adding columns or
+ * tables.
+ */
+public class SchemaMigrations {
+
+	/** The migrations, in version order. The first step upgrades to version 2. */
+	private static final Migration[] MIGRATIONS = {
+		new Migration(2) {
+			@Override
+			public void migrate(SQLiteDatabase db) {
+				db.execSQL(ShardedTweetStore.CREATE_SHARD_QUERY);
+			}
+		}
+	};
+
+	/**
+	 * Checks if the database can be upgraded in place between two versions.
+	 *
+	 * @param oldVersion the old version
+	 * @param newVersion the new version
+	 * @return true, if there's a migration for every version in between
+	 */
+	public static boolean canUpgrade(int oldVersion, int newVersion) {
+		if (oldVersion < 1 || newVersion < oldVersion) {
+			return false;
+		}
+		for (int version = oldVersion + 1; version <= newVersion; version++) {
+			if (getMigration(version) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Upgrades the database in place, running each migration after the old
+	 * version up to the new version in order. Must be called inside the
+	 * upgrade transaction.
+	 *
+	 * @param db the database
+	 * @param oldVersion the old version
+	 * @param newVersion the new version
+	 */
+	public static void upgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		if (!canUpgrade(oldVersion, newVersion)) {
+			throw new IllegalArgumentException("No migration from version "
+					+ oldVersion + " to " + newVersion);
+		}
+		for (int version = oldVersion + 1; version <= newVersion; version++) {
+			getMigration(version).migrate(db);
+		}
+	}
+
+	/**
+	 * Gets the migration to a version.
+	 *
+	 * @param version the version
+	 * @return the migration, null if there's none
+	 */
+	private static Migration getMigration(int version) {
+		for (Migration migration : MIGRATIONS) {
+			if (migration.version == version) {
+				return migration;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The Class Migration. A single step upgrading the database to a version.
+	 */
+	public static abstract class Migration {
+
+		/** The version the database is upgraded to. */
+		private final int version;
+
+		/**
+		 * Instantiates a new migration.
+		 *
+		 * @param version the version the database is upgraded to
+		 */
+		public Migration(int version) {
+			this.version = version;
+		}
+
+		/**
+		 * Upgrades the database from the previous version.
+		 *
+		 * @param db the database
+		 */
+		public abstract void migrate(SQLiteDatabase db);
+	}
+}
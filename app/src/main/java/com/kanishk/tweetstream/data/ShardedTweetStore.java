@@ -0,0 +1,356 @@
+package com.kanishk.tweetstream.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MergeCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * The Class ShardedTweetStore. Stores tweets in one table per time bucket
+ * instead of a single table. Queries span all the live buckets, and expiry
+ * drops the oldest buckets as whole tables instead of deleting row by row.
+ * Row ids are assigned by the store and increase across buckets, so the newest
+ * rows always live in the newest bucket. They continue from the ids of the single
+ * tweets table, so rows stored after switching modes stay the newest. The rows
+ * of the single table are moved into the newest bucket once one exists, and
+ * moved back by {@link #unshard(SQLiteDatabase, String)} when the mode is turned off, so
+ * switching modes hides no rows.
+ */
+public class ShardedTweetStore {
+
+	/** The Constant SHARD_TABLE. The table listing the live buckets. */
+	public static final String SHARD_TABLE = "tweetShards";
+
+	/** The Constant FIELD_BUCKET. */
+	public static final String FIELD_BUCKET = "bucket";
+
+	/** The Constant CREATE_SHARD_QUERY. */
+	public static final String CREATE_SHARD_QUERY = "CREATE TABLE IF NOT EXISTS "
+			+ SHARD_TABLE + " (" + FIELD_BUCKET + " INTEGER PRIMARY KEY)";
+
+	/** The prefix of the bucket table names. */
+	private final String prefix;
+
+	/** The duration(milliseconds) of a bucket. */
+	private final long bucketDuration;
+
+	/** The maximum number of live buckets. */
+	private final int bucketCount;
+
+	/** The live buckets, oldest first. Null until loaded from the database. */
+	private List<Long> buckets;
+
+	/** The next row id. */
+	private long nextId;
+
+	/**
+	 * Instantiates a new sharded tweet store.
+	 *
+	 * @param prefix the prefix of the bucket table names
+	 * @param bucketDuration the duration(milliseconds) of a bucket
+	 * @param bucketCount the maximum number of live buckets
+	 */
+	public ShardedTweetStore(String prefix, long bucketDuration, int bucketCount) {
+		this.prefix = prefix;
+		this.bucketDuration = bucketDuration;
+		this.bucketCount = bucketCount;
+	}
+
+	/**
+	 * Inserts rows in the bucket for the given time in a single transaction,
+	 * creating the bucket and expiring the old ones if needed.
+	 *
+	 * @param db the database
+	 * @param time the insert time(milliseconds)
+	 * @param ids the array filled with the ids of the inserted rows
+	 * @param values the values
+	 * @return the number of rows inserted
+	 */
+	public synchronized int insert(SQLiteDatabase db, long time, long[] ids,
+			ContentValues... values) {
+		int retVal = 0;
+		boolean success = false;
+		db.beginTransaction();
+		try {
+			String table = getInsertTable(db, time);
+			for (int i = 0; i < values.length; i++) {
+				values[i].put(TweetDataConstants.FIELD_ID, nextId);
+				ids[i] = db.insert(table, null, values[i]);
+				if (ids[i] != -1) {
+					nextId++;
+					retVal++;
+				}
+			}
+			db.setTransactionSuccessful();
+			success = true;
+		} finally {
+			db.endTransaction();
+			if (!success) {
+				// Reload the buckets and ids from the database after a rollback
+				buckets = null;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Queries the live buckets. Queries sorted by
+	 * {@link TweetDataConstants#ORDER_BY} read the buckets newest first and stop
+	 * once the limit is reached. Other queries run on the union of all buckets.
+	 *
+	 * @param db the database
+	 * @param projection the projection
+	 * @param selection the selection
+	 * @param selectionArgs the selection args
+	 * @param sortOrder the sort order
+	 * @return the cursor
+	 */
+	public synchronized Cursor query(SQLiteDatabase db, String[] projection,
+			String selection, String[] selectionArgs, String sortOrder) {
+		loadBuckets(db);
+		if (buckets.isEmpty()) {
+			return db.query(TweetDataConstants.TWEET_TABLE, projection, selection,
+					selectionArgs, null, null, sortOrder);
+		}
+		int limit = TweetMemoryStore.getLimit(sortOrder);
+		if (limit < 0) {
+			return db.query(getUnionTable(), projection, selection,
+					selectionArgs, null, null, sortOrder);
+		}
+		List<Cursor> cursors = new ArrayList<>();
+		int remaining = limit;
+		for (int i = buckets.size() - 1; i >= 0 && remaining > 0; i--) {
+			String order = remaining == Integer.MAX_VALUE ? TweetDataConstants.ORDER_BY_NEWEST
+					: TweetDataConstants.ORDER_BY + remaining;
+			Cursor cursor = db.query(getTableName(buckets.get(i)), projection,
+					selection, selectionArgs, null, null, order);
+			if (remaining != Integer.MAX_VALUE) {
+				remaining -= cursor.getCount();
+			}
+			cursors.add(cursor);
+		}
+		return cursors.size() == 1 ? cursors.get(0)
+				: new MergeCursor(cursors.toArray(new Cursor[cursors.size()]));
+	}
+
+	/**
+	 * Deletes rows from the live buckets. Deleting all the rows drops every
+	 * bucket, after counting its rows.
+	 *
+	 * @param db the database
+	 * @param selection the selection
+	 * @param selectionArgs the selection args
+	 * @return the number of rows deleted
+	 */
+	public synchronized int delete(SQLiteDatabase db, String selection,
+			String[] selectionArgs) {
+		loadBuckets(db);
+		int deleted = 0;
+		boolean all = selection == null || "1".equals(selection);
+		db.beginTransaction();
+		try {
+			for (Long bucket : new ArrayList<>(buckets)) {
+				if (all) {
+					deleted += DatabaseUtils.queryNumEntries(db, getTableName(bucket));
+					dropBucket(db, bucket);
+				} else {
+					deleted += db.delete(getTableName(bucket), selection, selectionArgs);
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Drops the buckets which are too old to be live at the given time.
+	 *
+	 * @param db the database
+	 * @param time the time(milliseconds)
+	 * @return the number of buckets dropped
+	 */
+	public synchronized int expire(SQLiteDatabase db, long time) {
+		loadBuckets(db);
+		long oldestLive = time / bucketDuration - bucketCount + 1;
+		int dropped = 0;
+		while (!buckets.isEmpty() && buckets.get(0) < oldestLive) {
+			dropBucket(db, buckets.get(0));
+			dropped++;
+		}
+		return dropped;
+	}
+
+	/**
+	 * Gets the table for inserting rows at the given time. Creates the bucket
+	 * and expires the old buckets when a new bucket starts.
+	 *
+	 * @param db the database
+	 * @param time the time(milliseconds)
+	 * @return the table name
+	 */
+	private String getInsertTable(SQLiteDatabase db, long time) {
+		loadBuckets(db);
+		long bucket = time / bucketDuration;
+		if (buckets.isEmpty() || buckets.get(buckets.size() - 1) < bucket) {
+			db.execSQL(TweetContentProvider.CREATE_QUERY.replace(
+					TweetDataConstants.TWEET_TABLE, getTableName(bucket)));
+			ContentValues value = new ContentValues();
+			value.put(FIELD_BUCKET, bucket);
+			db.insert(SHARD_TABLE, null, value);
+			buckets.add(bucket);
+			if (buckets.size() == 1) {
+				moveRows(db, TweetDataConstants.TWEET_TABLE, getTableName(bucket));
+			}
+			expire(db, time);
+		} else {
+			bucket = buckets.get(buckets.size() - 1);
+		}
+		return getTableName(bucket);
+	}
+
+	/**
+	 * Drops a bucket table. The rows are not counted, so the cost does not
+	 * depend on the number of rows deleted.
+	 *
+	 * @param db the database
+	 * @param bucket the bucket
+	 */
+	private void dropBucket(SQLiteDatabase db, long bucket) {
+		db.execSQL("DROP TABLE IF EXISTS " + getTableName(bucket));
+		db.delete(SHARD_TABLE, FIELD_BUCKET + " = " + bucket, null);
+		buckets.remove(Long.valueOf(bucket));
+	}
+
+	/**
+	 * Loads the live buckets and the next row id from the database.
+	 *
+	 * @param db the database
+	 */
+	private void loadBuckets(SQLiteDatabase db) {
+		if (buckets != null) {
+			return;
+		}
+		List<Long> loaded = new ArrayList<>();
+		Cursor cursor = db.query(SHARD_TABLE, new String[] {FIELD_BUCKET}, null,
+				null, null, null, FIELD_BUCKET);
+		try {
+			while (cursor.moveToNext()) {
+				loaded.add(cursor.getLong(0));
+			}
+		} finally {
+			cursor.close();
+		}
+		nextId = getMaxId(db, TweetDataConstants.TWEET_TABLE) + 1;
+		if (!loaded.isEmpty()) {
+			String newest = getTableName(loaded.get(loaded.size() - 1));
+			nextId = Math.max(nextId, getMaxId(db, newest) + 1);
+			// Rows stored while the mode was off
+			moveRows(db, TweetDataConstants.TWEET_TABLE, newest);
+		}
+		buckets = loaded;
+	}
+
+	/**
+	 * Moves the rows of all the buckets back into the single tweets table and
+	 * drops the buckets. Called when the mode is off, so the rows stored in
+	 * buckets are not left behind. Does nothing if there are no buckets.
+	 *
+	 * @param db the database
+	 * @param prefix the prefix of the bucket table names
+	 */
+	public static void unshard(SQLiteDatabase db, String prefix) {
+		List<Long> loaded = new ArrayList<>();
+		Cursor cursor = db.query(SHARD_TABLE, new String[] {FIELD_BUCKET}, null,
+				null, null, null, FIELD_BUCKET);
+		try {
+			while (cursor.moveToNext()) {
+				loaded.add(cursor.getLong(0));
+			}
+		} finally {
+			cursor.close();
+		}
+		if (loaded.isEmpty()) {
+			return;
+		}
+		db.beginTransaction();
+		try {
+			for (Long bucket : loaded) {
+				String table = prefix + "_" + bucket;
+				moveRows(db, table, TweetDataConstants.TWEET_TABLE);
+				db.execSQL("DROP TABLE IF EXISTS " + table);
+			}
+			db.delete(SHARD_TABLE, null, null);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Moves all the rows of a table into another with the same columns,
+	 * keeping their ids.
+	 *
+	 * @param db the database
+	 * @param from the table the rows are moved from
+	 * @param to the table the rows are moved to
+	 */
+	private static void moveRows(SQLiteDatabase db, String from, String to) {
+		db.beginTransaction();
+		try {
+			db.execSQL("INSERT OR IGNORE INTO " + to + " SELECT * FROM " + from);
+			db.delete(from, null, null);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Gets the largest row id of a table.
+	 *
+	 * @param db the database
+	 * @param table the table
+	 * @return the largest id, 0 if the table is empty
+	 */
+	private static long getMaxId(SQLiteDatabase db, String table) {
+		Cursor cursor = db.rawQuery("SELECT MAX(" + TweetDataConstants.FIELD_ID
+				+ ") FROM " + table, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Gets the union of all the live bucket tables, for use as a table name.
+	 *
+	 * @return the union table
+	 */
+	private String getUnionTable() {
+		StringBuilder builder = new StringBuilder("(");
+		for (int i = 0; i < buckets.size(); i++) {
+			if (i > 0) {
+				builder.append(" UNION ALL ");
+			}
+			builder.append("SELECT * FROM ").append(getTableName(buckets.get(i)));
+		}
+		return builder.append(")").toString();
+	}
+
+	/**
+	 * Gets the table name of a bucket.
+	 *
+	 * @param bucket the bucket
+	 * @return the table name
+	 */
+	private String getTableName(long bucket) {
+		return prefix + "_" + bucket;
+	}
+}
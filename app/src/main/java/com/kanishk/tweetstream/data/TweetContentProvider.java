@@ -1,13 +1,29 @@
 package com.kanishk.tweetstream.data;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.SystemClock;
+
+import com.kanishk.tweetstream.memory.MemoryGovernor;
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.FrameMonitor;
+import com.kanishk.tweetstream.metrics.LatencyHistogram;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.kanishk.tweetstream.metrics.TweetLatency;
+import com.kanishk.tweetstream.model.TweetRecord;
 
 public class TweetContentProvider extends ContentProvider {
 
@@ -17,9 +33,17 @@ public class TweetContentProvider extends ContentProvider {
 			+ "PRIMARY KEY autoincrement, screen_name TEXT, name TEXT, image_url TEXT, tweet TEXT)";
 	public static final int TWEETS = 1;
 	public static final int TWEETS_SEARCH = 2;
+	private static final LatencyHistogram INSERT_TIME = MetricsRegistry.histogram(
+			"db.insert_batch", "ms");
+	private static final Counter ROWS_INSERTED = MetricsRegistry.counter("db.rows_inserted");
 	private static final UriMatcher matcher = new UriMatcher(
 			UriMatcher.NO_MATCH);
 	private SQLiteOpenHelper helper;
+	private ChangeNotifier notifier;
+	private TweetMemoryStore tweetStore;
+	private TweetMemoryStore searchStore;
+	private ShardedTweetStore shardedStore;
+	private final Map<String, SQLiteStatement> insertStatements = new HashMap<>();
 	static {
 		matcher.addURI(TweetDataConstants.AUTHORITY,
 				TweetDataConstants.TWEET_TABLE, TWEETS);
@@ -30,23 +54,40 @@ public class TweetContentProvider extends ContentProvider {
 	@Override
 	public boolean onCreate() {
 		helper = new DBHelper(getContext());
+		notifier = new ChangeNotifier(getContext().getContentResolver(),
+				TweetDataConstants.NOTIFY_INTERVAL);
+		tweetStore = new TweetMemoryStore(TweetDataConstants.HOT_TIER_SIZE);
+		searchStore = new TweetMemoryStore(TweetDataConstants.HOT_TIER_SIZE);
+		// Created first in the process, so the governor starts here
+		MemoryGovernor.init(getContext());
+		MemoryGovernor.register(tweetStore);
+		MemoryGovernor.register(searchStore);
+		FrameMonitor.setEnabled(TweetSettings.isFrameMonitor(getContext()));
+		boolean sharded = TweetSettings.isShardedStorage(getContext());
+		// Applied when the database is first opened, not at startup
+		helper.setSharded(sharded);
+		if (sharded) {
+			shardedStore = new ShardedTweetStore(TweetDataConstants.TWEET_TABLE,
+					TweetDataConstants.SHARD_DURATION, TweetDataConstants.SHARD_COUNT);
+		}
 		return false;
 	}
 
 	@Override
 	public Cursor query(Uri uri, String[] projection, String selection,
 			String[] selectionArgs, String sortOrder) {
-		SQLiteDatabase db = helper.getReadableDatabase();
 		Cursor readCursor = null;
-		switch (matcher.match(uri)) {
-		case TWEETS:
-			readCursor = db.query(TweetDataConstants.TWEET_TABLE, projection,
-					selection, selectionArgs, null, null, sortOrder);
-			break;
-		case TWEETS_SEARCH:
-			readCursor = db.query(TweetDataConstants.SEARCH_TABLE, projection,
-					selection, selectionArgs, null, null, sortOrder);
-			break;
+		String table = getTable(uri);
+		if (table != null) {
+			TweetMemoryStore store = getStore(uri);
+			if (!store.isPrimed() && store.getMaxRows() > 0) {
+				primeStore(uri, store, table);
+			}
+			readCursor = store.query(projection, selection, selectionArgs, sortOrder);
+			if (readCursor == null) {
+				readCursor = queryDatabase(uri, table, projection, selection,
+						selectionArgs, sortOrder);
+			}
 		}
 		if(readCursor != null) {
 			readCursor.setNotificationUri(getContext().getContentResolver(), uri);			
@@ -54,59 +95,138 @@ public class TweetContentProvider extends ContentProvider {
 		return readCursor;
 	}
 
-	@Override
-	public String getType(Uri uri) {
-		return null;
+	/**
+	 * Primes the in memory store of a table with its newest rows.
+	 *
+	 * @param uri the uri
+	 * @param store the store
+	 * @param table the table
+	 */
+	private void primeStore(Uri uri, TweetMemoryStore store, String table) {
+		store.prime(queryDatabase(uri, table, TweetDataConstants.COLUMNS, null,
+				null, TweetDataConstants.ORDER_BY + store.getMaxRows()));
 	}
 
-	@Override
-	public Uri insert(Uri uri, ContentValues values) {
-		long retVal = 0;
-		SQLiteDatabase db;
+	/**
+	 * Queries the database, spanning the time buckets in sharded mode.
+	 */
+	private Cursor queryDatabase(Uri uri, String table, String[] projection,
+			String selection, String[] selectionArgs, String sortOrder) {
+		FrameMonitor.onProviderAccess("query");
+		if (isSharded(uri)) {
+			return shardedStore.query(helper.getWritableDatabase(), projection,
+					selection, selectionArgs, sortOrder);
+		}
+		SQLiteDatabase db = helper.getReadableDatabase();
+		return db.query(table, projection, selection, selectionArgs, null,
+				null, sortOrder);
+	}
+
+	/**
+	 * Checks if the uri is stored in time bucket tables.
+	 *
+	 * @param uri the uri
+	 * @return true, if is sharded
+	 */
+	private boolean isSharded(Uri uri) {
+		return shardedStore != null && matcher.match(uri) == TWEETS;
+	}
+
+	/**
+	 * Gets the table name for a content uri.
+	 *
+	 * @param uri the uri
+	 * @return the table name, null if the uri does not match
+	 */
+	private static String getTable(Uri uri) {
 		switch (matcher.match(uri)) {
 		case TWEETS:
-			db = helper.getWritableDatabase();
-			retVal = db.insert(TweetDataConstants.TWEET_TABLE, null, values);
-			break;
+			return TweetDataConstants.TWEET_TABLE;
 		case TWEETS_SEARCH:
-			db = helper.getWritableDatabase();
-			retVal = db.insert(TweetDataConstants.SEARCH_TABLE, null, values);
-			break;
+			return TweetDataConstants.SEARCH_TABLE;
+		default:
+			return null;
 		}
-		if (retVal != -1) {
-			getContext().getContentResolver().notifyChange(uri, null);
+	}
+
+	/**
+	 * Gets the in memory store for a content uri.
+	 *
+	 * @param uri the uri
+	 * @return the store, null if the uri does not match
+	 */
+	private TweetMemoryStore getStore(Uri uri) {
+		switch (matcher.match(uri)) {
+		case TWEETS:
+			return tweetStore;
+		case TWEETS_SEARCH:
+			return searchStore;
+		default:
+			return null;
 		}
+	}
+
+	@Override
+	public String getType(Uri uri) {
 		return null;
 	}
 
+	@Override
+	public Uri insert(Uri uri, ContentValues values) {
+		return bulkInsert(uri, new ContentValues[] {values}) > 0 ? uri : null;
+	}
+
 	@Override
 	public int bulkInsert(Uri uri, ContentValues[] values) {
 		int retVal = 0;
-		SQLiteDatabase db;
-		switch (matcher.match(uri)) {
-		case TWEETS:
-			db = helper.getWritableDatabase();
-			retVal = insertData(db, TweetDataConstants.TWEET_TABLE, values);
-			break;
-		case TWEETS_SEARCH:
-			db = helper.getWritableDatabase();
-			retVal = insertData(db, TweetDataConstants.SEARCH_TABLE, values);
-			break;
+		String table = getTable(uri);
+		if (table != null) {
+			retVal = insertValues(uri, table, new long[values.length], values);
 		}
 		if (retVal > 0) {
-			getContext().getContentResolver().notifyChange(uri, null);
+			notifier.notifyChange(uri);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Inserts content values in a table, or in its time buckets in sharded
+	 * mode, and adds the rows to the in memory store.
+	 *
+	 * @param uri the uri of the table
+	 * @param table the table
+	 * @param ids the array filled with the ids of the rows, -1 for rows not
+	 * inserted
+	 * @param values the values
+	 * @return the number of rows inserted
+	 */
+	private int insertValues(Uri uri, String table, long[] ids, ContentValues[] values) {
+		FrameMonitor.onProviderAccess("insert");
+		long start = SystemClock.uptimeMillis();
+		SQLiteDatabase db = helper.getWritableDatabase();
+		int retVal;
+		if (isSharded(uri)) {
+			retVal = shardedStore.insert(db, System.currentTimeMillis(), ids, values);
+		} else {
+			retVal = insertData(db, table, ids, values);
 		}
+		getStore(uri).add(ids, values);
+		INSERT_TIME.record(SystemClock.uptimeMillis() - start);
+		ROWS_INSERTED.add(retVal);
 		return retVal;
 	}
 
-	private int insertData(SQLiteDatabase database, String tableName, ContentValues... values) {
+	private int insertData(SQLiteDatabase database, String tableName, long[] ids,
+			ContentValues... values) {
 		database.beginTransaction();
 		int retVal = 0;
 		try {
 			int length = values.length;
 			for (int i = 0; i < length; i++) {
-				database.insert(tableName, null, values[i]);
-				retVal++;
+				ids[i] = database.insert(tableName, null, values[i]);
+				if (ids[i] != -1) {
+					retVal++;
+				}
 			}
 			database.setTransactionSuccessful();
 		} finally {
@@ -115,23 +235,168 @@ public class TweetContentProvider extends ContentProvider {
 		return retVal;
 	}
 
+	/**
+	 * Inserts tweet records in a table. Records are written straight to the
+	 * provider of this process through compiled statements, without building
+	 * content values, or as content values with their ids returned if the table
+	 * is sharded. Falls back to {@link ContentResolver#bulkInsert(Uri, ContentValues[])}
+	 * if the provider runs in another process. The latency of the records is
+	 * recorded either way, up to their commit only in the fallback, which
+	 * returns no ids to match the displayed rows with.
+	 *
+	 * @param resolver the content resolver
+	 * @param uri the uri of the table
+	 * @param records the records, which may be recycled afterwards
+	 * @return the number of rows inserted
+	 */
+	public static int insertRecords(ContentResolver resolver, Uri uri,
+			List<TweetRecord> records) {
+		ContentProviderClient client = resolver.acquireContentProviderClient(uri);
+		if (client != null) {
+			try {
+				ContentProvider provider = client.getLocalContentProvider();
+				if (provider instanceof TweetContentProvider) {
+					int retVal = ((TweetContentProvider) provider).insertRecords(uri, records);
+					if (retVal >= 0) {
+						return retVal;
+					}
+				}
+			} finally {
+				client.release();
+			}
+		}
+		int retVal = resolver.bulkInsert(uri, toValues(records));
+		TweetLatency.onCommitted(null, records);
+		return retVal;
+	}
+
+	/**
+	 * Converts tweet records to content values.
+	 *
+	 * @param records the records
+	 * @return the values
+	 */
+	private static ContentValues[] toValues(List<TweetRecord> records) {
+		ContentValues[] values = new ContentValues[records.size()];
+		for (int i = 0; i < values.length; i++) {
+			TweetRecord record = records.get(i);
+			values[i] = new ContentValues();
+			values[i].put(TweetDataConstants.FIELD_SCREEN_NAME, record.getScreenName());
+			values[i].put(TweetDataConstants.FIELD_NAME, record.getName());
+			values[i].put(TweetDataConstants.FIELD_IMAGE_URL, record.getImageUrl());
+			values[i].put(TweetDataConstants.FIELD_TWEET_TEXT, record.getText());
+		}
+		return values;
+	}
+
+	/**
+	 * Inserts tweet records in a table through its compiled insert statement,
+	 * or as content values if the table is sharded.
+	 *
+	 * @param uri the uri of the table
+	 * @param records the records
+	 * @return the number of rows inserted, -1 if the uri does not match a
+	 * table
+	 */
+	int insertRecords(Uri uri, List<TweetRecord> records) {
+		String table = getTable(uri);
+		if (table == null) {
+			return -1;
+		}
+		if (isSharded(uri)) {
+			long[] ids = new long[records.size()];
+			int retVal = insertValues(uri, table, ids, toValues(records));
+			TweetLatency.onCommitted(ids, records);
+			if (retVal > 0) {
+				notifier.notifyChange(uri);
+			}
+			return retVal;
+		}
+		FrameMonitor.onProviderAccess("insert");
+		long start = SystemClock.uptimeMillis();
+		SQLiteDatabase db = helper.getWritableDatabase();
+		SQLiteStatement statement = getInsertStatement(db, table);
+		long[] ids = new long[records.size()];
+		int retVal = 0;
+		synchronized (statement) {
+			db.beginTransaction();
+			try {
+				for (int i = 0; i < ids.length; i++) {
+					TweetRecord record = records.get(i);
+					bindString(statement, 1, record.getScreenName());
+					bindString(statement, 2, record.getName());
+					bindString(statement, 3, record.getImageUrl());
+					bindString(statement, 4, record.getText());
+					ids[i] = statement.executeInsert();
+					if (ids[i] != -1) {
+						retVal++;
+					}
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		}
+		getStore(uri).add(ids, records);
+		INSERT_TIME.record(SystemClock.uptimeMillis() - start);
+		ROWS_INSERTED.add(retVal);
+		TweetLatency.onCommitted(ids, records);
+		if (retVal > 0) {
+			notifier.notifyChange(uri);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Gets the compiled insert statement of a table, compiling it on first use.
+	 * A statement is used by one thread at a time, synchronizing on it.
+	 *
+	 * @param db the database
+	 * @param table the table
+	 * @return the statement
+	 */
+	private SQLiteStatement getInsertStatement(SQLiteDatabase db, String table) {
+		synchronized (insertStatements) {
+			SQLiteStatement statement = insertStatements.get(table);
+			if (statement == null) {
+				statement = db.compileStatement("INSERT INTO " + table + " ("
+						+ TweetDataConstants.FIELD_SCREEN_NAME + ", "
+						+ TweetDataConstants.FIELD_NAME + ", "
+						+ TweetDataConstants.FIELD_IMAGE_URL + ", "
+						+ TweetDataConstants.FIELD_TWEET_TEXT + ") VALUES (?, ?, ?, ?)");
+				insertStatements.put(table, statement);
+			}
+			return statement;
+		}
+	}
+
+	/**
+	 * Binds a nullable string to a statement.
+	 */
+	private static void bindString(SQLiteStatement statement, int index, String value) {
+		if (value == null) {
+			statement.bindNull(index);
+		} else {
+			statement.bindString(index, value);
+		}
+	}
+
 	@Override
 	public int delete(Uri uri, String selection, String[] selectionArgs) {
-		int uriType = matcher.match(uri);
-		SQLiteDatabase sqlDB = helper.getWritableDatabase();
 		int rowsDeleted = 0;
-		switch (uriType) {
-		case TWEETS:
-			rowsDeleted = sqlDB.delete(TweetDataConstants.TWEET_TABLE,
-					selection, selectionArgs);
-			break;
-		case TWEETS_SEARCH:
-			rowsDeleted = sqlDB.delete(TweetDataConstants.SEARCH_TABLE,
-					selection, selectionArgs);
-			break;
+		String table = getTable(uri);
+		if (table != null) {
+			FrameMonitor.onProviderAccess("delete");
+			SQLiteDatabase sqlDB = helper.getWritableDatabase();
+			if (isSharded(uri)) {
+				rowsDeleted = shardedStore.delete(sqlDB, selection, selectionArgs);
+			} else {
+				rowsDeleted = sqlDB.delete(table, selection, selectionArgs);
+			}
+			getStore(uri).clear(selection == null || "1".equals(selection));
 		}
 		if(rowsDeleted > 0) {
-			getContext().getContentResolver().notifyChange(uri, null);
+			notifier.notifyChange(uri);
 		}
 		return rowsDeleted;
 	}
@@ -142,25 +407,72 @@ public class TweetContentProvider extends ContentProvider {
 		return 0;
 	}
 
+	/**
+	 * Sends the pending change notifications before the provider goes away,
+	 * so a trailing notification is not lost, and closes the database.
+	 */
+	@Override
+	public void shutdown() {
+		notifier.flush();
+		close();
+		super.shutdown();
+	}
+
 	public void close() {
+		synchronized (insertStatements) {
+			for (SQLiteStatement statement : insertStatements.values()) {
+				statement.close();
+			}
+			insertStatements.clear();
+		}
 		helper.close();
 	}
 
-	private static class DBHelper extends SQLiteOpenHelper {
+	static class DBHelper extends SQLiteOpenHelper {
+
+		/** The check whether the tweets are stored in time bucket tables or not. */
+		private boolean sharded;
 
 		public DBHelper(Context context) {
-			super(context, TweetDataConstants.DB_NAME, null,
-					TweetDataConstants.VERSION);
+			this(context, TweetDataConstants.DB_NAME);
+		}
+
+		DBHelper(Context context, String name) {
+			super(context, name, null, TweetDataConstants.VERSION);
+		}
+
+		/**
+		 * Sets whether the tweets are stored in time bucket tables. If not, the
+		 * buckets left by the mode are emptied into the tweets table when the
+		 * database opens.
+		 *
+		 * @param sharded true, if the tweets are stored in time bucket tables
+		 */
+		void setSharded(boolean sharded) {
+			this.sharded = sharded;
+		}
+
+		@Override
+		public void onOpen(SQLiteDatabase db) {
+			super.onOpen(db);
+			if (!sharded && !db.isReadOnly()) {
+				ShardedTweetStore.unshard(db, TweetDataConstants.TWEET_TABLE);
+			}
 		}
 
 		@Override
 		public void onCreate(SQLiteDatabase db) {
 			db.execSQL(CREATE_QUERY);
 			db.execSQL(CREATE_SEARCH_QUERY);
+			db.execSQL(ShardedTweetStore.CREATE_SHARD_QUERY);
 		}
 
 		@Override
 		public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+			if (SchemaMigrations.canUpgrade(oldVersion, newVersion)) {
+				SchemaMigrations.upgrade(db, oldVersion, newVersion);
+				return;
+			}
 			db.execSQL("DROP TABLE IF EXISTS " + TweetDataConstants.TWEET_TABLE);
 			db.execSQL("DROP TABLE IF EXISTS "
 					+ TweetDataConstants.SEARCH_TABLE);
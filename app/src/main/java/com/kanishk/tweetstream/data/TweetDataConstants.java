@@ -1,9 +1,12 @@
 package com.kanishk.tweetstream.data;
 
+import android.graphics.Bitmap;
 import android.net.Uri;
 
+import com.kanishk.tweetstream.operations.BuildConfig;
 import com.kanishk.tweetstream.operations.R;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
+import com.nostra13.universalimageloader.core.assist.ImageScaleType;
 
 /**
  * The Class TweetDataConstants.
@@ -34,15 +37,21 @@ public class TweetDataConstants {
 	/** The field tweet text. */
 	public static String FIELD_TWEET_TEXT = "tweet";
 
+	/** The order by id, newest first. */
+	public static final String ORDER_BY_NEWEST = "_id desc";
+
 	/** The order by id. */
-	public static String ORDER_BY = "_id desc LIMIT ";
+	public static String ORDER_BY = ORDER_BY_NEWEST + " LIMIT ";
+
+	/** The selection for rows newer than a given id. */
+	public static final String SELECTION_AFTER_ID = "_id > ?";
 	
 	/** The columns. */
 	public static String COLUMNS[] = {FIELD_SCREEN_NAME, FIELD_NAME,
 			FIELD_IMAGE_URL, FIELD_TWEET_TEXT, FIELD_ID};
 	
-	/** The default version of SQLite database. */
-	public static int VERSION = 1;
+	/** The version of SQLite database. Upgrades are run by {@link SchemaMigrations}. */
+	public static int VERSION = 2;
 	
 	/** The Constant AUTHORITY. */
 	public static final String AUTHORITY = "com.kanishk.tweetstream.data.TweetContentProvider";
@@ -55,14 +64,73 @@ public class TweetDataConstants {
 	public static final Uri CONTENT_SEARCH_URI = Uri.parse("content://"
 			+ AUTHORITY + "/" + TweetDataConstants.SEARCH_TABLE);
 	
+	/** The Constant NOTIFY_INTERVAL. The minimum interval(milliseconds) between two
+	 * change notifications of a content URI. */
+	public static final long NOTIFY_INTERVAL = 250;
+	
+	/** The Constant DELIVERY_LATENCY_TARGET. The target p99 time(milliseconds) from a
+	 * tweet arriving on the stream to its batch being handed to the database. */
+	public static final long DELIVERY_LATENCY_TARGET = 1000;
+	
+	/** The Constant HOT_TIER_SIZE. The number of newest rows per table kept in memory. */
+	public static final int HOT_TIER_SIZE = 200;
+	
+	/** The Constant SHARDED_STORAGE. Whether tweets are stored in time bucket tables
+	 * by default. Switched through {@link TweetSettings}. */
+	public static final boolean SHARDED_STORAGE = false;
+	
+	/** The Constant SHARD_DURATION. The duration(milliseconds) of a time bucket. */
+	public static final long SHARD_DURATION = 60 * 60 * 1000;
+	
+	/** The Constant SHARD_COUNT. The number of live time buckets kept. */
+	public static final int SHARD_COUNT = 24;
+	
+	/** The Constant JOURNAL_SYNC_INTERVAL. The maximum time(milliseconds) between two
+	 * syncs of the ingest journal to disk. */
+	public static final long JOURNAL_SYNC_INTERVAL = 1000;
+	
+	/** The Constant JOURNAL_COMPACT_DELAY. The time(milliseconds) journal records are
+	 * gathered before being loaded in the database. */
+	public static final long JOURNAL_COMPACT_DELAY = 250;
+	
+	/** The Constant JOURNAL_BATCH_SIZE. The maximum rows loaded in a single transaction
+	 * from the journal. */
+	public static final int JOURNAL_BATCH_SIZE = 1000;
+	
+	/** The Constant JOURNAL_ROTATE_SIZE. The size(bytes) of the applied part of the
+	 * journal past which it's rotated. */
+	public static final long JOURNAL_ROTATE_SIZE = 1024 * 1024;
+	
+	/** The Constant RECYCLER_LIST. Whether the tweet list uses the RecyclerView
+	 * backend instead of the ListView one by default. Switched through
+	 * {@link TweetSettings}. */
+	public static final boolean RECYCLER_LIST = false;
+	
+	/** The Constant WINDOWED_LIST. Whether the ListView backend pages its rows
+	 * through a bounded window instead of a growing cursor. */
+	public static final boolean WINDOWED_LIST = true;
+	
+	/** The Constant FRAME_MONITOR. Whether the frames of the tweet list are
+	 * measured while it's shown, and main thread provider access logged, by
+	 * default. On in debug builds only. Switched through {@link TweetSettings}. */
+	public static final boolean FRAME_MONITOR = BuildConfig.DEBUG;
+	
+	/** The Constant WINDOW_SIZE. The maximum number of rows the list window, or the
+	 * snapshot of the RecyclerView list, keeps. */
+	public static final int WINDOW_SIZE = 300;
+	
 	/** The Constant MAX_MEMORY_SIZE. */
 	public static final int MAX_MEMORY_SIZE = 4 * 1024 * 1024;
 	
-	/** The Constant IMAGE_THREAD_POOL. */
+	/** The Constant AVATAR_DISK_CACHE_MIN. The minimum size(bytes) of the avatar
+	 * disk cache, whatever the free disk space. */
+	public static final long AVATAR_DISK_CACHE_MIN = 4 * 1024 * 1024;
+	
+	/** The Constant IMAGE_THREAD_POOL. The number of threads loading the images on screen. */
 	public static final int IMAGE_THREAD_POOL = Runtime.getRuntime().availableProcessors() + 2;
 	
-	/** The Constant IMAGE_CACHE_PERCENT. The size of memory cache as percentage
-	 * of available memory*/
+	/** The Constant IMAGE_CACHE_PERCENT. The full size of memory cache as
+	 * percentage of available memory, shrunk under memory pressure. */
 	public static final int IMAGE_CACHE_PERCENT = 10;
 
 	/** The Constant SEARCH_TEXT. Key for search text on a stream*/
@@ -70,9 +138,6 @@ public class TweetDataConstants {
 	
 	/** The Constant UTF8. */
 	public static final String UTF8 = "UTF-8";
-	
-	/** The Constant TASK_FRAGMENT. */
-	public static final String TASK_FRAGMENT = "com.kanishk.tweet.taskFragment";
 
 	/** The Constant RECREATED. */
 	public static final String RECREATED ="recreated";
@@ -80,11 +145,19 @@ public class TweetDataConstants {
 	/** The Constant IS_NEW. */
 	public static final String IS_NEW ="is_new";
 	
-	/** The Constant IMAGE_DISPLAY_OPTIONS. */
+	/** The Constant AVATAR_RGB_565. Whether profile images are decoded without
+	 * alpha, at half the memory per pixel. */
+	public static final boolean AVATAR_RGB_565 = true;
+	
+	/** The Constant IMAGE_DISPLAY_OPTIONS. Images are decoded downsampled to the
+	 * size of their view. */
 	public static final DisplayImageOptions IMAGE_DISPLAY_OPTIONS;
 	static{
 		IMAGE_DISPLAY_OPTIONS = new DisplayImageOptions.Builder()
 		.showImageForEmptyUri(R.drawable.no_image).showImageOnFail(R.drawable.no_image)
-		.cacheOnDisk(true).cacheInMemory(true).showImageOnLoading(R.drawable.no_image).build();
+		.cacheOnDisk(true).cacheInMemory(true).showImageOnLoading(R.drawable.no_image)
+		.imageScaleType(ImageScaleType.EXACTLY)
+		.bitmapConfig(AVATAR_RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888)
+		.build();
 	}
 }
@@ -0,0 +1,912 @@
+package com.kanishk.tweetstream.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.LatencyHistogram;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.kanishk.tweetstream.metrics.TweetLatency;
+import com.kanishk.tweetstream.model.StringInterner;
+import com.kanishk.tweetstream.model.TweetRecord;
+import com.kanishk.tweetstream.scheduler.PriorityExecutor;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
+
+/**
+ * The Class TweetJournal. An append only journal of tweet records written
+ * before the tweets reach the database. Appends are sequential file writes,
+ * synced to disk periodically. A background compactor loads the journal into
+ * the content provider in large batches and checkpoints the applied offset.
+ * Records not yet applied when the process died are replayed on the first
+ * compaction after restart. Tweets are appended as soon as they are parsed,
+ * so a batch still being gathered survives the process. Records are encoded
+ * and decoded through buffers reused across records, and replayed into pooled
+ * {@link TweetRecord}s. The applied part of the journal is cut off once it
+ * grows past {@link TweetDataConstants#JOURNAL_ROTATE_SIZE}, by writing the
+ * records not yet applied to a new generation of the journal. A journal opens
+ * with a record of its generation, and the checkpoint names the generation it
+ * was written for, so a checkpoint left by a crash while the journal is
+ * replaced never applies to the new journal.
+ */
+public class TweetJournal {
+
+	/** The Constant JOURNAL_FILE. */
+	private static final String JOURNAL_FILE = "tweets.journal";
+
+	/** The Constant CHECKPOINT_FILE. The file holding the applied offset. */
+	private static final String CHECKPOINT_FILE = "tweets.journal.applied";
+
+	/** The Constant RECORD_TWEET. A tweet inserted in a table, without the stamps
+	 * of its ingestion stages. Only read, from journals of earlier versions. */
+	private static final byte RECORD_TWEET = 1;
+
+	/** The Constant RECORD_CLEAR. A table cleared. */
+	private static final byte RECORD_CLEAR = 2;
+
+	/** The Constant RECORD_TIMED_TWEET. A tweet inserted in a table, with the
+	 * stamps of its ingestion stages but not the process which took them. Only
+	 * read, from journals of earlier versions. */
+	private static final byte RECORD_TIMED_TWEET = 3;
+
+	/** The Constant RECORD_STAMPED_TWEET. A tweet inserted in a table, with the
+	 * stamps of its ingestion stages and the {@link TweetLatency#PROCESS_ID}
+	 * of the process which took them. */
+	private static final byte RECORD_STAMPED_TWEET = 4;
+
+	/** The Constant RECORD_GENERATION. The generation of the journal, its first
+	 * record. Journals of earlier versions have none, and are generation 0. */
+	private static final byte RECORD_GENERATION = 5;
+
+	/** The Constant TABLE_TWEETS. */
+	private static final byte TABLE_TWEETS = 0;
+
+	/** The Constant TABLE_SEARCH. */
+	private static final byte TABLE_SEARCH = 1;
+
+	/** The Constant MAX_RECORD. The maximum size(bytes) of a valid record. */
+	private static final int MAX_RECORD = 64 * 1024;
+
+	/** The Constant TAG. */
+	private static final String TAG = TweetJournal.class.getSimpleName();
+
+	/** The Constant ROTATE_FILE. The file the unapplied records are copied to
+	 * when the journal is rotated. */
+	private static final String ROTATE_FILE = "tweets.journal.tmp";
+
+	/** The Constant APPENDED. The tweets appended. */
+	private static final Counter APPENDED = MetricsRegistry.counter("journal.appended");
+
+	/** The Constant APPLIED. The tweets applied to the database. */
+	private static final Counter APPLIED = MetricsRegistry.counter("journal.applied");
+
+	/** The Constant SYNC_TIME. The time to sync the journal to disk. */
+	private static final LatencyHistogram SYNC_TIME = MetricsRegistry.histogram(
+			"journal.sync", "ms");
+
+	/** The journal file. */
+	private final File journalFile;
+
+	/** The checkpoint file. */
+	private final File checkpointFile;
+
+	/** The content resolver the journal is applied to. */
+	private final ContentResolver resolver;
+
+	/** The executor of the compactor, running one compaction at a time. */
+	private final PriorityExecutor compactor;
+
+	/** The output stream of the journal. */
+	private FileOutputStream fileStream;
+
+	/** The buffered output of the journal. */
+	private DataOutputStream output;
+
+	/** The buffer used for encoding a record. */
+	private final RecordBuffer recordBuffer;
+
+	/** The output encoding a record into the record buffer. */
+	private final DataOutputStream recordOutput;
+
+	/** The checksum of a record. */
+	private final CRC32 checksum;
+
+	/** The offset of the end of the journal. */
+	private volatile long endOffset;
+
+	/** The offset up to which the journal is applied to the database. */
+	private volatile long appliedOffset;
+
+	/** The generation of the journal. */
+	private long generation;
+
+	/** The offset of the first record after the generation record. */
+	private long baseOffset;
+
+	/** The time of the last sync to disk. */
+	private long lastSync;
+
+	/**
+	 * The recovered. The check whether a torn tail left by a crash has been
+	 * cut from the journal or not.
+	 */
+	private boolean recovered;
+
+	/** The check whether a compaction is scheduled or not. */
+	private boolean compactionScheduled;
+
+	/** The compaction task. */
+	private final Runnable compactTask = new Runnable() {
+		@Override
+		public void run() {
+			compact();
+		}
+	};
+
+	/**
+	 * Instantiates a new tweet journal. Schedules the replay of the records not
+	 * yet applied to the database. The size of the records not yet applied is
+	 * reported as the journal gauge.
+	 *
+	 * @param directory the directory of the journal files
+	 * @param resolver the content resolver
+	 */
+	public TweetJournal(File directory, ContentResolver resolver) {
+		this.journalFile = new File(directory, JOURNAL_FILE);
+		this.checkpointFile = new File(directory, CHECKPOINT_FILE);
+		this.resolver = resolver;
+		this.recordBuffer = new RecordBuffer(256);
+		this.recordOutput = new DataOutputStream(recordBuffer);
+		this.checksum = new CRC32();
+		this.compactor = TaskScheduler.JOURNAL;
+		readGeneration();
+		this.appliedOffset = Math.min(Math.max(readCheckpoint(generation), baseOffset),
+				journalFile.length());
+		compactionScheduled = true;
+		compactor.execute(compactTask);
+		MetricsRegistry.gauge("journal.pending_bytes", new Gauge() {
+			@Override
+			public long getValue() {
+				return Math.max(0, endOffset - appliedOffset);
+			}
+		});
+	}
+
+	/**
+	 * Appends a tweet to the journal, as soon as it's parsed. Syncs the journal
+	 * to disk if the last sync is older than
+	 * {@link TweetDataConstants#JOURNAL_SYNC_INTERVAL} and schedules a
+	 * compaction.
+	 *
+	 * @param dataURI the uri of the table
+	 * @param tweet the tweet
+	 * @throws IOException Signals that an I/O exception has occurred. The
+	 * partly written record is cut off.
+	 */
+	public synchronized void append(Uri dataURI, TweetRecord tweet) throws IOException {
+		appendRecord(RECORD_STAMPED_TWEET, getTableCode(dataURI), tweet);
+		APPENDED.increment();
+	}
+
+	/**
+	 * Appends the clearing of a table to the journal. It applies in order with
+	 * the tweets appended before and after it.
+	 *
+	 * @param dataURI the uri of the table
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void appendClear(Uri dataURI) throws IOException {
+		appendRecord(RECORD_CLEAR, getTableCode(dataURI), null);
+	}
+
+	/**
+	 * Waits until the records appended so far are applied to the database.
+	 * Used before writing to a table past the journal, so the write lands
+	 * after the journaled ones.
+	 */
+	public void awaitApplied() {
+		try {
+			compactor.submit(compactTask).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Log.e(TAG, e.toString());
+		}
+	}
+
+	/**
+	 * Appends a record, syncs the journal if due and schedules a compaction.
+	 * If the write fails, the journal is cut back to the last complete record,
+	 * so later records are not appended after a torn one.
+	 */
+	private void appendRecord(byte type, byte table, TweetRecord tweet) throws IOException {
+		openOutput();
+		long start = endOffset;
+		try {
+			writeRecord(type, table, tweet);
+			output.flush();
+		} catch (IOException e) {
+			cutTail(start);
+			throw e;
+		}
+		if (SystemClock.elapsedRealtime() - lastSync >= TweetDataConstants.JOURNAL_SYNC_INTERVAL) {
+			sync();
+		}
+		if (!compactionScheduled) {
+			compactionScheduled = true;
+			compactor.executeDelayed(compactTask, TweetDataConstants.JOURNAL_COMPACT_DELAY);
+		}
+	}
+
+	/**
+	 * Syncs the written records to disk.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void sync() throws IOException {
+		long start = SystemClock.elapsedRealtime();
+		if (output != null) {
+			output.flush();
+			fileStream.getFD().sync();
+		}
+		lastSync = SystemClock.elapsedRealtime();
+		SYNC_TIME.record(lastSync - start);
+	}
+
+	/**
+	 * Writes a single record.
+	 */
+	private void writeRecord(byte type, byte table, TweetRecord tweet) throws IOException {
+		recordBuffer.reset();
+		DataOutputStream record = recordOutput;
+		record.writeByte(type);
+		record.writeByte(table);
+		if (tweet != null) {
+			writeString(record, tweet.getScreenName());
+			writeString(record, tweet.getName());
+			writeString(record, tweet.getImageUrl());
+			writeString(record, tweet.getText());
+			record.writeLong(tweet.getCreatedAt());
+			record.writeLong(TweetLatency.PROCESS_ID);
+			record.writeLong(tweet.getReceivedTime());
+			record.writeLong(tweet.getParsedTime());
+		}
+		endOffset += writeFrame(output);
+	}
+
+	/**
+	 * Writes the generation record opening a journal.
+	 *
+	 * @param out the output of the journal
+	 * @param journalGeneration the generation of the journal
+	 * @return the size of the record
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private long writeGeneration(DataOutputStream out, long journalGeneration)
+			throws IOException {
+		recordBuffer.reset();
+		recordOutput.writeByte(RECORD_GENERATION);
+		recordOutput.writeByte(TABLE_TWEETS);
+		recordOutput.writeLong(journalGeneration);
+		return writeFrame(out);
+	}
+
+	/**
+	 * Writes the record encoded in the record buffer. A record is its payload
+	 * length, the checksum of the payload, and the payload itself.
+	 *
+	 * @param out the output
+	 * @return the size of the record
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private long writeFrame(DataOutputStream out) throws IOException {
+		checksum.reset();
+		checksum.update(recordBuffer.getBuffer(), 0, recordBuffer.size());
+		out.writeInt(recordBuffer.size());
+		out.writeInt((int) checksum.getValue());
+		recordBuffer.writeTo(out);
+		return 8 + recordBuffer.size();
+	}
+
+	/**
+	 * Applies the records after the checkpoint to the database in batches of
+	 * at most {@link TweetDataConstants#JOURNAL_BATCH_SIZE} rows. A torn
+	 * record at the end of the journal, left by a crash, is discarded. A
+	 * corrupt record stops the replay. It's dropped with the records after it
+	 * in the replayed range, but not the records appended during the replay,
+	 * which are carried to a new generation of the journal. The journal is
+	 * truncated once fully applied, and rotated once its applied part grows
+	 * too large.
+	 */
+	private void compact() {
+		long start;
+		long end;
+		synchronized (this) {
+			compactionScheduled = false;
+			try {
+				recover();
+				sync();
+			} catch (IOException e) {
+				Log.e(TAG, e.toString());
+				return;
+			}
+			start = appliedOffset;
+			end = endOffset;
+		}
+		if (start < end) {
+			long applied = readRecords(start, end, true);
+			synchronized (this) {
+				appliedOffset = applied;
+				writeCheckpoint(appliedOffset);
+				if (applied < end) {
+					Log.e(TAG, "Corrupt journal record at " + applied + ", dropping the journal up to "
+							+ end);
+					rotate(end);
+				}
+			}
+		}
+		synchronized (this) {
+			if (appliedOffset == endOffset && endOffset > baseOffset) {
+				truncate();
+			} else if (appliedOffset >= TweetDataConstants.JOURNAL_ROTATE_SIZE) {
+				rotate(appliedOffset);
+			}
+		}
+	}
+
+	/**
+	 * Cuts the journal at an offset, dropping the records after it. Output is
+	 * reopened on the next append.
+	 *
+	 * @param offset the offset
+	 */
+	private void cutTail(long offset) {
+		try {
+			closeOutput();
+		} catch (IOException e) {
+			// The buffered bytes are cut off anyway
+		}
+		try {
+			RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+			try {
+				file.getChannel().truncate(offset);
+			} finally {
+				file.close();
+			}
+			endOffset = offset;
+		} catch (IOException e) {
+			Log.e(TAG, e.toString());
+		}
+	}
+
+	/**
+	 * Rotates the journal. The records from an offset on are copied to a new
+	 * generation of the journal, which replaces the old one before the
+	 * checkpoint is moved to it. A crash in between leaves a checkpoint of the
+	 * old generation, so the new journal is replayed from its start.
+	 *
+	 * @param from the offset of the first record kept, the applied offset or
+	 * past it
+	 */
+	private void rotate(long from) {
+		File rotated = new File(journalFile.getParentFile(), ROTATE_FILE);
+		long newGeneration = generation + 1;
+		long newBase;
+		try {
+			if (output != null) {
+				output.flush();
+			}
+			RandomAccessFile source = new RandomAccessFile(journalFile, "r");
+			FileOutputStream target = new FileOutputStream(rotated);
+			try {
+				newBase = writeGeneration(new DataOutputStream(target), newGeneration);
+				FileChannel channel = source.getChannel();
+				long position = from;
+				while (position < endOffset) {
+					long copied = channel.transferTo(position, endOffset - position,
+							target.getChannel());
+					if (copied <= 0) {
+						throw new EOFException();
+					}
+					position += copied;
+				}
+				target.getFD().sync();
+			} finally {
+				target.close();
+				source.close();
+			}
+			closeOutput();
+			if (!rotated.renameTo(journalFile)) {
+				throw new IOException("Could not rotate the journal");
+			}
+		} catch (IOException e) {
+			Log.e(TAG, e.toString());
+			rotated.delete();
+			return;
+		}
+		generation = newGeneration;
+		baseOffset = newBase;
+		endOffset = newBase + endOffset - from;
+		appliedOffset = newBase;
+		writeCheckpoint(appliedOffset);
+	}
+
+	/**
+	 * Cuts the torn tail a crash may have left after the last valid record, so
+	 * that new records are appended after valid ones.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void recover() throws IOException {
+		if (recovered) {
+			return;
+		}
+		long length = journalFile.length();
+		endOffset = readRecords(appliedOffset, length, false);
+		if (length > endOffset) {
+			RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+			try {
+				file.getChannel().truncate(endOffset);
+			} finally {
+				file.close();
+			}
+		}
+		recovered = true;
+	}
+
+	/**
+	 * Reads the valid records between two offsets, applying them to the
+	 * database if required.
+	 *
+	 * @param start the start offset
+	 * @param end the end offset
+	 * @param apply whether to apply the records to the database
+	 * @return the offset after the last valid record
+	 */
+	private long readRecords(long start, long end, boolean apply) {
+		long offset = start;
+		DataInputStream input = null;
+		List<TweetRecord> batch = new ArrayList<>(TweetDataConstants.JOURNAL_BATCH_SIZE);
+		byte batchTable = TABLE_TWEETS;
+		RecordReader record = new RecordReader();
+		try {
+			FileInputStream fileInput = new FileInputStream(journalFile);
+			input = new DataInputStream(new BufferedInputStream(fileInput));
+			skipFully(input, start);
+			CRC32 crc = new CRC32();
+			while (offset < end) {
+				int length = input.readInt();
+				int expected = input.readInt();
+				if (length <= 0 || length > MAX_RECORD) {
+					break;
+				}
+				byte[] payload = record.reset(length);
+				input.readFully(payload, 0, length);
+				crc.reset();
+				crc.update(payload, 0, length);
+				if ((int) crc.getValue() != expected) {
+					break;
+				}
+				if (apply) {
+					byte type = record.readByte();
+					byte table = record.readByte();
+					if (type == RECORD_GENERATION) {
+						// Heads the journal, nothing to apply
+					} else {
+						if (type == RECORD_CLEAR || table != batchTable
+								|| batch.size() == TweetDataConstants.JOURNAL_BATCH_SIZE) {
+							flushBatch(batchTable, batch);
+						}
+						if (type == RECORD_CLEAR) {
+							resolver.delete(getTableUri(table), null, null);
+						} else {
+							TweetRecord tweet = TweetRecord.obtain();
+							boolean read = false;
+							try {
+								readTweet(record, type, tweet);
+								batch.add(tweet);
+								read = true;
+							} finally {
+								if (!read) {
+									tweet.recycle();
+								}
+							}
+						}
+						batchTable = table;
+					}
+				}
+				offset += 8 + length;
+			}
+		} catch (EOFException e) {
+			// Torn record at the end of the journal
+		} catch (IOException e) {
+			Log.e(TAG, e.toString());
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					Log.e(TAG, e.toString());
+				}
+			}
+		}
+		// The offset already covers the complete records of the last batch
+		flushBatch(batchTable, batch);
+		return offset;
+	}
+
+	/**
+	 * Reads the fields of a tweet record.
+	 *
+	 * @param record the reader of the record, past its type and table
+	 * @param type the type of the record
+	 * @param tweet the tweet the fields are read into
+	 * @throws IOException if the record is malformed
+	 */
+	private static void readTweet(RecordReader record, byte type, TweetRecord tweet)
+			throws IOException {
+		tweet.setScreenName(record.readString(TweetRecord.USER_STRINGS));
+		tweet.setName(record.readString(TweetRecord.USER_STRINGS));
+		tweet.setImageUrl(record.readString(TweetRecord.USER_STRINGS));
+		tweet.setText(record.readString(null));
+		if (type == RECORD_TIMED_TWEET) {
+			tweet.setCreatedAt(record.readLong());
+		} else if (type == RECORD_STAMPED_TWEET) {
+			tweet.setCreatedAt(record.readLong());
+			// Uptime stamps of an earlier process are meaningless
+			if (record.readLong() == TweetLatency.PROCESS_ID) {
+				tweet.setReceivedTime(record.readLong());
+				tweet.setParsedTime(record.readLong());
+			}
+		}
+	}
+
+	/**
+	 * Inserts a batch of rows in the table, and hands the records back to their
+	 * pool.
+	 */
+	private void flushBatch(byte table, List<TweetRecord> batch) {
+		if (!batch.isEmpty()) {
+			TweetContentProvider.insertRecords(resolver, getTableUri(table), batch);
+			APPLIED.add(batch.size());
+			TweetRecord.recycleAll(batch);
+		}
+	}
+
+	/**
+	 * Truncates the fully applied journal, starting its next generation, and
+	 * moves the checkpoint to it.
+	 */
+	private void truncate() {
+		try {
+			closeOutput();
+			fileStream = new FileOutputStream(journalFile, false);
+			output = new DataOutputStream(new BufferedOutputStream(fileStream));
+			baseOffset = writeGeneration(output, ++generation);
+			output.flush();
+			endOffset = baseOffset;
+			appliedOffset = baseOffset;
+			writeCheckpoint(appliedOffset);
+		} catch (IOException e) {
+			Log.e(TAG, e.toString());
+		}
+	}
+
+	/**
+	 * Opens the journal for appending, after the last valid record.
+	 */
+	private void openOutput() throws IOException {
+		if (output == null) {
+			recover();
+			fileStream = new FileOutputStream(journalFile, true);
+			output = new DataOutputStream(new BufferedOutputStream(fileStream));
+		}
+	}
+
+	/**
+	 * Closes the journal output.
+	 */
+	private void closeOutput() throws IOException {
+		if (output != null) {
+			output.close();
+			output = null;
+			fileStream = null;
+		}
+	}
+
+	/**
+	 * Reads the generation of the journal from its first record, and the
+	 * offset of the records after it.
+	 */
+	private void readGeneration() {
+		generation = 0;
+		baseOffset = 0;
+		if (!journalFile.exists()) {
+			return;
+		}
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new FileInputStream(journalFile));
+			int length = input.readInt();
+			int expected = input.readInt();
+			// The type, the table and the generation
+			if (length != 10) {
+				return;
+			}
+			byte[] payload = new byte[length];
+			input.readFully(payload);
+			CRC32 crc = new CRC32();
+			crc.update(payload, 0, length);
+			if ((int) crc.getValue() != expected || payload[0] != RECORD_GENERATION) {
+				return;
+			}
+			RecordReader record = new RecordReader();
+			System.arraycopy(payload, 0, record.reset(length), 0, length);
+			record.readByte();
+			record.readByte();
+			generation = record.readLong();
+			baseOffset = 8 + length;
+		} catch (IOException e) {
+			// An empty journal, or one of an earlier version
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					Log.e(TAG, e.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the applied offset from the checkpoint file. The file holds the
+	 * offset and the generation of the journal it applies to, which
+	 * checkpoints of earlier versions don't have. Those apply to generation 0.
+	 *
+	 * @param journalGeneration the generation of the journal
+	 * @return the applied offset, 0 if there is no checkpoint for the
+	 * generation
+	 */
+	private long readCheckpoint(long journalGeneration) {
+		if (!checkpointFile.exists()) {
+			return 0;
+		}
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new FileInputStream(checkpointFile));
+			long offset = input.readLong();
+			long checkpointGeneration = 0;
+			if (input.available() >= 8) {
+				checkpointGeneration = input.readLong();
+			}
+			return checkpointGeneration == journalGeneration ? offset : 0;
+		} catch (IOException e) {
+			Log.e(TAG, e.toString());
+			return 0;
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					Log.e(TAG, e.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the applied offset to the checkpoint file, with the generation of
+	 * the journal. The file is written to a temporary file first and renamed,
+	 * so it's never partially written.
+	 *
+	 * @param offset the applied offset
+	 */
+	private void writeCheckpoint(long offset) {
+		File temp = new File(checkpointFile.getPath() + ".tmp");
+		try {
+			FileOutputStream stream = new FileOutputStream(temp);
+			DataOutputStream out = new DataOutputStream(stream);
+			try {
+				out.writeLong(offset);
+				out.writeLong(generation);
+				out.flush();
+				stream.getFD().sync();
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(checkpointFile)) {
+				Log.e(TAG, "Could not write the journal checkpoint");
+			}
+		} catch (IOException e) {
+			Log.e(TAG, e.toString());
+		}
+	}
+
+	/**
+	 * Writes a nullable string.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	/**
+	 * Skips bytes of the input stream.
+	 */
+	private static void skipFully(DataInputStream in, long count) throws IOException {
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			count -= skipped;
+		}
+	}
+
+	/**
+	 * Gets the code of a table uri.
+	 */
+	private static byte getTableCode(Uri dataURI) {
+		return TweetDataConstants.CONTENT_SEARCH_URI.equals(dataURI) ? TABLE_SEARCH
+				: TABLE_TWEETS;
+	}
+
+	/**
+	 * Gets the uri of a table code.
+	 */
+	private static Uri getTableUri(byte table) {
+		return table == TABLE_SEARCH ? TweetDataConstants.CONTENT_SEARCH_URI
+				: TweetDataConstants.CONTENT_URI;
+	}
+
+	/**
+	 * The Class RecordBuffer. A byte array output stream exposing its buffer,
+	 * so the checksum of a record is computed without copying it.
+	 */
+	private static class RecordBuffer extends ByteArrayOutputStream {
+
+		/**
+		 * Instantiates a new record buffer.
+		 *
+		 * @param size the initial size
+		 */
+		RecordBuffer(int size) {
+			super(size);
+		}
+
+		/**
+		 * Gets the buffer, valid up to {@link #size()}.
+		 *
+		 * @return the buffer
+		 */
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+
+	/**
+	 * The Class RecordReader. Decodes the payload of a record, as written by
+	 * {@link DataOutputStream}, from a buffer reused across records. Strings
+	 * are decoded into a reused character buffer.
+	 */
+	private static class RecordReader {
+
+		/** The payload. */
+		private byte[] payload = new byte[1024];
+
+		/** The length of the payload. */
+		private int length;
+
+		/** The position in the payload. */
+		private int pos;
+
+		/** The buffer the strings are decoded into. */
+		private char[] chars = new char[256];
+
+		/**
+		 * Resets the reader for a payload, growing the buffer if needed.
+		 *
+		 * @param length the length of the payload
+		 * @return the buffer to read the payload into
+		 */
+		byte[] reset(int length) {
+			if (length > payload.length) {
+				payload = new byte[Math.max(payload.length * 2, length)];
+			}
+			this.length = length;
+			this.pos = 0;
+			return payload;
+		}
+
+		/**
+		 * Reads a byte.
+		 *
+		 * @return the byte
+		 * @throws EOFException if the payload is read to its end
+		 */
+		byte readByte() throws EOFException {
+			if (pos >= length) {
+				throw new EOFException();
+			}
+			return payload[pos++];
+		}
+
+		/**
+		 * Reads a long.
+		 *
+		 * @return the long
+		 * @throws EOFException if the payload is read to its end
+		 */
+		long readLong() throws EOFException {
+			long value = 0;
+			for (int i = 0; i < 8; i++) {
+				value = (value << 8) | (readByte() & 0xff);
+			}
+			return value;
+		}
+
+		/**
+		 * Reads a nullable string, in the modified UTF-8 of
+		 * {@link DataOutputStream#writeUTF(String)}.
+		 *
+		 * @param interner the intern table of the string, null to create a new
+		 * string
+		 * @return the string
+		 * @throws IOException if the string is malformed
+		 */
+		String readString(StringInterner interner) throws IOException {
+			if (readByte() == 0) {
+				return null;
+			}
+			int size = ((readByte() & 0xff) << 8) | (readByte() & 0xff);
+			if (pos + size > length) {
+				throw new EOFException();
+			}
+			if (size > chars.length) {
+				chars = new char[Math.max(chars.length * 2, size)];
+			}
+			int end = pos + size;
+			int count = 0;
+			while (pos < end) {
+				int a = payload[pos++] & 0xff;
+				if (a < 0x80) {
+					chars[count++] = (char) a;
+				} else if ((a & 0xe0) == 0xc0 && pos < end) {
+					int b = payload[pos++] & 0x3f;
+					chars[count++] = (char) (((a & 0x1f) << 6) | b);
+				} else if ((a & 0xf0) == 0xe0 && pos + 1 < end) {
+					int b = payload[pos++] & 0x3f;
+					int c = payload[pos++] & 0x3f;
+					chars[count++] = (char) (((a & 0x0f) << 12) | (b << 6) | c);
+				} else {
+					throw new UTFDataFormatException();
+				}
+			}
+			return interner != null ? interner.intern(chars, 0, count)
+					: new String(chars, 0, count);
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package com.kanishk.tweetstream.data;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.kanishk.tweetstream.memory.MemoryGovernor;
+import com.kanishk.tweetstream.memory.MemoryGovernor.OnMemoryStageListener;
+import com.kanishk.tweetstream.model.TweetRecord;
+
+/**
+ * The Class TweetMemoryStore. A bounded in memory store of the newest rows of a
+ * tweet table. The content provider writes every committed insert through this
+ * store so that first page and delta queries are answered without touching the
+ * disk. Queries which cannot be answered from memory return null and should
+ * fall back to SQLite. Under memory pressure the store keeps fewer rows, down
+ * to none, and is primed again once it may grow back.
+ */
+public class TweetMemoryStore implements OnMemoryStageListener {
+
+	/** The maximum number of rows kept in memory. */
+	private final int capacity;
+
+	/** The maximum number of rows kept at the current memory stage. */
+	private int maxRows;
+
+	/** The rows, newest first. */
+	private final ArrayDeque<Row> rows;
+
+	/**
+	 * The primed. The check whether the store holds the newest rows of the
+	 * table or not.
+	 */
+	private boolean primed;
+
+	/**
+	 * Instantiates a new tweet memory store.
+	 *
+	 * @param capacity the maximum number of rows kept in memory
+	 */
+	public TweetMemoryStore(int capacity) {
+		this.capacity = capacity;
+		this.maxRows = capacity;
+		this.rows = new ArrayDeque<>(capacity);
+	}
+
+	/**
+	 * Checks if the store holds the newest rows of the table.
+	 *
+	 * @return true, if is primed
+	 */
+	public synchronized boolean isPrimed() {
+		return primed;
+	}
+
+	/**
+	 * Gets the capacity.
+	 *
+	 * @return the maximum number of rows kept in memory
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the maximum number of rows kept at the current memory stage.
+	 *
+	 * @return the maximum number of rows
+	 */
+	public synchronized int getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * Drops the oldest rows beyond the share of the memory stage. A store
+	 * allowed to grow again is primed again, as its oldest rows are missing.
+	 *
+	 * @param stage the stage
+	 */
+	@Override
+	public synchronized void onMemoryStage(int stage) {
+		int newMaxRows = MemoryGovernor.scale(capacity, stage);
+		if (newMaxRows > maxRows) {
+			rows.clear();
+			primed = false;
+		}
+		maxRows = newMaxRows;
+		while (rows.size() > maxRows) {
+			rows.removeLast();
+		}
+	}
+
+	/**
+	 * Primes the store with the newest rows of the table. The cursor must
+	 * contain {@link TweetDataConstants#COLUMNS} sorted by id descending and
+	 * limited to {@link #getMaxRows()}. The cursor is closed.
+	 *
+	 * @param cursor the cursor
+	 */
+	public synchronized void prime(Cursor cursor) {
+		rows.clear();
+		try {
+			int idIndex = cursor.getColumnIndexOrThrow(TweetDataConstants.FIELD_ID);
+			int screenIndex = cursor.getColumnIndexOrThrow(TweetDataConstants.FIELD_SCREEN_NAME);
+			int nameIndex = cursor.getColumnIndexOrThrow(TweetDataConstants.FIELD_NAME);
+			int imageIndex = cursor.getColumnIndexOrThrow(TweetDataConstants.FIELD_IMAGE_URL);
+			int textIndex = cursor.getColumnIndexOrThrow(TweetDataConstants.FIELD_TWEET_TEXT);
+			while (cursor.moveToNext() && rows.size() < maxRows) {
+				Row row = new Row();
+				row.id = cursor.getLong(idIndex);
+				row.screenName = cursor.getString(screenIndex);
+				row.name = cursor.getString(nameIndex);
+				row.imageUrl = cursor.getString(imageIndex);
+				row.text = cursor.getString(textIndex);
+				rows.addLast(row);
+			}
+		} finally {
+			cursor.close();
+		}
+		primed = true;
+	}
+
+	/**
+	 * Adds the committed rows. The ids must be in ascending order, as assigned
+	 * by the database. Rows not committed to the database must not be added.
+	 * Rows already read by a concurrent {@link #prime(Cursor)} are skipped.
+	 *
+	 * @param ids the row ids
+	 * @param values the row values
+	 */
+	public synchronized void add(long[] ids, ContentValues[] values) {
+		if (!primed || maxRows == 0) {
+			return;
+		}
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] == -1 || (!rows.isEmpty() && ids[i] <= rows.getFirst().id)) {
+				continue;
+			}
+			Row row = obtainRow();
+			row.id = ids[i];
+			row.screenName = values[i].getAsString(TweetDataConstants.FIELD_SCREEN_NAME);
+			row.name = values[i].getAsString(TweetDataConstants.FIELD_NAME);
+			row.imageUrl = values[i].getAsString(TweetDataConstants.FIELD_IMAGE_URL);
+			row.text = values[i].getAsString(TweetDataConstants.FIELD_TWEET_TEXT);
+			rows.addFirst(row);
+		}
+	}
+
+	/**
+	 * Adds the committed rows of tweet records, as {@link #add(long[], ContentValues[])}
+	 * does. The records may be recycled afterwards, the store keeps only their
+	 * strings.
+	 *
+	 * @param ids the row ids
+	 * @param records the records
+	 */
+	public synchronized void add(long[] ids, List<TweetRecord> records) {
+		if (!primed || maxRows == 0) {
+			return;
+		}
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] == -1 || (!rows.isEmpty() && ids[i] <= rows.getFirst().id)) {
+				continue;
+			}
+			TweetRecord record = records.get(i);
+			Row row = obtainRow();
+			row.id = ids[i];
+			row.screenName = record.getScreenName();
+			row.name = record.getName();
+			row.imageUrl = record.getImageUrl();
+			row.text = record.getText();
+			rows.addFirst(row);
+		}
+	}
+
+	/**
+	 * Gets a row to add. A full store reuses its oldest row, which is dropped.
+	 *
+	 * @return the row
+	 */
+	private Row obtainRow() {
+		return rows.size() >= maxRows ? rows.removeLast() : new Row();
+	}
+
+	/**
+	 * Clears the store. Call with true if the table has been emptied, the store
+	 * then still answers queries. Call with false after a partial delete, the
+	 * store must be primed again before being used.
+	 *
+	 * @param tableEmpty whether the table is empty now
+	 */
+	public synchronized void clear(boolean tableEmpty) {
+		rows.clear();
+		primed = tableEmpty;
+	}
+
+	/**
+	 * Queries the store. Answers queries with no selection ordered by
+	 * {@link TweetDataConstants#ORDER_BY} and delta queries using
+	 * {@link TweetDataConstants#SELECTION_AFTER_ID}.
+	 *
+	 * @param projection the projection
+	 * @param selection the selection
+	 * @param selectionArgs the selection args
+	 * @param sortOrder the sort order
+	 * @return the cursor, or null if the query has to go to the database
+	 */
+	public synchronized Cursor query(String[] projection, String selection,
+			String[] selectionArgs, String sortOrder) {
+		if (!primed || projection == null) {
+			return null;
+		}
+		int limit = getLimit(sortOrder);
+		if (limit < 0) {
+			return null;
+		}
+		boolean complete = rows.size() < maxRows;
+		long afterId = Long.MIN_VALUE;
+		if (selection == null) {
+			if (limit > rows.size() && !complete) {
+				return null;
+			}
+		} else if (TweetDataConstants.SELECTION_AFTER_ID.equals(selection)
+				&& selectionArgs != null && selectionArgs.length == 1) {
+			afterId = Long.parseLong(selectionArgs[0]);
+			if (!complete && (rows.isEmpty() || rows.getLast().id - 1 > afterId)) {
+				return null;
+			}
+		} else {
+			return null;
+		}
+		MatrixCursor cursor = new MatrixCursor(projection, Math.min(limit, rows.size()));
+		Iterator<Row> iterator = rows.iterator();
+		int count = 0;
+		while (iterator.hasNext() && count < limit) {
+			Row row = iterator.next();
+			if (row.id <= afterId) {
+				break;
+			}
+			Object[] values = new Object[projection.length];
+			for (int i = 0; i < projection.length; i++) {
+				values[i] = row.get(projection[i]);
+			}
+			cursor.addRow(values);
+			count++;
+		}
+		return cursor;
+	}
+
+	/**
+	 * Gets the row limit from the sort order.
+	 *
+	 * @param sortOrder the sort order
+	 * @return the limit, {@link Integer#MAX_VALUE} if there's no limit or -1
+	 * if the sort order is not supported
+	 */
+	static int getLimit(String sortOrder) {
+		if (TweetDataConstants.ORDER_BY_NEWEST.equals(sortOrder)) {
+			return Integer.MAX_VALUE;
+		}
+		if (sortOrder == null || !sortOrder.startsWith(TweetDataConstants.ORDER_BY)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(sortOrder.substring(
+					TweetDataConstants.ORDER_BY.length()).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * The Class Row. A single tweet row kept in memory.
+	 */
+	private static class Row {
+
+		/** The id. */
+		long id;
+
+		/** The screen name. */
+		String screenName;
+
+		/** The name. */
+		String name;
+
+		/** The image url. */
+		String imageUrl;
+
+		/** The text. */
+		String text;
+
+		/**
+		 * Gets the value of a column.
+		 *
+		 * @param column the column name
+		 * @return the value
+		 */
+		Object get(String column) {
+			if (TweetDataConstants.FIELD_ID.equals(column)) {
+				return id;
+			} else if (TweetDataConstants.FIELD_SCREEN_NAME.equals(column)) {
+				return screenName;
+			} else if (TweetDataConstants.FIELD_NAME.equals(column)) {
+				return name;
+			} else if (TweetDataConstants.FIELD_IMAGE_URL.equals(column)) {
+				return imageUrl;
+			} else if (TweetDataConstants.FIELD_TWEET_TEXT.equals(column)) {
+				return text;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.kanishk.tweetstream.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * The Class TweetSettings. The storage, list and monitoring options that can be
+ * switched from the diagnostics screen, kept in shared preferences. Each option is read
+ * once by the component it configures, so a change applies the next time that
+ * component is created.
+ */
+public class TweetSettings {
+
+	/** The Constant PREFS_NAME. */
+	private static final String PREFS_NAME = "tweet_settings";
+
+	/** The Constant KEY_SHARDED_STORAGE. */
+	private static final String KEY_SHARDED_STORAGE = "sharded_storage";
+
+	/** The Constant KEY_RECYCLER_LIST. */
+	private static final String KEY_RECYCLER_LIST = "recycler_list";
+
+	/** The Constant KEY_FRAME_MONITOR. */
+	private static final String KEY_FRAME_MONITOR = "frame_monitor";
+
+	/**
+	 * Checks if stream tweets are stored in time bucket tables. Read by the
+	 * content provider when the process starts.
+	 *
+	 * @param context the context
+	 * @return true, if sharded storage is on
+	 */
+	public static boolean isShardedStorage(Context context) {
+		return getPreferences(context).getBoolean(KEY_SHARDED_STORAGE,
+				TweetDataConstants.SHARDED_STORAGE);
+	}
+
+	/**
+	 * Sets whether stream tweets are stored in time bucket tables. Applies
+	 * after the process restarts.
+	 *
+	 * @param context the context
+	 * @param sharded true, to store tweets in time bucket tables
+	 */
+	public static void setShardedStorage(Context context, boolean sharded) {
+		getPreferences(context).edit().putBoolean(KEY_SHARDED_STORAGE, sharded).apply();
+	}
+
+	/**
+	 * Checks if the tweet list uses the RecyclerView backend. Read by the list
+	 * fragment when it's created.
+	 *
+	 * @param context the context
+	 * @return true, if the RecyclerView backend is used
+	 */
+	public static boolean isRecyclerList(Context context) {
+		return getPreferences(context).getBoolean(KEY_RECYCLER_LIST,
+				TweetDataConstants.RECYCLER_LIST);
+	}
+
+	/**
+	 * Sets whether the tweet list uses the RecyclerView backend. Applies the
+	 * next time a tweet screen is opened.
+	 *
+	 * @param context the context
+	 * @param recycler true, to use the RecyclerView backend
+	 */
+	public static void setRecyclerList(Context context, boolean recycler) {
+		getPreferences(context).edit().putBoolean(KEY_RECYCLER_LIST, recycler).apply();
+	}
+
+	/**
+	 * Checks if the frames of the tweet list are measured and main thread
+	 * provider access logged. Read by the content provider when the process
+	 * starts.
+	 *
+	 * @param context the context
+	 * @return true, if the frame monitor is on
+	 */
+	public static boolean isFrameMonitor(Context context) {
+		return getPreferences(context).getBoolean(KEY_FRAME_MONITOR,
+				TweetDataConstants.FRAME_MONITOR);
+	}
+
+	/**
+	 * Sets whether the frames of the tweet list are measured and main thread
+	 * provider access logged. Applied at once by the diagnostics screen.
+	 *
+	 * @param context the context
+	 * @param monitor true, to turn the frame monitor on
+	 */
+	public static void setFrameMonitor(Context context, boolean monitor) {
+		getPreferences(context).edit().putBoolean(KEY_FRAME_MONITOR, monitor).apply();
+	}
+
+	/**
+	 * Gets the shared preferences of the settings.
+	 *
+	 * @param context the context
+	 * @return the preferences
+	 */
+	private static SharedPreferences getPreferences(Context context) {
+		return context.getApplicationContext().getSharedPreferences(PREFS_NAME,
+				Context.MODE_PRIVATE);
+	}
+}
@@ -0,0 +1,188 @@
+package com.kanishk.tweetstream.data;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.database.Cursor;
+
+/**
+ * The Class TweetSnapshot. An immutable copy of the tweet rows shown in the
+ * list, newest first, along with the changes from the previous snapshot. The
+ * changes are computed when the snapshot is created, off the main thread, so
+ * the list only has to dispatch them.
+ */
+public class TweetSnapshot {
+
+	/** The sequence numbering the snapshots. */
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	/** The empty snapshot. */
+	public static final TweetSnapshot EMPTY = new TweetSnapshot(new long[0],
+			new String[0][], null);
+
+	/** The number of this snapshot. */
+	private final int number;
+
+	/** The number of the snapshot the changes are computed from, -1 if none. */
+	private final int baseNumber;
+
+	/** The row ids. */
+	private final long[] ids;
+
+	/** The row values, in {@link TweetDataConstants#COLUMNS} order. */
+	private final String[][] rows;
+
+	/** The number of rows inserted at the top since the previous snapshot. */
+	private int topInserted;
+
+	/** The number of rows removed at the bottom since the previous snapshot. */
+	private int bottomRemoved;
+
+	/** The number of rows inserted at the bottom since the previous snapshot. */
+	private int bottomInserted;
+
+	/**
+	 * The full change. True if the changes from the previous snapshot are not
+	 * limited to insertions and removals at the ends.
+	 */
+	private boolean fullChange;
+
+	/**
+	 * Instantiates a new tweet snapshot.
+	 */
+	private TweetSnapshot(long[] ids, String[][] rows, TweetSnapshot previous) {
+		this.ids = ids;
+		this.rows = rows;
+		this.number = SEQUENCE.getAndIncrement();
+		this.baseNumber = previous == null ? -1 : previous.number;
+		diff(previous);
+	}
+
+	/**
+	 * Reads a snapshot from a cursor over {@link TweetDataConstants#COLUMNS}
+	 * sorted newest first, and computes the changes from the previous snapshot.
+	 * Call from a background thread.
+	 *
+	 * @param cursor the cursor
+	 * @param previous the previous snapshot, null if there's none
+	 * @return the tweet snapshot
+	 */
+	public static TweetSnapshot read(Cursor cursor, TweetSnapshot previous) {
+		int count = cursor.getCount();
+		long[] ids = new long[count];
+		String[][] rows = new String[count][];
+		int columns = TweetDataConstants.COLUMNS.length;
+		int idIndex = cursor.getColumnIndexOrThrow(TweetDataConstants.FIELD_ID);
+		int index = 0;
+		cursor.moveToPosition(-1);
+		while (cursor.moveToNext() && index < count) {
+			String[] row = new String[columns];
+			for (int i = 0; i < columns; i++) {
+				row[i] = cursor.getString(i);
+			}
+			ids[index] = cursor.getLong(idIndex);
+			rows[index] = row;
+			index++;
+		}
+		return new TweetSnapshot(ids, rows, previous);
+	}
+
+	/**
+	 * Computes the changes from the previous snapshot. Rows only come in at the
+	 * top as new tweets arrive, and come in or fall off at the bottom as the
+	 * page size changes.
+	 *
+	 * @param previous the previous snapshot
+	 */
+	private void diff(TweetSnapshot previous) {
+		if (previous == null || previous.ids.length == 0) {
+			topInserted = ids.length;
+			return;
+		}
+		int top = 0;
+		while (top < ids.length && ids[top] != previous.ids[0]) {
+			top++;
+		}
+		if (top == ids.length && ids.length > 0 && ids[0] < previous.ids[0]) {
+			fullChange = true;
+			return;
+		}
+		int common = Math.min(previous.ids.length, ids.length - top);
+		for (int i = 0; i < common; i++) {
+			if (ids[top + i] != previous.ids[i]) {
+				fullChange = true;
+				return;
+			}
+		}
+		topInserted = top;
+		bottomRemoved = previous.ids.length - common;
+		bottomInserted = ids.length - top - common;
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the count
+	 */
+	public int getCount() {
+		return ids.length;
+	}
+
+	/**
+	 * Gets the id of a row.
+	 *
+	 * @param position the position
+	 * @return the id
+	 */
+	public long getId(int position) {
+		return ids[position];
+	}
+
+	/**
+	 * Gets a value of a row.
+	 *
+	 * @param position the position
+	 * @param column the column index in {@link TweetDataConstants#COLUMNS}
+	 * @return the value
+	 */
+	public String getString(int position, int column) {
+		return rows[position][column];
+	}
+
+	/**
+	 * Gets the number of rows inserted at the top.
+	 *
+	 * @return the top inserted
+	 */
+	public int getTopInserted() {
+		return topInserted;
+	}
+
+	/**
+	 * Gets the number of rows removed at the bottom.
+	 *
+	 * @return the bottom removed
+	 */
+	public int getBottomRemoved() {
+		return bottomRemoved;
+	}
+
+	/**
+	 * Gets the number of rows inserted at the bottom.
+	 *
+	 * @return the bottom inserted
+	 */
+	public int getBottomInserted() {
+		return bottomInserted;
+	}
+
+	/**
+	 * Checks if the whole list has to be rebound to show this snapshot in place
+	 * of the given one.
+	 *
+	 * @param shown the snapshot shown
+	 * @return true, if is full change
+	 */
+	public boolean isFullChange(TweetSnapshot shown) {
+		return fullChange || shown.number != baseNumber;
+	}
+}
@@ -0,0 +1,135 @@
+package com.kanishk.tweetstream.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.kanishk.tweetstream.memory.MemoryGovernor;
+import com.kanishk.tweetstream.memory.MemoryGovernor.OnMemoryStageListener;
+import com.kanishk.tweetstream.operations.CustomScrollListener;
+
+/**
+ * The Class TweetSnapshotLoader. Loads the newest tweets as a
+ * {@link TweetSnapshot}. The rows are copied out of the cursor and diffed
+ * against the previous snapshot in the background, and the loader reloads
+ * whenever the content changes. The rows loaded are capped whatever the list
+ * asks for, and the cap shrinks with the memory stage, since every reload
+ * copies all of them.
+ */
+public class TweetSnapshotLoader extends AsyncTaskLoader<TweetSnapshot>
+		implements OnMemoryStageListener {
+
+	/** The Constant MIN_CAPACITY. The fewest rows loaded under memory pressure. */
+	private static final int MIN_CAPACITY = CustomScrollListener.ITEMS_PER_PAGE * 2;
+
+	/** The data uri. */
+	private final Uri dataUri;
+
+	/** The number of rows asked for by the list. */
+	private final int limit;
+
+	/** The maximum number of rows loaded at the normal memory stage. */
+	private final int fullCapacity;
+
+	/** The maximum number of rows loaded at the current memory stage. */
+	private volatile int capacity;
+
+	/** The observer reloading the snapshot on content change. */
+	private final ForceLoadContentObserver observer;
+
+	/** The last snapshot loaded, or the snapshot shown before the first load. */
+	private volatile TweetSnapshot snapshot;
+
+	/** The check whether this loader has loaded a snapshot or not. */
+	private boolean loaded;
+
+	/** The check whether the content observer is registered or not. */
+	private boolean observing;
+
+	/**
+	 * Instantiates a new tweet snapshot loader.
+	 *
+	 * @param context the context
+	 * @param dataUri the data uri
+	 * @param limit the number of rows asked for by the list
+	 * @param capacity the maximum number of rows loaded, whatever the limit
+	 * @param previous the snapshot currently shown, null if there's none
+	 */
+	public TweetSnapshotLoader(Context context, Uri dataUri, int limit, int capacity,
+			TweetSnapshot previous) {
+		super(context);
+		this.dataUri = dataUri;
+		this.limit = limit;
+		this.fullCapacity = capacity;
+		this.capacity = capacity;
+		this.snapshot = previous;
+		this.observer = new ForceLoadContentObserver();
+	}
+
+	@Override
+	public TweetSnapshot loadInBackground() {
+		Cursor cursor = getContext().getContentResolver().query(dataUri,
+				TweetDataConstants.COLUMNS, null, null,
+				TweetDataConstants.ORDER_BY + Math.min(limit, capacity));
+		if (cursor == null) {
+			return TweetSnapshot.EMPTY;
+		}
+		try {
+			return TweetSnapshot.read(cursor, snapshot);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Override
+	public void deliverResult(TweetSnapshot data) {
+		snapshot = data;
+		loaded = true;
+		if (isStarted()) {
+			super.deliverResult(data);
+		}
+	}
+
+	@Override
+	protected void onStartLoading() {
+		if (!observing) {
+			getContext().getContentResolver().registerContentObserver(dataUri, true,
+					observer);
+			MemoryGovernor.register(this);
+			observing = true;
+		}
+		if (loaded) {
+			deliverResult(snapshot);
+		}
+		if (takeContentChanged() || !loaded) {
+			forceLoad();
+		}
+	}
+
+	@Override
+	protected void onStopLoading() {
+		cancelLoad();
+	}
+
+	@Override
+	protected void onReset() {
+		super.onReset();
+		onStopLoading();
+		if (observing) {
+			getContext().getContentResolver().unregisterContentObserver(observer);
+			MemoryGovernor.unregister(this);
+			observing = false;
+		}
+	}
+
+	@Override
+	public void onMemoryStage(int stage) {
+		int newCapacity = Math.max(MemoryGovernor.scale(fullCapacity, stage), MIN_CAPACITY);
+		if (newCapacity != capacity) {
+			capacity = newCapacity;
+			// Reloads at once if started, else when started again
+			onContentChanged();
+		}
+	}
+}
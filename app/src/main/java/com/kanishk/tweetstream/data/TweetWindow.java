@@ -0,0 +1,360 @@
+package com.kanishk.tweetstream.data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+/**
+ * The Class TweetWindow. A sliding window over the rows of a tweet table,
+ * newest first. Only the rows inside the window are kept in memory. The
+ * window pages rows in by id range as the list scrolls in either direction,
+ * and drops the rows at the opposite end once it holds more than its
+ * capacity. The methods changing the window run queries and must be called
+ * from a single background thread.
+ */
+public class TweetWindow {
+
+	/** The Constant SELECTION_BEFORE_ID. The selection for rows older than an id. */
+	private static final String SELECTION_BEFORE_ID = TweetDataConstants.FIELD_ID + " < ?";
+
+	/** The Constant ORDER_BY_OLDEST. */
+	private static final String ORDER_BY_OLDEST = TweetDataConstants.FIELD_ID + " asc LIMIT ";
+
+	/** The Constant ID_COLUMN. The index of the id in the rows. */
+	private static final int ID_COLUMN = 4;
+
+	/** The Constant IMAGE_COLUMN. The index of the image url in the rows. */
+	private static final int IMAGE_COLUMN = 2;
+
+	/** The data uri. */
+	private final Uri dataUri;
+
+	/** The content resolver. */
+	private final ContentResolver resolver;
+
+	/** The maximum number of rows kept. */
+	private int capacity;
+
+	/** The rows in {@link TweetDataConstants#COLUMNS} order, newest first. */
+	private final List<String[]> rows;
+
+	/** The check whether the window holds the newest row of the table or not.
+	 * Also read from the main thread. */
+	private volatile boolean atHead;
+
+	/** The check whether the table has rows older than the window or not. */
+	private boolean hasOlder;
+
+	/**
+	 * Instantiates a new tweet window.
+	 *
+	 * @param resolver the content resolver
+	 * @param dataUri the data uri
+	 * @param capacity the maximum number of rows kept
+	 */
+	public TweetWindow(ContentResolver resolver, Uri dataUri, int capacity) {
+		this.resolver = resolver;
+		this.dataUri = dataUri;
+		this.capacity = capacity;
+		this.rows = new ArrayList<>(capacity);
+		this.atHead = true;
+		this.hasOlder = true;
+	}
+
+	/**
+	 * Reloads the head of the table, keeping as many rows as the window holds
+	 * now, with a minimum of the given count. Used for the first load and
+	 * when the table changes while the window is at the head.
+	 *
+	 * @param minCount the minimum number of rows
+	 * @return the change
+	 */
+	public Change refreshHead(int minCount) {
+		int count = Math.min(capacity, Math.max(minCount, rows.size()));
+		List<String[]> loaded = query(null, null, TweetDataConstants.ORDER_BY + count);
+		Change change = new Change();
+		int shown = rows.isEmpty() ? -1 : indexOf(loaded, getId(rows.get(0)));
+		if (shown < 0) {
+			change.reset = true;
+		} else {
+			change.addedTop = shown;
+			int kept = Math.min(rows.size(), loaded.size() - shown);
+			change.removedBottom = rows.size() - kept;
+			change.addedBottom = loaded.size() - shown - kept;
+		}
+		change.released = collectReleased(rows, loaded);
+		rows.clear();
+		rows.addAll(loaded);
+		atHead = true;
+		hasOlder = loaded.size() == count;
+		return finish(change);
+	}
+
+	/**
+	 * Loads rows older than the window, dropping the newest rows if the
+	 * window is full.
+	 *
+	 * @param count the number of rows to load
+	 * @return the change
+	 */
+	public Change loadOlder(int count) {
+		Change change = new Change();
+		if (rows.isEmpty()) {
+			return refreshHead(count);
+		}
+		String oldest = String.valueOf(getId(rows.get(rows.size() - 1)));
+		List<String[]> loaded = query(SELECTION_BEFORE_ID, new String[] {oldest},
+				TweetDataConstants.ORDER_BY + count);
+		hasOlder = loaded.size() == count;
+		rows.addAll(loaded);
+		change.addedBottom = loaded.size();
+		int overflow = rows.size() - capacity;
+		if (overflow > 0) {
+			List<String[]> dropped = new ArrayList<>(rows.subList(0, overflow));
+			rows.subList(0, overflow).clear();
+			change.removedTop = overflow;
+			change.released = collectReleased(dropped, rows);
+			atHead = false;
+		}
+		return finish(change);
+	}
+
+	/**
+	 * Loads rows newer than the window, dropping the oldest rows if the
+	 * window is full.
+	 *
+	 * @param count the number of rows to load
+	 * @return the change
+	 */
+	public Change loadNewer(int count) {
+		Change change = new Change();
+		if (rows.isEmpty() || atHead) {
+			return refreshHead(count);
+		}
+		String newest = String.valueOf(getId(rows.get(0)));
+		List<String[]> loaded = query(TweetDataConstants.SELECTION_AFTER_ID,
+				new String[] {newest}, ORDER_BY_OLDEST + count);
+		atHead = loaded.size() < count;
+		for (String[] row : loaded) {
+			rows.add(0, row);
+		}
+		change.addedTop = loaded.size();
+		int overflow = rows.size() - capacity;
+		if (overflow > 0) {
+			List<String[]> dropped = new ArrayList<>(rows.subList(rows.size() - overflow,
+					rows.size()));
+			rows.subList(rows.size() - overflow, rows.size()).clear();
+			change.removedBottom = overflow;
+			change.released = collectReleased(dropped, rows);
+			hasOlder = true;
+		}
+		return finish(change);
+	}
+
+	/**
+	 * Sets the maximum number of rows kept. A window holding more rows drops
+	 * those farthest from a row, keeping a quarter of the new capacity above
+	 * it. The row is looked up when the window is cut, so earlier operations
+	 * moving it are taken into account. If it's no longer in the window, the
+	 * rows are dropped from the bottom.
+	 *
+	 * @param newCapacity the maximum number of rows kept
+	 * @param anchorId the id of the row to keep, such as the first visible one
+	 * @return the change, null if no row is dropped
+	 */
+	public Change setCapacity(int newCapacity, long anchorId) {
+		capacity = newCapacity;
+		int overflow = rows.size() - capacity;
+		if (overflow <= 0) {
+			return null;
+		}
+		int start = getDroppedTop(rows.size(), capacity, Math.max(0, indexOf(rows, anchorId)));
+		List<String[]> dropped = new ArrayList<>(rows.subList(0, start));
+		dropped.addAll(rows.subList(start + capacity, rows.size()));
+		rows.subList(start + capacity, rows.size()).clear();
+		rows.subList(0, start).clear();
+		Change change = new Change();
+		change.removedTop = start;
+		change.removedBottom = overflow - start;
+		change.released = collectReleased(dropped, rows);
+		if (change.removedTop > 0) {
+			atHead = false;
+		}
+		if (change.removedBottom > 0) {
+			hasOlder = true;
+		}
+		return finish(change);
+	}
+
+	/**
+	 * Gets the number of rows dropped from the top when a window is cut down
+	 * to its capacity, keeping a quarter of the capacity above a row. The
+	 * rest of the overflow is dropped from the bottom.
+	 *
+	 * @param size the number of rows in the window
+	 * @param capacity the capacity
+	 * @param anchor the position of the row to keep
+	 * @return the rows dropped from the top
+	 */
+	static int getDroppedTop(int size, int capacity, int anchor) {
+		return Math.max(0, Math.min(anchor - capacity / 4, size - capacity));
+	}
+
+	/**
+	 * Counts the rows newer than the window, up to a limit.
+	 *
+	 * @param limit the limit
+	 * @return the number of rows
+	 */
+	public int countNewer(int limit) {
+		if (rows.isEmpty()) {
+			return 0;
+		}
+		String newest = String.valueOf(getId(rows.get(0)));
+		Cursor cursor = resolver.query(dataUri, new String[] {TweetDataConstants.FIELD_ID},
+				TweetDataConstants.SELECTION_AFTER_ID, new String[] {newest},
+				TweetDataConstants.ORDER_BY + limit);
+		if (cursor == null) {
+			return 0;
+		}
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Checks if the window holds the newest row of the table.
+	 *
+	 * @return true, if is at head
+	 */
+	public boolean isAtHead() {
+		return atHead;
+	}
+
+	/**
+	 * Checks if the table has rows older than the window.
+	 *
+	 * @return true, if successful
+	 */
+	public boolean hasOlder() {
+		return hasOlder;
+	}
+
+	/**
+	 * Finishes a change with a cursor over the rows of the window.
+	 */
+	private Change finish(Change change) {
+		MatrixCursor cursor = new MatrixCursor(TweetDataConstants.COLUMNS, rows.size());
+		for (String[] row : rows) {
+			cursor.addRow(row);
+		}
+		change.cursor = cursor;
+		change.hasOlder = hasOlder;
+		return change;
+	}
+
+	/**
+	 * Runs a query and copies the rows.
+	 */
+	private List<String[]> query(String selection, String[] selectionArgs, String sortOrder) {
+		List<String[]> loaded = new ArrayList<>();
+		Cursor cursor = resolver.query(dataUri, TweetDataConstants.COLUMNS, selection,
+				selectionArgs, sortOrder);
+		if (cursor == null) {
+			return loaded;
+		}
+		try {
+			int columns = TweetDataConstants.COLUMNS.length;
+			while (cursor.moveToNext()) {
+				String[] row = new String[columns];
+				for (int i = 0; i < columns; i++) {
+					row[i] = cursor.getString(i);
+				}
+				loaded.add(row);
+			}
+		} finally {
+			cursor.close();
+		}
+		return loaded;
+	}
+
+	/**
+	 * Collects the dropped rows whose image no kept row uses, one row per
+	 * image.
+	 *
+	 * @param dropped the dropped rows
+	 * @param kept the kept rows
+	 * @return the rows
+	 */
+	private static List<String[]> collectReleased(List<String[]> dropped, List<String[]> kept) {
+		Set<String> keptImages = new HashSet<>();
+		for (String[] row : kept) {
+			keptImages.add(row[IMAGE_COLUMN]);
+		}
+		List<String[]> released = new ArrayList<>();
+		for (String[] row : dropped) {
+			if (row[IMAGE_COLUMN] != null && keptImages.add(row[IMAGE_COLUMN])) {
+				released.add(row);
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * Gets the id of a row.
+	 */
+	private static long getId(String[] row) {
+		return Long.parseLong(row[ID_COLUMN]);
+	}
+
+	/**
+	 * Gets the position of a row id in a list of rows.
+	 */
+	private static int indexOf(List<String[]> list, long id) {
+		for (int i = 0; i < list.size(); i++) {
+			if (getId(list.get(i)) == id) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The Class Change. The rows added and removed at each end of the window
+	 * by an operation, with a cursor over the new rows of the window.
+	 */
+	public static class Change {
+
+		/** The cursor over the rows of the window. */
+		public Cursor cursor;
+
+		/** The rows added at the top. */
+		public int addedTop;
+
+		/** The rows removed from the top. */
+		public int removedTop;
+
+		/** The rows added at the bottom. */
+		public int addedBottom;
+
+		/** The rows removed from the bottom. */
+		public int removedBottom;
+
+		/** The reset. True if the rows shown before are gone. */
+		public boolean reset;
+
+		/** The check whether the table has rows older than the window or not. */
+		public boolean hasOlder;
+
+		/** The dropped rows whose image is no longer used by the window. */
+		public List<String[]> released;
+	}
+}
@@ -0,0 +1,405 @@
+package com.kanishk.tweetstream.image;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.StatFs;
+import android.util.Log;
+
+import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.nostra13.universalimageloader.cache.disc.DiskCache;
+import com.nostra13.universalimageloader.utils.IoUtils;
+
+/**
+ * The Class AvatarDiskCache. An LRU disk cache of profile images keyed by the
+ * screen name of their user. Every user has at most one entry, so a changed
+ * profile image url replaces the old image instead of adding a new one. The
+ * size limit is a share of the free disk space when the cache is created.
+ * Hits, misses and evictions are counted.
+ * <p>
+ * The screen name is carried by the image uri as its fragment, see
+ * {@link AvatarVariant#getUri(String, String, int)}. Fragments are not sent
+ * to the server. The key is the escaped screen name itself rather than a hash
+ * of it, so two users never share an entry. Uris without a fragment are keyed
+ * by the hash of the whole uri.
+ */
+public class AvatarDiskCache implements DiskCache {
+
+	/** The Constant CACHE_DIR. */
+	private static final String CACHE_DIR = "avatars";
+
+	/** The Constant FREE_SPACE_SHARE. The share of the free disk space used. */
+	private static final float FREE_SPACE_SHARE = 0.02f;
+
+	/** The Constant MAX_CACHE_SIZE. The size limit whatever the free space. */
+	private static final long MAX_CACHE_SIZE = 64 * 1024 * 1024;
+
+	/** The Constant TEMP_SUFFIX. */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/** The Constant SEPARATOR. Separates the key and the uri hash in file names. */
+	private static final char SEPARATOR = '-';
+
+	/** The Constant HASH_KEY_PREFIX. Starts the keys of uris without a screen name. */
+	private static final char HASH_KEY_PREFIX = '#';
+
+	/** The cache directory. */
+	private final File directory;
+
+	/** The size limit in bytes. */
+	private final long maxSize;
+
+	/** The entries by key, least recently used first. */
+	private final LinkedHashMap<String, File> entries;
+
+	/** The keys saved and not looked up since, not counted as hits. */
+	private final Set<String> fresh;
+
+	/** The number of hits. */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** The number of misses. */
+	private final AtomicLong misses = new AtomicLong();
+
+	/** The number of evictions. */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/** The total size of the entries in bytes. */
+	private long size;
+
+	/**
+	 * Creates the avatar cache in the cache directory of the application,
+	 * sized from the free disk space. Its stats are reported as the disk cache
+	 * gauges.
+	 *
+	 * @param context the context
+	 * @return the avatar disk cache
+	 */
+	public static AvatarDiskCache create(Context context) {
+		File directory = new File(context.getCacheDir(), CACHE_DIR);
+		directory.mkdirs();
+		long free = 0;
+		try {
+			StatFs stat = new StatFs(directory.getAbsolutePath());
+			free = (long) stat.getAvailableBlocks() * stat.getBlockSize();
+		} catch (IllegalArgumentException e) {
+			Log.e(AvatarDiskCache.class.toString(), e.toString());
+		}
+		long maxSize = Math.max(TweetDataConstants.AVATAR_DISK_CACHE_MIN,
+				Math.min(MAX_CACHE_SIZE, (long) (free * FREE_SPACE_SHARE)));
+		final AvatarDiskCache cache = new AvatarDiskCache(directory, maxSize);
+		MetricsRegistry.gauge("images.disk_hits", new Gauge() {
+			@Override
+			public long getValue() {
+				return cache.getHits();
+			}
+		});
+		MetricsRegistry.gauge("images.disk_misses", new Gauge() {
+			@Override
+			public long getValue() {
+				return cache.getMisses();
+			}
+		});
+		MetricsRegistry.gauge("images.disk_evictions", new Gauge() {
+			@Override
+			public long getValue() {
+				return cache.getEvictions();
+			}
+		});
+		MetricsRegistry.gauge("images.disk_size", new Gauge() {
+			@Override
+			public long getValue() {
+				return cache.getSize();
+			}
+		});
+		return cache;
+	}
+
+	/**
+	 * Instantiates a new avatar disk cache, indexing the entries already in
+	 * the directory by their modification time.
+	 *
+	 * @param directory the cache directory
+	 * @param maxSize the size limit in bytes
+	 */
+	public AvatarDiskCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.fresh = new HashSet<>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			Arrays.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File lhs, File rhs) {
+					long diff = lhs.lastModified() - rhs.lastModified();
+					return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+				}
+			});
+			for (File file : files) {
+				String name = file.getName();
+				int separator = name.lastIndexOf(SEPARATOR);
+				if (name.endsWith(TEMP_SUFFIX) || separator < 0) {
+					file.delete();
+					continue;
+				}
+				File previous = entries.put(name.substring(0, separator), file);
+				if (previous != null) {
+					size -= previous.length();
+					previous.delete();
+				}
+				size += file.length();
+			}
+			trim();
+		}
+	}
+
+	@Override
+	public File getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public synchronized File get(String imageUri) {
+		String key = getKey(imageUri);
+		File file = entries.get(key);
+		if (file != null && !file.getName().equals(getFileName(key, imageUri))) {
+			// The user changed the profile image
+			remove(key, file);
+			file = null;
+		}
+		if (fresh.remove(key)) {
+			return file;
+		}
+		if (file == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+			file.setLastModified(System.currentTimeMillis());
+		}
+		return file;
+	}
+
+	@Override
+	public boolean save(String imageUri, InputStream imageStream,
+			IoUtils.CopyListener listener) throws IOException {
+		File temp = getTempFile(imageUri);
+		boolean saved = false;
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+		try {
+			saved = IoUtils.copyStream(imageStream, out, listener);
+		} finally {
+			IoUtils.closeSilently(out);
+			if (saved) {
+				saved = commit(imageUri, temp);
+			} else {
+				temp.delete();
+			}
+		}
+		return saved;
+	}
+
+	@Override
+	public boolean save(String imageUri, Bitmap bitmap) throws IOException {
+		File temp = getTempFile(imageUri);
+		boolean saved = false;
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+		try {
+			saved = bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+		} finally {
+			IoUtils.closeSilently(out);
+			if (saved) {
+				saved = commit(imageUri, temp);
+			} else {
+				temp.delete();
+			}
+		}
+		return saved;
+	}
+
+	@Override
+	public synchronized boolean remove(String imageUri) {
+		String key = getKey(imageUri);
+		File file = entries.get(key);
+		if (file == null) {
+			return false;
+		}
+		remove(key, file);
+		return true;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public synchronized void clear() {
+		for (File file : entries.values()) {
+			file.delete();
+		}
+		entries.clear();
+		fresh.clear();
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of lookups which found the image.
+	 *
+	 * @return the hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of lookups which did not find the image.
+	 *
+	 * @return the misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of entries evicted to stay within the size limit.
+	 *
+	 * @return the evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the size limit.
+	 *
+	 * @return the size limit in bytes
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the total size of the entries.
+	 *
+	 * @return the size in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Moves a written file in place of the entry of its key, then evicts the
+	 * least recently used entries beyond the size limit.
+	 *
+	 * @param imageUri the image uri
+	 * @param temp the written file
+	 * @return true, if successful
+	 */
+	private synchronized boolean commit(String imageUri, File temp) {
+		String key = getKey(imageUri);
+		File file = new File(directory, getFileName(key, imageUri));
+		File previous = entries.remove(key);
+		if (previous != null) {
+			size -= previous.length();
+			previous.delete();
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			return false;
+		}
+		entries.put(key, file);
+		fresh.add(key);
+		size += file.length();
+		trim();
+		return true;
+	}
+
+	/**
+	 * Evicts the least recently used entries beyond the size limit.
+	 */
+	private void trim() {
+		Iterator<Map.Entry<String, File>> iterator = entries.entrySet().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			Map.Entry<String, File> eldest = iterator.next();
+			size -= eldest.getValue().length();
+			eldest.getValue().delete();
+			fresh.remove(eldest.getKey());
+			iterator.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes an entry.
+	 *
+	 * @param key the key
+	 * @param file the file of the entry
+	 */
+	private void remove(String key, File file) {
+		entries.remove(key);
+		fresh.remove(key);
+		size -= file.length();
+		file.delete();
+	}
+
+	/**
+	 * Gets a temporary file to write an image to.
+	 *
+	 * @param imageUri the image uri
+	 * @return the file
+	 */
+	private File getTempFile(String imageUri) {
+		return new File(directory, getFileName(getKey(imageUri), imageUri)
+				+ Thread.currentThread().getId() + TEMP_SUFFIX);
+	}
+
+	/**
+	 * Gets the key of an image uri, the screen name it carries escaped for a
+	 * file name. Uris without a screen name are keyed by their hash, starting
+	 * with {@link #HASH_KEY_PREFIX} which the escaping never produces.
+	 *
+	 * @param imageUri the image uri
+	 * @return the key
+	 */
+	private static String getKey(String imageUri) {
+		int fragment = imageUri.lastIndexOf('#');
+		if (fragment < 0) {
+			return HASH_KEY_PREFIX + Integer.toHexString(imageUri.hashCode());
+		}
+		try {
+			return URLEncoder.encode(imageUri.substring(fragment + 1), TweetDataConstants.UTF8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Gets the file name of an entry. The name holds the hash of the uri, so
+	 * an entry is only returned for the uri it was saved for.
+	 *
+	 * @param key the key
+	 * @param imageUri the image uri
+	 * @return the file name
+	 */
+	private static String getFileName(String key, String imageUri) {
+		return key + SEPARATOR + Integer.toHexString(imageUri.hashCode());
+	}
+}
@@ -0,0 +1,100 @@
+package com.kanishk.tweetstream.image;
+
+import android.content.Context;
+
+import com.kanishk.tweetstream.operations.R;
+
+/**
+ * The Class AvatarVariant. Picks the variant of a Twitter profile image which
+ * matches the size it's drawn at. Profile image urls are delivered for the
+ * 48px "_normal" variant, and the same image exists in smaller and larger
+ * sizes under other suffixes. Taking the variant nearest to the view size
+ * avoids both upscaling a small variant on dense screens and downloading a
+ * much larger one; the decode scales the image the rest of the way.
+ */
+public final class AvatarVariant {
+
+	/** The Constant NORMAL. The suffix of the delivered variant. */
+	private static final String NORMAL = "_normal";
+
+	/** The Constant SUFFIXES. The variant suffixes, smallest first. */
+	private static final String[] SUFFIXES = {"_mini", NORMAL, "_bigger", "_400x400"};
+
+	/** The Constant SIZES. The sizes(pixels) of the variants. */
+	private static final int[] SIZES = {24, 48, 73, 400};
+
+	/**
+	 * Instantiates a new avatar variant.
+	 */
+	private AvatarVariant() {
+	}
+
+	/**
+	 * Gets the size(pixels) the profile images are drawn at in the tweet rows.
+	 *
+	 * @param context the context
+	 * @return the size
+	 */
+	public static int getTargetSize(Context context) {
+		return context.getResources().getDimensionPixelSize(R.dimen.image_size);
+	}
+
+	/**
+	 * Gets the url of the variant of a profile image for a size. Urls which
+	 * are not of the delivered variant are returned unchanged.
+	 *
+	 * @param imageUrl the delivered image url
+	 * @param size the size(pixels) the image is drawn at
+	 * @return the url of the variant
+	 */
+	public static String getUrl(String imageUrl, int size) {
+		if (imageUrl == null) {
+			return null;
+		}
+		int extension = imageUrl.lastIndexOf('.');
+		if (extension < imageUrl.lastIndexOf('/')) {
+			extension = imageUrl.length();
+		}
+		int suffix = extension - NORMAL.length();
+		if (suffix < 0 || !imageUrl.startsWith(NORMAL, suffix)) {
+			return imageUrl;
+		}
+		return imageUrl.substring(0, suffix) + getSuffix(size) + imageUrl.substring(extension);
+	}
+
+	/**
+	 * Gets the uri a profile image is loaded and cached under: the url of the
+	 * variant for a size, with the screen name of the user as fragment. The
+	 * fragment keys the {@link AvatarDiskCache} entry and is not sent to the
+	 * server.
+	 *
+	 * @param imageUrl the delivered image url
+	 * @param screenName the screen name of the user
+	 * @param size the size(pixels) the image is drawn at
+	 * @return the uri
+	 */
+	public static String getUri(String imageUrl, String screenName, int size) {
+		String url = getUrl(imageUrl, size);
+		if (url == null || screenName == null || url.indexOf('#') >= 0) {
+			return url;
+		}
+		return url + '#' + screenName;
+	}
+
+	/**
+	 * Gets the suffix of the variant nearest to a size. Ties go to the larger
+	 * variant.
+	 *
+	 * @param size the size(pixels)
+	 * @return the suffix
+	 */
+	private static String getSuffix(int size) {
+		int nearest = 0;
+		for (int i = 1; i < SIZES.length; i++) {
+			if (Math.abs(SIZES[i] - size) <= Math.abs(SIZES[nearest] - size)) {
+				nearest = i;
+			}
+		}
+		return SUFFIXES[nearest];
+	}
+}
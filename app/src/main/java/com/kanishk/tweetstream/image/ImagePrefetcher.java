@@ -0,0 +1,153 @@
+package com.kanishk.tweetstream.image;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.view.View;
+
+import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
+import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
+import com.nostra13.universalimageloader.core.assist.FailReason;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+/**
+ * The Class ImagePrefetcher. Warms the image caches with the profile images
+ * of rows about to be shown, such as freshly inserted tweets and the rows
+ * below the visible ones. It runs its own image loader sharing the caches of
+ * the main one, on the {@link TaskScheduler#PREFETCH} executor and with a
+ * bandwidth budget of its own, so it never competes with the images on
+ * screen. The most recent requests are served first, and requests beyond the
+ * queue limit are dropped.
+ */
+public class ImagePrefetcher implements ImageLoadingListener {
+
+	/** The Constant PREFETCH_BANDWIDTH. The prefetch budget in bytes per second. */
+	public static final int PREFETCH_BANDWIDTH = 64 * 1024;
+
+	/** The Constant PREFETCH_QUEUE_LIMIT. The maximum number of pending prefetches. */
+	public static final int PREFETCH_QUEUE_LIMIT = 40;
+
+	/** The Constant PREFETCH_ROWS. The number of rows ahead of the visible ones
+	 * whose images are prefetched. */
+	public static final int PREFETCH_ROWS = 15;
+
+	/** The Constant INSERT_PREFETCH_LIMIT. The maximum number of images
+	 * prefetched for an inserted batch, newest first. */
+	public static final int INSERT_PREFETCH_LIMIT = 20;
+
+	/** The Constant prefetcher. */
+	private static final ImagePrefetcher prefetcher = new ImagePrefetcher();
+
+	/** The urls of the pending prefetches. */
+	private final Set<String> pending = new HashSet<>();
+
+	/** The loader, null until initialized. */
+	private volatile ImageLoader loader;
+
+	/** The size the images are shown at. */
+	private ImageSize targetSize;
+
+	/**
+	 * Gets the single instance of ImagePrefetcher.
+	 *
+	 * @return single instance of ImagePrefetcher
+	 */
+	public static ImagePrefetcher getInstance() {
+		return prefetcher;
+	}
+
+	/**
+	 * Initializes the prefetcher with the caches of the main image loader,
+	 * which must be initialized first. Does nothing if already initialized.
+	 *
+	 * @param context the context
+	 */
+	public synchronized void init(Context context) {
+		if (loader != null) {
+			return;
+		}
+		Context appContext = context.getApplicationContext();
+		ImageLoader main = ImageLoader.getInstance();
+		ImageLoaderConfiguration config = new ImageLoaderConfiguration.Builder(appContext)
+				.memoryCache(main.getMemoryCache())
+				.diskCache(main.getDiskCache())
+				.taskExecutor(TaskScheduler.PREFETCH)
+				.taskExecutorForCachedImages(TaskScheduler.PREFETCH)
+				.imageDownloader(new ThrottledImageDownloader(appContext, PREFETCH_BANDWIDTH))
+				.build();
+		int size = AvatarVariant.getTargetSize(appContext);
+		targetSize = new ImageSize(size, size);
+		ImageLoader prefetchLoader = new PrefetchLoader();
+		prefetchLoader.init(config);
+		loader = prefetchLoader;
+	}
+
+	/**
+	 * Prefetches an image, unless it's already in the memory cache, pending or
+	 * the queue is full. Does nothing until the prefetcher is initialized.
+	 *
+	 * @param storedUrl the image url stored in the row
+	 * @param screenName the screen name of the user
+	 */
+	public void prefetch(String storedUrl, String screenName) {
+		ImageLoader prefetchLoader = loader;
+		if (prefetchLoader == null || storedUrl == null) {
+			return;
+		}
+		String imageUrl = AvatarVariant.getUri(storedUrl, screenName, targetSize.getWidth());
+		String key = MemoryCacheUtils.generateKey(imageUrl, targetSize);
+		if (prefetchLoader.getMemoryCache().get(key) != null) {
+			return;
+		}
+		synchronized (pending) {
+			if (pending.size() >= PREFETCH_QUEUE_LIMIT || !pending.add(imageUrl)) {
+				return;
+			}
+		}
+		prefetchLoader.loadImage(imageUrl, targetSize,
+				TweetDataConstants.IMAGE_DISPLAY_OPTIONS, this);
+	}
+
+	@Override
+	public void onLoadingStarted(String imageUri, View view) {
+	}
+
+	@Override
+	public void onLoadingFailed(String imageUri, View view, FailReason failReason) {
+		finish(imageUri);
+	}
+
+	@Override
+	public void onLoadingComplete(String imageUri, View view, Bitmap loadedImage) {
+		finish(imageUri);
+	}
+
+	@Override
+	public void onLoadingCancelled(String imageUri, View view) {
+		finish(imageUri);
+	}
+
+	/**
+	 * Finishes a prefetch.
+	 *
+	 * @param imageUri the image uri
+	 */
+	private void finish(String imageUri) {
+		synchronized (pending) {
+			pending.remove(imageUri);
+		}
+	}
+
+	/**
+	 * The Class PrefetchLoader. An image loader instance apart from the
+	 * application wide one.
+	 */
+	private static class PrefetchLoader extends ImageLoader {
+	}
+}
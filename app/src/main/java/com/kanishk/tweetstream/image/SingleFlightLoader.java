@@ -0,0 +1,247 @@
+package com.kanishk.tweetstream.image;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.view.View;
+import android.widget.ImageView;
+
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.FrameMonitor;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.nostra13.universalimageloader.core.DisplayImageOptions;
+import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.core.assist.FailReason;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.LoadedFrom;
+import com.nostra13.universalimageloader.core.assist.ViewScaleType;
+import com.nostra13.universalimageloader.core.imageaware.ImageViewAware;
+import com.nostra13.universalimageloader.core.imageaware.NonViewAware;
+import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+/**
+ * The Class SingleFlightLoader. Displays profile images with at most one load
+ * in flight per uri. A user often has several rows on screen at once, and
+ * each row would otherwise fetch and decode the same image. Views asking for
+ * an image already being loaded wait for that load and are all completed from
+ * its result, whether or not the memory cache kept it. A load is cancelled
+ * once no view waits for it. Must be used on the main thread.
+ */
+public class SingleFlightLoader {
+
+	/** The number of loads started. */
+	private static final AtomicLong flightsStarted = new AtomicLong();
+
+	/** The number of requests served by a load already in flight. */
+	private static final AtomicLong duplicatesSaved = new AtomicLong();
+
+	/** The Constant MEMORY_HITS. The images displayed from the memory cache. */
+	private static final Counter MEMORY_HITS = MetricsRegistry.counter("images.memory_hits");
+
+	/** The Constant MEMORY_MISSES. The images not in the memory cache. */
+	private static final Counter MEMORY_MISSES = MetricsRegistry.counter("images.memory_misses");
+
+	static {
+		MetricsRegistry.gauge("images.flights", new Gauge() {
+			@Override
+			public long getValue() {
+				return flightsStarted.get();
+			}
+		});
+		MetricsRegistry.gauge("images.duplicates_saved", new Gauge() {
+			@Override
+			public long getValue() {
+				return duplicatesSaved.get();
+			}
+		});
+	}
+
+	/** The image loader. */
+	private final ImageLoader loader;
+
+	/** The display options. */
+	private final DisplayImageOptions options;
+
+	/** The size the images are loaded at, the size of the views. */
+	private final ImageSize targetSize;
+
+	/** The loads in flight by uri. */
+	private final Map<String, Flight> flights;
+
+	/** The uris the waiting views are bound to. */
+	private final Map<ImageView, String> waiting;
+
+	/**
+	 * Instantiates a new single flight loader.
+	 *
+	 * @param context the context
+	 * @param loader the image loader
+	 * @param options the display options
+	 */
+	public SingleFlightLoader(Context context, ImageLoader loader, DisplayImageOptions options) {
+		this.loader = loader;
+		this.options = options;
+		int size = AvatarVariant.getTargetSize(context);
+		this.targetSize = new ImageSize(size, size);
+		this.flights = new HashMap<>();
+		this.waiting = new WeakHashMap<>();
+	}
+
+	/**
+	 * Displays an image in a view. Cached images are displayed at once.
+	 * Otherwise the view shows the loading image and joins the load of the
+	 * uri, starting one if none is in flight. Until the image loader is
+	 * initialized the view only shows the loading image.
+	 *
+	 * @param imageUri the image uri
+	 * @param view the view
+	 */
+	public void displayImage(String imageUri, ImageView view) {
+		if (!loader.isInited()) {
+			view.setImageDrawable(options.getImageOnLoading(view.getResources()));
+			return;
+		}
+		cancel(view);
+		Bitmap cached = imageUri == null ? null : loader.getMemoryCache().get(
+				MemoryCacheUtils.generateKey(imageUri, targetSize));
+		if (imageUri == null || (cached != null && !cached.isRecycled())) {
+			if (imageUri != null) {
+				MEMORY_HITS.increment();
+			}
+			loader.displayImage(imageUri, view, options);
+			return;
+		}
+		MEMORY_MISSES.increment();
+		loader.cancelDisplayTask(view);
+		view.setImageDrawable(options.getImageOnLoading(view.getResources()));
+		waiting.put(view, imageUri);
+		if (flights.containsKey(imageUri)) {
+			duplicatesSaved.incrementAndGet();
+			return;
+		}
+		Flight flight = new Flight(imageUri);
+		flights.put(imageUri, flight);
+		flightsStarted.incrementAndGet();
+		loader.displayImage(imageUri, flight.aware, options, flight);
+	}
+
+	/**
+	 * Stops a view waiting for its image, typically when its row is recycled.
+	 * The load is cancelled if no other view waits for it.
+	 *
+	 * @param view the view
+	 */
+	public void cancel(ImageView view) {
+		if (!loader.isInited()) {
+			return;
+		}
+		loader.cancelDisplayTask(view);
+		String imageUri = waiting.remove(view);
+		if (imageUri == null || waiting.containsValue(imageUri)) {
+			return;
+		}
+		Flight flight = flights.remove(imageUri);
+		if (flight != null) {
+			loader.cancelDisplayTask(flight.aware);
+		}
+	}
+
+	/**
+	 * Gets the number of loads started.
+	 *
+	 * @return the number of loads
+	 */
+	public static long getFlightsStarted() {
+		return flightsStarted.get();
+	}
+
+	/**
+	 * Gets the number of requests served by a load already in flight, each a
+	 * fetch and decode saved.
+	 *
+	 * @return the number of requests
+	 */
+	public static long getDuplicatesSaved() {
+		return duplicatesSaved.get();
+	}
+
+	/**
+	 * Completes the views waiting for a load with the image loaded. The image
+	 * is set directly, as the memory cache may not have kept it, at
+	 * {@link com.kanishk.tweetstream.memory.MemoryGovernor#STAGE_CRITICAL}.
+	 *
+	 * @param flight the load
+	 * @param loadedImage the image loaded, null if the load failed
+	 */
+	private void complete(Flight flight, Bitmap loadedImage) {
+		if (flights.get(flight.imageUri) != flight) {
+			return;
+		}
+		flights.remove(flight.imageUri);
+		Iterator<Map.Entry<ImageView, String>> iterator = waiting.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<ImageView, String> entry = iterator.next();
+			if (flight.imageUri.equals(entry.getValue())) {
+				iterator.remove();
+				ImageView view = entry.getKey();
+				if (loadedImage == null) {
+					view.setImageDrawable(options.getImageOnFail(view.getResources()));
+				} else {
+					options.getDisplayer().display(loadedImage, new ImageViewAware(view),
+							LoadedFrom.MEMORY_CACHE);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The Class Flight. A load in flight and the listener of its result.
+	 */
+	private class Flight implements ImageLoadingListener {
+
+		/** The image uri. */
+		final String imageUri;
+
+		/** The target the image is loaded for. */
+		final NonViewAware aware;
+
+		/**
+		 * Instantiates a new flight.
+		 *
+		 * @param imageUri the image uri
+		 */
+		Flight(String imageUri) {
+			this.imageUri = imageUri;
+			this.aware = new NonViewAware(imageUri, targetSize, ViewScaleType.CROP);
+		}
+
+		@Override
+		public void onLoadingStarted(String uri, View view) {
+		}
+
+		@Override
+		public void onLoadingFailed(String uri, View view, FailReason failReason) {
+			complete(this, null);
+		}
+
+		@Override
+		public void onLoadingComplete(String uri, View view, Bitmap loadedImage) {
+			FrameMonitor.mark(FrameMonitor.TAG_IMAGE_DECODE);
+			complete(this, loadedImage);
+		}
+
+		@Override
+		public void onLoadingCancelled(String uri, View view) {
+			if (flights.get(imageUri) == this) {
+				flights.remove(imageUri);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.kanishk.tweetstream.image;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.nostra13.universalimageloader.core.download.BaseImageDownloader;
+
+/**
+ * The Class ThrottledImageDownloader. An image downloader whose network reads
+ * share a bandwidth budget. Readers block once the bytes read in the current
+ * second exceed the budget, so background downloads cannot starve the
+ * downloads of the images on screen.
+ */
+public class ThrottledImageDownloader extends BaseImageDownloader {
+
+	/** The budget in bytes per second. */
+	private final int bytesPerSecond;
+
+	/** The start time of the current budget period. */
+	private long periodStart;
+
+	/** The bytes read in the current budget period. */
+	private int periodBytes;
+
+	/**
+	 * Instantiates a new throttled image downloader.
+	 *
+	 * @param context the context
+	 * @param bytesPerSecond the budget in bytes per second
+	 */
+	public ThrottledImageDownloader(Context context, int bytesPerSecond) {
+		super(context);
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	@Override
+	protected InputStream getStreamFromNetwork(String imageUri, Object extra)
+			throws IOException {
+		return new ThrottledStream(super.getStreamFromNetwork(imageUri, extra));
+	}
+
+	/**
+	 * Takes bytes from the budget, waiting for the next period if the current
+	 * one is used up.
+	 *
+	 * @param bytes the bytes read
+	 * @throws InterruptedIOException if interrupted while waiting
+	 */
+	private synchronized void acquire(int bytes) throws InterruptedIOException {
+		long now = SystemClock.uptimeMillis();
+		if (now - periodStart >= 1000) {
+			periodStart = now;
+			periodBytes = 0;
+		}
+		periodBytes += bytes;
+		if (periodBytes > bytesPerSecond) {
+			try {
+				wait(Math.max(1, 1000 - (now - periodStart)));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			periodStart = SystemClock.uptimeMillis();
+			periodBytes = 0;
+		}
+	}
+
+	/**
+	 * The Class ThrottledStream. A stream charging its reads to the budget.
+	 */
+	private class ThrottledStream extends FilterInputStream {
+
+		/**
+		 * Instantiates a new throttled stream.
+		 *
+		 * @param in the network stream
+		 */
+		ThrottledStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int value = super.read();
+			if (value >= 0) {
+				acquire(1);
+			}
+			return value;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = super.read(buffer, offset, count);
+			if (read > 0) {
+				acquire(read);
+			}
+			return read;
+		}
+	}
+}
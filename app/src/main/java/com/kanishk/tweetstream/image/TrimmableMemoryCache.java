@@ -0,0 +1,104 @@
+package com.kanishk.tweetstream.image;
+
+import java.util.Collection;
+import java.util.HashSet;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import com.kanishk.tweetstream.memory.MemoryGovernor;
+import com.kanishk.tweetstream.memory.MemoryGovernor.OnMemoryStageListener;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.nostra13.universalimageloader.cache.memory.MemoryCache;
+
+/**
+ * The Class TrimmableMemoryCache. The memory cache of the decoded images, a
+ * least recently used cache limited in bytes. Its limit follows the stage of
+ * the {@link MemoryGovernor}, dropping the least recently used images when
+ * it shrinks. Nothing is cached at {@link MemoryGovernor#STAGE_CRITICAL}.
+ */
+public class TrimmableMemoryCache implements MemoryCache, OnMemoryStageListener {
+
+	/** The images by key. */
+	private final LruCache<String, Bitmap> cache;
+
+	/** The full size(bytes) of the cache. */
+	private final int maxSize;
+
+	/** The size(bytes) the cache is limited to at the current stage. */
+	private volatile int limit;
+
+	/**
+	 * Instantiates a new trimmable memory cache and registers it with the
+	 * memory governor.
+	 *
+	 * @param maxSize the full size(bytes) of the cache
+	 */
+	public TrimmableMemoryCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.limit = maxSize;
+		this.cache = new LruCache<String, Bitmap>(maxSize) {
+			@Override
+			protected int sizeOf(String key, Bitmap value) {
+				return value.getRowBytes() * value.getHeight();
+			}
+		};
+		MetricsRegistry.gauge("images.memory_size", new Gauge() {
+			@Override
+			public long getValue() {
+				return cache.size();
+			}
+		});
+		MetricsRegistry.gauge("images.memory_limit", new Gauge() {
+			@Override
+			public long getValue() {
+				return limit;
+			}
+		});
+		MemoryGovernor.register(this);
+	}
+
+	@Override
+	public boolean put(String key, Bitmap value) {
+		int currentLimit = limit;
+		if (currentLimit <= 0) {
+			return false;
+		}
+		cache.put(key, value);
+		if (currentLimit < maxSize) {
+			cache.trimToSize(currentLimit);
+		}
+		return true;
+	}
+
+	@Override
+	public Bitmap get(String key) {
+		return cache.get(key);
+	}
+
+	@Override
+	public Bitmap remove(String key) {
+		return cache.remove(key);
+	}
+
+	@Override
+	public Collection<String> keys() {
+		return new HashSet<>(cache.snapshot().keySet());
+	}
+
+	@Override
+	public void clear() {
+		cache.evictAll();
+	}
+
+	@Override
+	public void onMemoryStage(int stage) {
+		limit = MemoryGovernor.scale(maxSize, stage);
+		if (limit <= 0) {
+			cache.evictAll();
+		} else {
+			cache.trimToSize(limit);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package com.kanishk.tweetstream.memory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+
+/**
+ * The Class MemoryGovernor. Turns the memory trim callbacks of the system
+ * into a single memory stage for the caches and buffers of the app. Each
+ * holder of memory registers as a listener and shrinks to its share of the
+ * stage, from its full size in {@link #STAGE_NORMAL} down to nothing in
+ * {@link #STAGE_CRITICAL}. The system does not tell when the pressure eases,
+ * so the stage steps back down one level at a time once no trim has come for
+ * {@link #REGROW_DELAY} and the device is not low on memory. Limits grow back
+ * at once, the memory itself only as the caches fill again.
+ * <p>
+ * Listeners are held weakly and need no unregistering, but must be kept
+ * by their owner.
+ */
+public final class MemoryGovernor implements ComponentCallbacks2 {
+
+	/** The Constant STAGE_NORMAL. Everything is kept at full size. */
+	public static final int STAGE_NORMAL = 0;
+
+	/** The Constant STAGE_REDUCED. The app is hidden or the device is getting
+	 * low on memory; caches keep half. */
+	public static final int STAGE_REDUCED = 1;
+
+	/** The Constant STAGE_LOW. The device is low on memory; caches keep a quarter
+	 * and idle buffers are dropped. */
+	public static final int STAGE_LOW = 2;
+
+	/** The Constant STAGE_CRITICAL. The app is about to be killed; everything
+	 * that can be rebuilt is dropped. */
+	public static final int STAGE_CRITICAL = 3;
+
+	/** The Constant REGROW_DELAY. The time(milliseconds) without a trim before
+	 * the stage steps down. */
+	public static final long REGROW_DELAY = 30000;
+
+	/** The Constant INSTANCE. */
+	private static final MemoryGovernor INSTANCE = new MemoryGovernor();
+
+	/** The Constant LOW_MEMORY. The low memory callbacks. */
+	private static final Counter LOW_MEMORY = MetricsRegistry.counter("memory.low_memory");
+
+	/** The Constant REGROWS. The steps down of the stage. */
+	private static final Counter REGROWS = MetricsRegistry.counter("memory.regrows");
+
+	/** The listeners, held weakly. */
+	private final Set<OnMemoryStageListener> listeners = Collections.newSetFromMap(
+			new WeakHashMap<OnMemoryStageListener, Boolean>());
+
+	/** The handler of the main thread, running the regrow. */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** The regrow task. */
+	private final Runnable regrowTask = new Runnable() {
+		@Override
+		public void run() {
+			regrow();
+		}
+	};
+
+	/** The application context, null until initialized. */
+	private Context context;
+
+	/** The current stage. */
+	private volatile int stage = STAGE_NORMAL;
+
+	/** The last trim level, 0 before the first trim. */
+	private volatile int lastLevel;
+
+	/**
+	 * Instantiates a new memory governor.
+	 */
+	private MemoryGovernor() {
+		MetricsRegistry.gauge("memory.stage", new Gauge() {
+			@Override
+			public long getValue() {
+				return stage;
+			}
+		});
+		MetricsRegistry.gauge("memory.trim_level", new Gauge() {
+			@Override
+			public long getValue() {
+				return lastLevel;
+			}
+		});
+	}
+
+	/**
+	 * Starts receiving the trim callbacks of the application, once per
+	 * process. Call from the main thread.
+	 *
+	 * @param context the context
+	 */
+	public static void init(Context context) {
+		if (INSTANCE.context == null) {
+			INSTANCE.context = context.getApplicationContext();
+			INSTANCE.context.registerComponentCallbacks(INSTANCE);
+		}
+	}
+
+	/**
+	 * Registers a listener, telling it the current stage if it's not
+	 * {@link #STAGE_NORMAL}. The listener is called on the main thread after
+	 * that first call, which is made on the registering thread.
+	 *
+	 * @param listener the listener
+	 */
+	public static void register(OnMemoryStageListener listener) {
+		synchronized (INSTANCE.listeners) {
+			INSTANCE.listeners.add(listener);
+		}
+		int current = INSTANCE.stage;
+		if (current != STAGE_NORMAL) {
+			listener.onMemoryStage(current);
+		}
+	}
+
+	/**
+	 * Unregisters a listener.
+	 *
+	 * @param listener the listener
+	 */
+	public static void unregister(OnMemoryStageListener listener) {
+		synchronized (INSTANCE.listeners) {
+			INSTANCE.listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Gets the current stage.
+	 *
+	 * @return the stage
+	 */
+	public static int getStage() {
+		return INSTANCE.stage;
+	}
+
+	/**
+	 * Gets the share of a full size kept at a stage.
+	 *
+	 * @param fullSize the full size
+	 * @param stage the stage
+	 * @return the size
+	 */
+	public static int scale(int fullSize, int stage) {
+		switch (stage) {
+		case STAGE_NORMAL:
+			return fullSize;
+		case STAGE_REDUCED:
+			return fullSize / 2;
+		case STAGE_LOW:
+			return fullSize / 4;
+		default:
+			return 0;
+		}
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		lastLevel = level;
+		MetricsRegistry.counter("memory.trims." + getLevelName(level)).increment();
+		raiseStage(getStage(level));
+	}
+
+	@Override
+	public void onLowMemory() {
+		LOW_MEMORY.increment();
+		raiseStage(STAGE_CRITICAL);
+	}
+
+	@Override
+	public void onConfigurationChanged(Configuration newConfig) {
+	}
+
+	/**
+	 * Raises the stage if it's below the given one, and postpones the regrow.
+	 *
+	 * @param newStage the stage
+	 */
+	private void raiseStage(int newStage) {
+		handler.removeCallbacks(regrowTask);
+		if (newStage > stage) {
+			setStage(newStage);
+		}
+		handler.postDelayed(regrowTask, REGROW_DELAY);
+	}
+
+	/**
+	 * Steps the stage down one level, unless the device is low on memory.
+	 */
+	private void regrow() {
+		if (stage == STAGE_NORMAL) {
+			return;
+		}
+		ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+		((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE))
+				.getMemoryInfo(memoryInfo);
+		if (!memoryInfo.lowMemory) {
+			REGROWS.increment();
+			setStage(stage - 1);
+		}
+		if (stage != STAGE_NORMAL) {
+			handler.postDelayed(regrowTask, REGROW_DELAY);
+		}
+	}
+
+	/**
+	 * Sets the stage and tells the listeners.
+	 *
+	 * @param newStage the new stage
+	 */
+	private void setStage(int newStage) {
+		stage = newStage;
+		OnMemoryStageListener[] current;
+		synchronized (listeners) {
+			current = listeners.toArray(new OnMemoryStageListener[listeners.size()]);
+		}
+		for (OnMemoryStageListener listener : current) {
+			listener.onMemoryStage(newStage);
+		}
+	}
+
+	/**
+	 * Gets the stage of a trim level.
+	 *
+	 * @param level the trim level
+	 * @return the stage
+	 */
+	static int getStage(int level) {
+		if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+			return STAGE_CRITICAL;
+		}
+		if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_LOW) {
+			return STAGE_LOW;
+		}
+		return STAGE_REDUCED;
+	}
+
+	/**
+	 * Gets the metric name of a trim level.
+	 *
+	 * @param level the trim level
+	 * @return the name
+	 */
+	private static String getLevelName(int level) {
+		switch (level) {
+		case TRIM_MEMORY_RUNNING_MODERATE:
+			return "running_moderate";
+		case TRIM_MEMORY_RUNNING_LOW:
+			return "running_low";
+		case TRIM_MEMORY_RUNNING_CRITICAL:
+			return "running_critical";
+		case TRIM_MEMORY_UI_HIDDEN:
+			return "ui_hidden";
+		case TRIM_MEMORY_BACKGROUND:
+			return "background";
+		case TRIM_MEMORY_MODERATE:
+			return "moderate";
+		case TRIM_MEMORY_COMPLETE:
+			return "complete";
+		default:
+			return "level_" + level;
+		}
+	}
+
+	/**
+	 * The listener interface for receiving changes of the memory stage. The
+	 * class holding memory implements this interface and registers with
+	 * {@link MemoryGovernor#register(OnMemoryStageListener)}. It may be called
+	 * while its memory is used from other threads.
+	 */
+	public static interface OnMemoryStageListener {
+
+		/**
+		 * Shrinks or grows back to the share of the stage.
+		 *
+		 * @param stage the stage, one of the STAGE constants
+		 */
+		void onMemoryStage(int stage);
+	}
+}
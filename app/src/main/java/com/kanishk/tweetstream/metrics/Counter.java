@@ -0,0 +1,74 @@
+package com.kanishk.tweetstream.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class Counter. A counter safe to update from hot paths. Updates are
+ * spread over a few cells picked by thread, each on its own cache line, so
+ * threads counting at once don't contend on a single value. Reads sum the
+ * cells, and are only exact once the updates have stopped.
+ */
+public class Counter {
+
+	/** The Constant CELLS. The number of cells, a power of two. */
+	private static final int CELLS = 8;
+
+	/** The Constant PADDING. The slots per cell, keeping each cell on its own
+	 * cache line. */
+	private static final int PADDING = 8;
+
+	/** The name. */
+	private final String name;
+
+	/** The cells, one every {@link #PADDING} slots. */
+	private final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+
+	/**
+	 * Instantiates a new counter. Counters are created through the
+	 * {@link MetricsRegistry}.
+	 *
+	 * @param name the name
+	 */
+	Counter(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Adds one.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param value the value
+	 */
+	public void add(long value) {
+		int cell = (int) (Thread.currentThread().getId() & (CELLS - 1));
+		cells.addAndGet(cell * PADDING, value);
+	}
+
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the sum of the values added.
+	 *
+	 * @return the value
+	 */
+	public long getValue() {
+		long sum = 0;
+		for (int i = 0; i < CELLS; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+}
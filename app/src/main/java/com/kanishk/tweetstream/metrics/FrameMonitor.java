@@ -0,0 +1,279 @@
+package com.kanishk.tweetstream.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.WindowManager;
+
+/**
+ * The Class FrameMonitor. Measures the time between the frames of the main
+ * thread through {@link Choreographer}, while the tweet list is shown. Each
+ * frame is tagged with what happened on the main thread since the previous
+ * one, and its duration is recorded in the histogram of every tag along with
+ * the frames it dropped:
+ * <ul>
+ * <li>fling, the list is flinging</li>
+ * <li>cursor_swap, the list adapter got a new cursor</li>
+ * <li>image_decode, a decoded image was set in the views waiting for it</li>
+ * <li>main_thread_provider, the content provider accessed the database from
+ * the main thread</li>
+ * </ul>
+ * Main thread provider access is also counted, whether the list is shown or
+ * not, and logged with the stack of its caller. Frames are only measured on
+ * API 16 and above, and nothing but the count runs while the monitor is
+ * disabled, as in release builds.
+ */
+public final class FrameMonitor {
+
+	/** The Constant TAG_FLING. */
+	public static final int TAG_FLING = 1;
+
+	/** The Constant TAG_CURSOR_SWAP. */
+	public static final int TAG_CURSOR_SWAP = 1 << 1;
+
+	/** The Constant TAG_IMAGE_DECODE. */
+	public static final int TAG_IMAGE_DECODE = 1 << 2;
+
+	/** The Constant TAG_PROVIDER. */
+	public static final int TAG_PROVIDER = 1 << 3;
+
+	/** The Constant TAG_NAMES. The names of the tags, by bit. */
+	private static final String[] TAG_NAMES = {"fling", "cursor_swap", "image_decode",
+			"main_thread_provider"};
+
+	/** The Constant DEFAULT_REFRESH_RATE. The refresh rate of the display if
+	 * it's unknown. */
+	private static final float DEFAULT_REFRESH_RATE = 60;
+
+	/** The Constant FRAMES. The duration of all frames. */
+	private static final LatencyHistogram FRAMES = MetricsRegistry.histogram("frame.duration", "ms");
+
+	/** The Constant DROPPED. The frames dropped. */
+	private static final Counter DROPPED = MetricsRegistry.counter("frame.dropped");
+
+	/** The Constant JANKY. The frames dropping at least one refresh. */
+	private static final Counter JANKY = MetricsRegistry.counter("frame.janky");
+
+	/** The Constant TAGGED_FRAMES. The duration of the frames of each tag. */
+	private static final LatencyHistogram[] TAGGED_FRAMES = new LatencyHistogram[TAG_NAMES.length];
+
+	/** The Constant TAGGED_DROPPED. The frames dropped by the frames of each tag. */
+	private static final Counter[] TAGGED_DROPPED = new Counter[TAG_NAMES.length];
+
+	/** The Constant MAIN_THREAD_PROVIDER. The provider accesses to the database
+	 * from the main thread. */
+	private static final Counter MAIN_THREAD_PROVIDER = MetricsRegistry.counter(
+			"frame.main_thread_provider");
+
+	/** The tags of the frame in progress. Set from any thread. */
+	private static final AtomicInteger pendingTags = new AtomicInteger();
+
+	/** The check whether the monitor is enabled. */
+	private static volatile boolean isEnabled;
+
+	/** The check whether the list is flinging. */
+	private static volatile boolean isFlinging;
+
+	/** The frame timer, null while stopped or below API 16. */
+	private static FrameTimer timer;
+
+	static {
+		for (int i = 0; i < TAG_NAMES.length; i++) {
+			TAGGED_FRAMES[i] = MetricsRegistry.histogram("frame.duration." + TAG_NAMES[i], "ms");
+			TAGGED_DROPPED[i] = MetricsRegistry.counter("frame.dropped." + TAG_NAMES[i]);
+		}
+	}
+
+	/**
+	 * Instantiates a new frame monitor.
+	 */
+	private FrameMonitor() {
+	}
+
+	/**
+	 * Enables or disables the monitor. A disabled monitor doesn't measure the
+	 * frames nor log provider access. Call from the main thread.
+	 *
+	 * @param enabled true, to enable the monitor
+	 */
+	public static void setEnabled(boolean enabled) {
+		isEnabled = enabled;
+		if (!enabled) {
+			stop();
+		}
+	}
+
+	/**
+	 * Starts measuring the frames, at the refresh rate of the default display,
+	 * if the monitor is enabled. Call from the main thread.
+	 *
+	 * @param context the context
+	 */
+	public static void start(Context context) {
+		if (!isEnabled || timer != null
+				|| Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			return;
+		}
+		Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE))
+				.getDefaultDisplay();
+		float refreshRate = display.getRefreshRate();
+		if (refreshRate < 1) {
+			refreshRate = DEFAULT_REFRESH_RATE;
+		}
+		timer = new FrameTimer((long) (1000000000L / refreshRate));
+		timer.start();
+	}
+
+	/**
+	 * Stops measuring the frames. Call from the main thread.
+	 */
+	public static void stop() {
+		if (timer != null) {
+			timer.stop();
+			timer = null;
+		}
+		isFlinging = false;
+	}
+
+	/**
+	 * Tags the frame in progress.
+	 *
+	 * @param tag the tag, one of the TAG constants
+	 */
+	public static void mark(int tag) {
+		int tags;
+		do {
+			tags = pendingTags.get();
+		} while ((tags & tag) != tag && !pendingTags.compareAndSet(tags, tags | tag));
+	}
+
+	/**
+	 * Sets whether the list is flinging. The frames are tagged with
+	 * {@link #TAG_FLING} until the fling ends.
+	 *
+	 * @param flinging the check whether the list is flinging
+	 */
+	public static void setFlinging(boolean flinging) {
+		isFlinging = flinging;
+		if (flinging) {
+			mark(TAG_FLING);
+		}
+	}
+
+	/**
+	 * Flags a provider access to the database if it's made from the main
+	 * thread. Call from the content provider before reading or writing the
+	 * database.
+	 *
+	 * @param operation the operation, such as the method accessing the database
+	 */
+	public static void onProviderAccess(String operation) {
+		if (Looper.myLooper() != Looper.getMainLooper()) {
+			return;
+		}
+		MAIN_THREAD_PROVIDER.increment();
+		MetricsRegistry.counter("frame.main_thread_provider." + operation).increment();
+		if (!isEnabled) {
+			return;
+		}
+		mark(TAG_PROVIDER);
+		Log.w(FrameMonitor.class.toString(), "Main thread provider access: " + operation,
+				new Throwable());
+	}
+
+	/**
+	 * Records a frame.
+	 *
+	 * @param duration the time(nanoseconds) since the previous frame
+	 * @param interval the time(nanoseconds) between two refreshes
+	 */
+	static void onFrame(long duration, long interval) {
+		int tags = pendingTags.getAndSet(0);
+		if (isFlinging) {
+			tags |= TAG_FLING;
+		}
+		long millis = duration / 1000000;
+		int dropped = getDroppedFrames(duration, interval);
+		FRAMES.record(millis);
+		if (dropped > 0) {
+			JANKY.increment();
+			DROPPED.add(dropped);
+		}
+		for (int i = 0; i < TAG_NAMES.length; i++) {
+			if ((tags & (1 << i)) != 0) {
+				TAGGED_FRAMES[i].record(millis);
+				TAGGED_DROPPED[i].add(dropped);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of frames dropped between two frames, the refreshes
+	 * missed rounded to the nearest.
+	 *
+	 * @param duration the time(nanoseconds) between the frames
+	 * @param interval the time(nanoseconds) between two refreshes
+	 * @return the frames dropped
+	 */
+	static int getDroppedFrames(long duration, long interval) {
+		return (int) Math.max(0, (duration + interval / 2) / interval - 1);
+	}
+
+	/**
+	 * The Class FrameTimer. Posts itself to every frame of the main thread
+	 * and records the time since the previous one.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private static class FrameTimer implements Choreographer.FrameCallback {
+
+		/** The time(nanoseconds) between two refreshes. */
+		private final long interval;
+
+		/** The choreographer of the main thread. */
+		private final Choreographer choreographer = Choreographer.getInstance();
+
+		/** The time(nanoseconds) of the previous frame, 0 before the first one. */
+		private long lastFrame;
+
+		/**
+		 * Instantiates a new frame timer.
+		 *
+		 * @param interval the time(nanoseconds) between two refreshes
+		 */
+		FrameTimer(long interval) {
+			this.interval = interval;
+		}
+
+		/**
+		 * Starts receiving the frames.
+		 */
+		void start() {
+			lastFrame = 0;
+			choreographer.postFrameCallback(this);
+		}
+
+		/**
+		 * Stops receiving the frames.
+		 */
+		void stop() {
+			choreographer.removeFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			if (lastFrame > 0) {
+				onFrame(frameTimeNanos - lastFrame, interval);
+			} else {
+				pendingTags.set(0);
+			}
+			lastFrame = frameTimeNanos;
+			choreographer.postFrameCallback(this);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.kanishk.tweetstream.metrics;
+
+/**
+ * The Interface Gauge. A value read from its owner when metrics are reported,
+ * such as a queue depth or the hit count of a cache. Gauges are read from any
+ * thread and must not block.
+ */
+public interface Gauge {
+
+	/**
+	 * Gets the current value.
+	 *
+	 * @return the value
+	 */
+	long getValue();
+}
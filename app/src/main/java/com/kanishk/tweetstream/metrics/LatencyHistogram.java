@@ -0,0 +1,192 @@
+package com.kanishk.tweetstream.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class LatencyHistogram. A histogram of latencies with buckets growing
+ * exponentially, eight per power of two, so percentiles are within an eighth
+ * of their value at any scale. Latencies are in milliseconds unless another
+ * unit is given. Recording is lock free and may be done from any thread.
+ */
+public class LatencyHistogram {
+
+	/** The Constant SUB_BUCKETS. The number of buckets per power of two. */
+	private static final int SUB_BUCKETS = 8;
+
+	/** The Constant SUB_BUCKET_BITS. */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/** The Constant MAX_VALUE. The largest value recorded, larger ones are clamped. */
+	private static final long MAX_VALUE = Integer.MAX_VALUE;
+
+	/** The name. */
+	private final String name;
+
+	/** The unit of the latencies. */
+	private final String unit;
+
+	/** The counts of the buckets. */
+	private final AtomicLongArray buckets;
+
+	/** The number of values. */
+	private final AtomicLong count = new AtomicLong();
+
+	/** The sum of the values. */
+	private final AtomicLong sum = new AtomicLong();
+
+	/** The largest value. */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Instantiates a new latency histogram of milliseconds.
+	 *
+	 * @param name the name
+	 */
+	public LatencyHistogram(String name) {
+		this(name, "ms");
+	}
+
+	/**
+	 * Instantiates a new latency histogram.
+	 *
+	 * @param name the name
+	 * @param unit the unit of the latencies
+	 */
+	public LatencyHistogram(String name, String unit) {
+		this.name = name;
+		this.unit = unit;
+		this.buckets = new AtomicLongArray(getBucket(MAX_VALUE) + 1);
+	}
+
+	/**
+	 * Records a latency. Negative latencies, from clocks out of step, are
+	 * recorded as zero.
+	 *
+	 * @param latency the latency
+	 */
+	public void record(long latency) {
+		long value = Math.min(Math.max(latency, 0), MAX_VALUE);
+		buckets.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// Retries until the largest value is set
+		}
+	}
+
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the number of latencies recorded.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the mean latency.
+	 *
+	 * @return the mean, 0 if none is recorded
+	 */
+	public long getMean() {
+		long values = count.get();
+		return values == 0 ? 0 : sum.get() / values;
+	}
+
+	/**
+	 * Gets the largest latency.
+	 *
+	 * @return the largest latency
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets a percentile of the latencies, as the upper bound of its bucket.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the latency, 0 if none is recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			total += buckets.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(getUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears the recorded latencies.
+	 */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return name + ": count " + getCount() + ", mean " + getMean() + " " + unit
+				+ ", p50 " + getPercentile(50) + " " + unit + ", p90 " + getPercentile(90)
+				+ " " + unit + ", p99 " + getPercentile(99) + " " + unit + ", max "
+				+ getMax() + " " + unit;
+	}
+
+	/**
+	 * Gets the bucket of a value. Values below {@link #SUB_BUCKETS} have a
+	 * bucket each, larger ones share a bucket with the values having the same
+	 * highest bits.
+	 *
+	 * @param value the value
+	 * @return the bucket
+	 */
+	static int getBucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKETS * (shift + 1) + (int) ((value >> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * Gets the largest value of a bucket.
+	 *
+	 * @param bucket the bucket
+	 * @return the value
+	 */
+	static long getUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,209 @@
+package com.kanishk.tweetstream.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import android.os.SystemClock;
+
+/**
+ * The Class MetricsRegistry. The metrics of the app by name: counters,
+ * gauges and latency histograms. Counters and histograms are updated without
+ * locks from the hot paths, and gauges are read from their owners only when
+ * a snapshot is taken. Names are dot separated, starting with the subsystem.
+ */
+public final class MetricsRegistry {
+
+	/** The Constant DUMP_PREFIX. The prefix of the dump file names. */
+	public static final String DUMP_PREFIX = "metrics-";
+
+	/** The Constant START. The time(elapsed milliseconds) the registry was created. */
+	private static final long START = SystemClock.elapsedRealtime();
+
+	/** The Constant COUNTERS. */
+	private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+	/** The Constant GAUGES. */
+	private static final ConcurrentMap<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+
+	/** The Constant HISTOGRAMS. */
+	private static final ConcurrentMap<String, LatencyHistogram> HISTOGRAMS =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Instantiates a new metrics registry.
+	 */
+	private MetricsRegistry() {
+	}
+
+	/**
+	 * Gets a counter, creating it on first use. Keep the counter in a field
+	 * rather than looking it up on each update.
+	 *
+	 * @param name the name
+	 * @return the counter
+	 */
+	public static Counter counter(String name) {
+		Counter counter = COUNTERS.get(name);
+		if (counter == null) {
+			Counter created = new Counter(name);
+			counter = COUNTERS.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Registers a gauge, replacing the gauge registered under the same name.
+	 *
+	 * @param name the name
+	 * @param gauge the gauge
+	 */
+	public static void gauge(String name, Gauge gauge) {
+		GAUGES.put(name, gauge);
+	}
+
+	/**
+	 * Gets a latency histogram, creating it on first use.
+	 *
+	 * @param name the name
+	 * @param unit the unit of the latencies
+	 * @return the histogram
+	 */
+	public static LatencyHistogram histogram(String name, String unit) {
+		LatencyHistogram histogram = HISTOGRAMS.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram(name, unit);
+			histogram = HISTOGRAMS.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Registers a latency histogram created by its owner.
+	 *
+	 * @param histogram the histogram
+	 */
+	public static void register(LatencyHistogram histogram) {
+		HISTOGRAMS.put(histogram.getName(), histogram);
+	}
+
+	/**
+	 * Takes a snapshot of all the metrics.
+	 *
+	 * @return the snapshot
+	 */
+	public static Snapshot snapshot() {
+		return new Snapshot();
+	}
+
+	/**
+	 * Writes a snapshot of all the metrics to a new file. Call from a
+	 * background thread.
+	 *
+	 * @param directory the directory of the file
+	 * @return the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static File dump(File directory) throws IOException {
+		String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+		File file = new File(directory, DUMP_PREFIX + time + ".txt");
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write(snapshot().describe(null));
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * The Class Snapshot. The values of the metrics at a point in time.
+	 */
+	public static class Snapshot {
+
+		/** The time(elapsed milliseconds) of the snapshot. */
+		private final long time;
+
+		/** The counter values by name. */
+		private final Map<String, Long> counters = new TreeMap<>();
+
+		/** The gauge values by name. */
+		private final Map<String, Long> gauges = new TreeMap<>();
+
+		/** The histogram descriptions, ordered by name. */
+		private final List<String> histograms = new ArrayList<>();
+
+		/**
+		 * Instantiates a new snapshot of the registry.
+		 */
+		private Snapshot() {
+			time = SystemClock.elapsedRealtime();
+			for (Counter counter : COUNTERS.values()) {
+				counters.put(counter.getName(), counter.getValue());
+			}
+			for (Map.Entry<String, Gauge> gauge : GAUGES.entrySet()) {
+				gauges.put(gauge.getKey(), gauge.getValue().getValue());
+			}
+			for (String name : new TreeMap<>(HISTOGRAMS).keySet()) {
+				histograms.add(HISTOGRAMS.get(name).toString());
+			}
+		}
+
+		/**
+		 * Gets the value of a counter.
+		 *
+		 * @param name the name
+		 * @return the value, 0 if there's no such counter
+		 */
+		public long getCounter(String name) {
+			Long value = counters.get(name);
+			return value == null ? 0 : value;
+		}
+
+		/**
+		 * Describes the metrics, one per line. Counters are shown with their
+		 * rate per second since an earlier snapshot, or since the registry was
+		 * created.
+		 *
+		 * @param previous the earlier snapshot, null for the rate since the
+		 * registry was created
+		 * @return the description
+		 */
+		public String describe(Snapshot previous) {
+			StringBuilder builder = new StringBuilder();
+			builder.append("uptime ").append((time - START) / 1000).append(" s\n\ncounters\n");
+			for (Map.Entry<String, Long> counter : counters.entrySet()) {
+				long since = previous != null ? previous.time : START;
+				long base = previous != null ? previous.getCounter(counter.getKey()) : 0;
+				float rate = time > since ? (counter.getValue() - base) * 1000f / (time - since) : 0;
+				builder.append(counter.getKey()).append(' ').append(counter.getValue())
+						.append(String.format(Locale.US, " (%.1f/s)", rate)).append('\n');
+			}
+			builder.append("\ngauges\n");
+			for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+				builder.append(gauge.getKey()).append(' ').append(gauge.getValue()).append('\n');
+			}
+			builder.append("\nhistograms\n");
+			for (String histogram : histograms) {
+				builder.append(histogram).append('\n');
+			}
+			return builder.toString();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.kanishk.tweetstream.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import android.os.SystemClock;
+
+import com.kanishk.tweetstream.model.TweetRecord;
+
+/**
+ * The Class TweetLatency. Tracks the latency of tweets from their creation to
+ * their display, between each stage of the ingestion:
+ * <ul>
+ * <li>created, the creation time of the status on the server</li>
+ * <li>received, the line read from the stream</li>
+ * <li>parsed, the record parsed from the line</li>
+ * <li>committed, the row written by the content provider</li>
+ * <li>bound, the row first bound to a view of the list</li>
+ * </ul>
+ * The time between two stages is aggregated into a histogram. Stamps are
+ * uptime milliseconds, except the creation time which is converted from wall
+ * clock time. Uptime stamps only compare within a process, so records replayed
+ * from the journal of an earlier process carry no stamps and are not measured.
+ * The stamps of committed rows are kept until bound in slots keyed by row id,
+ * so a row is dropped once a row committed later takes its slot.
+ */
+public final class TweetLatency {
+
+	/** The Constant DELIVERY. From created to received. */
+	public static final LatencyHistogram DELIVERY = new LatencyHistogram("latency.delivery");
+
+	/** The Constant PARSE. From received to parsed, including the wait in the line queue. */
+	public static final LatencyHistogram PARSE = new LatencyHistogram("latency.parse");
+
+	/** The Constant COMMIT. From parsed to committed, including the batching and the journal. */
+	public static final LatencyHistogram COMMIT = new LatencyHistogram("latency.commit");
+
+	/** The Constant DISPLAY. From committed to bound. */
+	public static final LatencyHistogram DISPLAY = new LatencyHistogram("latency.display");
+
+	/** The Constant END_TO_END. From created to bound. */
+	public static final LatencyHistogram END_TO_END = new LatencyHistogram("latency.end_to_end");
+
+	/** The Constant ALL. The histograms, in stage order. */
+	public static final LatencyHistogram[] ALL = {DELIVERY, PARSE, COMMIT, DISPLAY, END_TO_END};
+
+	/** The Constant PENDING_ROWS. The number of slots of committed rows kept
+	 * until bound. */
+	public static final int PENDING_ROWS = 1024;
+
+	/** The Constant PROCESS_ID. Identifies the stamps taken by this process,
+	 * such as in the journal records. */
+	public static final long PROCESS_ID = new Random().nextLong();
+
+	/** The Constant LOCK. */
+	private static final Object LOCK = new Object();
+
+	/** The ids of the committed rows not yet bound by slot, -1 if the slot is
+	 * free. */
+	private static final long[] pendingIds = new long[PENDING_ROWS];
+
+	/** The commit times of the pending rows. */
+	private static final long[] pendingCommits = new long[PENDING_ROWS];
+
+	/** The creation times(uptime) of the pending rows, -1 if unknown. */
+	private static final long[] pendingCreations = new long[PENDING_ROWS];
+
+	static {
+		clearPending();
+		for (LatencyHistogram histogram : ALL) {
+			MetricsRegistry.register(histogram);
+		}
+	}
+
+	/**
+	 * Instantiates a new tweet latency.
+	 */
+	private TweetLatency() {
+	}
+
+	/**
+	 * Records the stages of tweets up to their commit, and keeps their stamps
+	 * until bound. Records without stamps are skipped. Call once the rows are
+	 * written.
+	 *
+	 * @param ids the row ids, -1 for rows not written; null if the ids are
+	 * unknown, recording the stages up to the commit only
+	 * @param records the records of the rows
+	 */
+	public static void onCommitted(long[] ids, List<TweetRecord> records) {
+		long now = SystemClock.uptimeMillis();
+		long clockOffset = System.currentTimeMillis() - now;
+		synchronized (LOCK) {
+			for (int i = 0; i < records.size(); i++) {
+				TweetRecord record = records.get(i);
+				if ((ids != null && ids[i] == -1) || record.getParsedTime() <= 0) {
+					continue;
+				}
+				long created = record.getCreatedAt() > 0 ? record.getCreatedAt() - clockOffset : -1;
+				if (created >= 0) {
+					DELIVERY.record(record.getReceivedTime() - created);
+				}
+				PARSE.record(record.getParsedTime() - record.getReceivedTime());
+				COMMIT.record(now - record.getParsedTime());
+				if (ids == null) {
+					continue;
+				}
+				int slot = getSlot(ids[i]);
+				pendingIds[slot] = ids[i];
+				pendingCommits[slot] = now;
+				pendingCreations[slot] = created;
+			}
+		}
+	}
+
+	/**
+	 * Records the display of a row, the first time it's bound. Call from the
+	 * bind of the list adapters.
+	 *
+	 * @param id the row id
+	 */
+	public static void onBound(long id) {
+		long now = SystemClock.uptimeMillis();
+		int slot = getSlot(id);
+		synchronized (LOCK) {
+			if (pendingIds[slot] == id) {
+				DISPLAY.record(now - pendingCommits[slot]);
+				if (pendingCreations[slot] >= 0) {
+					END_TO_END.record(now - pendingCreations[slot]);
+				}
+				pendingIds[slot] = -1;
+			}
+		}
+	}
+
+	/**
+	 * Clears the histograms and the pending rows.
+	 */
+	public static void reset() {
+		for (LatencyHistogram histogram : ALL) {
+			histogram.reset();
+		}
+		synchronized (LOCK) {
+			clearPending();
+		}
+	}
+
+	/**
+	 * Describes the latency of each stage, one line per stage.
+	 *
+	 * @return the description
+	 */
+	public static String describe() {
+		StringBuilder builder = new StringBuilder();
+		for (LatencyHistogram histogram : ALL) {
+			builder.append(histogram).append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Gets the slot of a row. Rows of a table get consecutive slots in the
+	 * order they are committed.
+	 *
+	 * @param id the row id
+	 * @return the slot
+	 */
+	private static int getSlot(long id) {
+		return (int) ((id & Long.MAX_VALUE) % PENDING_ROWS);
+	}
+
+	/**
+	 * Frees the slots of the pending rows.
+	 */
+	private static void clearPending() {
+		Arrays.fill(pendingIds, -1);
+	}
+}
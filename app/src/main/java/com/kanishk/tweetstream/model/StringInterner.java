@@ -0,0 +1,113 @@
+package com.kanishk.tweetstream.model;
+
+import java.util.Arrays;
+
+/**
+ * The Class StringInterner. A bounded intern table of strings, looked up by
+ * their characters so that a string already interned is returned without
+ * creating a new one. The table holds a fixed number of slots, each string
+ * going to the slot of its hash. A string colliding with another replaces
+ * it, so memory stays fixed and the strings seen most recently are kept.
+ */
+public class StringInterner {
+
+	/** The Constant MAX_LENGTH. The longest string interned. */
+	public static final int MAX_LENGTH = 256;
+
+	/** The slots. */
+	private final String[] slots;
+
+	/** The number of lookups answered by an interned string. */
+	private long hits;
+
+	/** The number of lookups creating a string. */
+	private long misses;
+
+	/**
+	 * Instantiates a new string interner.
+	 *
+	 * @param size the number of slots, rounded up to a power of two
+	 */
+	public StringInterner(int size) {
+		int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+		this.slots = new String[capacity];
+	}
+
+	/**
+	 * Gets the interned string of a range of characters, interning a new one
+	 * if needed. Strings longer than {@link #MAX_LENGTH} are not interned.
+	 *
+	 * @param chars the characters
+	 * @param offset the offset of the first character
+	 * @param length the number of characters
+	 * @return the string
+	 */
+	public String intern(char[] chars, int offset, int length) {
+		if (length > MAX_LENGTH) {
+			return new String(chars, offset, length);
+		}
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		// Spreads the high bits, as the low bits of short string hashes repeat
+		int slot = (hash ^ (hash >>> 16)) & (slots.length - 1);
+		synchronized (this) {
+			String interned = slots[slot];
+			if (interned != null && matches(interned, chars, offset, length)) {
+				hits++;
+				return interned;
+			}
+			interned = new String(chars, offset, length);
+			slots[slot] = interned;
+			misses++;
+			return interned;
+		}
+	}
+
+	/**
+	 * Gets the number of lookups answered by an interned string.
+	 *
+	 * @return the hit count
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups creating a string.
+	 *
+	 * @return the miss count
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Drops all the interned strings.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(slots, null);
+	}
+
+	/**
+	 * Checks if a string has the given characters.
+	 *
+	 * @param value the string
+	 * @param chars the characters
+	 * @param offset the offset of the first character
+	 * @param length the number of characters
+	 * @return true, if they match
+	 */
+	private static boolean matches(String value, char[] chars, int offset, int length) {
+		if (value.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (value.charAt(i) != chars[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
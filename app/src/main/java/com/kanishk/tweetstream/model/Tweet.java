@@ -1,24 +0,0 @@
-package com.kanishk.tweetstream.model;
-
-public class Tweet {
-	
-	private String text;
-
-	private User user;
-
-	public String getText() {
-		return text;
-	}
-
-	public void setText(String text) {
-		this.text = text;
-	}
-
-	public User getUser() {
-		return user;
-	}
-
-	public void setUser(User user) {
-		this.user = user;
-	}
-}
@@ -0,0 +1,236 @@
+package com.kanishk.tweetstream.model;
+
+import java.util.List;
+
+import com.kanishk.tweetstream.memory.MemoryGovernor;
+import com.kanishk.tweetstream.memory.MemoryGovernor.OnMemoryStageListener;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+
+/**
+ * The Class TweetRecord. A tweet and its user as read from the stream and
+ * written to the database. Records are pooled: obtain them with
+ * {@link #obtain()} and hand them back with {@link #recycle()} once written,
+ * so ingestion reuses the same objects. The user strings repeat heavily and
+ * are shared through {@link #USER_STRINGS}. A record also carries the
+ * stamps of its ingestion stages, used for tracking its latency. Under
+ * memory pressure the pool keeps fewer records and the user strings are
+ * dropped.
+ */
+public class TweetRecord {
+
+	/** The Constant MAX_POOL_SIZE. The maximum number of records pooled. */
+	public static final int MAX_POOL_SIZE = 1024;
+
+	/** The Constant USER_STRING_SLOTS. The number of user strings interned. */
+	public static final int USER_STRING_SLOTS = 4096;
+
+	/** The Constant USER_STRINGS. The intern table of the screen names, names
+	 * and profile image urls. */
+	public static final StringInterner USER_STRINGS = new StringInterner(USER_STRING_SLOTS);
+
+	/** The Constant POOL_LOCK. */
+	private static final Object POOL_LOCK = new Object();
+
+	/** The first pooled record. */
+	private static TweetRecord pool;
+
+	/** The number of pooled records. */
+	private static int poolSize;
+
+	/** The maximum number of records pooled at the current memory stage. */
+	private static int maxPoolSize = MAX_POOL_SIZE;
+
+	/** The Constant POOL_TRIMMER. Shrinks the pool and drops the user strings
+	 * under memory pressure. */
+	private static final OnMemoryStageListener POOL_TRIMMER = new OnMemoryStageListener() {
+		@Override
+		public void onMemoryStage(int stage) {
+			synchronized (POOL_LOCK) {
+				maxPoolSize = MemoryGovernor.scale(MAX_POOL_SIZE, stage);
+				while (poolSize > maxPoolSize) {
+					TweetRecord record = pool;
+					pool = record.next;
+					record.next = null;
+					poolSize--;
+				}
+			}
+			if (stage >= MemoryGovernor.STAGE_LOW) {
+				USER_STRINGS.clear();
+			}
+		}
+	};
+
+	static {
+		MemoryGovernor.register(POOL_TRIMMER);
+		MetricsRegistry.gauge("records.pooled", new Gauge() {
+			@Override
+			public long getValue() {
+				synchronized (POOL_LOCK) {
+					return poolSize;
+				}
+			}
+		});
+		MetricsRegistry.gauge("records.user_string_hits", new Gauge() {
+			@Override
+			public long getValue() {
+				return USER_STRINGS.getHitCount();
+			}
+		});
+		MetricsRegistry.gauge("records.user_string_misses", new Gauge() {
+			@Override
+			public long getValue() {
+				return USER_STRINGS.getMissCount();
+			}
+		});
+	}
+
+	/** The next pooled record. */
+	private TweetRecord next;
+
+	/** The screen name. */
+	private String screenName;
+
+	/** The name. */
+	private String name;
+
+	/** The profile image url. */
+	private String imageUrl;
+
+	/** The text. */
+	private String text;
+
+	/** The creation time(wall clock milliseconds) of the status, 0 if unknown. */
+	private long createdAt;
+
+	/** The time(uptime milliseconds) the line was read from the stream. */
+	private long receivedTime;
+
+	/** The time(uptime milliseconds) the record was parsed. */
+	private long parsedTime;
+
+	/** The check whether the record is written to the ingest journal or not. */
+	private boolean journaled;
+
+	/**
+	 * Gets a record from the pool, or a new one if the pool is empty.
+	 *
+	 * @return the record, with no values set
+	 */
+	public static TweetRecord obtain() {
+		synchronized (POOL_LOCK) {
+			if (pool != null) {
+				TweetRecord record = pool;
+				pool = record.next;
+				record.next = null;
+				poolSize--;
+				return record;
+			}
+		}
+		return new TweetRecord();
+	}
+
+	/**
+	 * Hands the records of a list back to the pool and clears the list.
+	 *
+	 * @param records the records
+	 */
+	public static void recycleAll(List<TweetRecord> records) {
+		for (int i = 0; i < records.size(); i++) {
+			records.get(i).recycle();
+		}
+		records.clear();
+	}
+
+	/**
+	 * Hands the record back to the pool. It must not be used afterwards.
+	 */
+	public void recycle() {
+		clear();
+		synchronized (POOL_LOCK) {
+			if (poolSize < maxPoolSize) {
+				next = pool;
+				pool = this;
+				poolSize++;
+			}
+		}
+	}
+
+	/**
+	 * Clears the values.
+	 */
+	public void clear() {
+		screenName = null;
+		name = null;
+		imageUrl = null;
+		text = null;
+		createdAt = 0;
+		receivedTime = 0;
+		parsedTime = 0;
+		journaled = false;
+	}
+
+	public String getScreenName() {
+		return screenName;
+	}
+
+	public void setScreenName(String screenName) {
+		this.screenName = screenName;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getImageUrl() {
+		return imageUrl;
+	}
+
+	public void setImageUrl(String imageUrl) {
+		this.imageUrl = imageUrl;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(long createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public long getReceivedTime() {
+		return receivedTime;
+	}
+
+	public void setReceivedTime(long receivedTime) {
+		this.receivedTime = receivedTime;
+	}
+
+	public long getParsedTime() {
+		return parsedTime;
+	}
+
+	public void setParsedTime(long parsedTime) {
+		this.parsedTime = parsedTime;
+	}
+
+	public boolean isJournaled() {
+		return journaled;
+	}
+
+	public void setJournaled(boolean journaled) {
+		this.journaled = journaled;
+	}
+}
@@ -1,21 +1,23 @@
 package com.kanishk.tweetstream.operations;
 
+import android.os.SystemClock;
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 
 /**
  * The listener interface for receiving customScroll events. The listener
- * checks whether the user has scrolled to the bottom of the list or not.
- * If user scrolls to the bottom of the list, the listener issues loadData
- * call to fetch more items.
+ * checks whether the user is about to reach the bottom of the list or not.
+ * It tracks the scroll velocity and the time taken by a load, and issues the
+ * loadData call early enough for the next page to arrive before the user
+ * reaches the bottom. The page grows with the rows a load has to cover.
  */
 public abstract class CustomScrollListener implements OnScrollListener {
 
 	/** The Constant ITEMS_PER_PAGE. The minimum items per page*/
 	public static final int ITEMS_PER_PAGE = 20;
 
-	/** The Constant ITEMS_TOTAL_LIMIT. The upper limit for maximum items to be shown.*/
-	public static final int ITEMS_TOTAL_LIMIT = 600;
+	/** The Constant MAX_ITEMS_PER_PAGE. The maximum items per page*/
+	public static final int MAX_ITEMS_PER_PAGE = 200;
 
 	/** The Constant PAGE_ITEMS_COUNT. */
 	public static final String PAGE_ITEMS_COUNT = "page_items_count";
@@ -23,55 +25,184 @@ public abstract class CustomScrollListener implements OnScrollListener {
 	/** The Constant PAGE_PREVIOUS_COUNT. */
 	public static final String PAGE_PREVIOUS_COUNT = "page_previous_count";
 
-	/** The scroll threshold. The number of items below the current position.
+	/** The scroll threshold. The minimum number of items below the current position.
 	 * If user scrolls below this position, the listener will fetch more items.*/
 	private static int SCROLL_THRESHOLD = 3;
 
-	/** The current scroll count. The current number of items shown on listview */
+	/** The Constant SMOOTHING. The weight of a new sample in the velocity and
+	 * latency averages. */
+	private static final float SMOOTHING = 0.3f;
+
+	/** The Constant INITIAL_LATENCY. The load time(milliseconds) assumed before
+	 * the first load is measured. */
+	private static final float INITIAL_LATENCY = 150;
+
+	/** The Constant LOOK_AHEAD. The margin applied on the rows predicted to be
+	 * scrolled during a load. */
+	private static final float LOOK_AHEAD = 1.5f;
+
+	/** The current scroll count. The current number of items requested for listview */
 	private int currentScrollCount;
 
 	/** The loading. The check whether currently there's any data loading or not*/
 	private boolean loading;
 
-	/** The previous total count. */
+	/** The check whether more items can be loaded or not. */
+	private boolean hasMore;
+
+	/** The previous total count. The number of items of the last load. */
 	private int previousTotalCount;
 
+	/** The velocity. The smoothed scroll velocity in items per millisecond. */
+	private float velocity;
+
+	/** The load latency. The smoothed time(milliseconds) taken by a load. */
+	private float loadLatency;
+
+	/** The first visible item at the last scroll event. */
+	private int lastFirstVisible;
+
+	/** The time of the last scroll event. */
+	private long lastScrollTime;
+
+	/** The start time of the running load. */
+	private long loadStart;
+
+	/** The check whether the list is flinging or not. */
+	private boolean flinging;
+
 	/**
 	 * Instantiates a new custom scroll listener.
 	 */
 	public CustomScrollListener() {
 		currentScrollCount = ITEMS_PER_PAGE;
+		loadLatency = INITIAL_LATENCY;
+		hasMore = true;
 	}
 
 	@Override
 	public void onScrollStateChanged(AbsListView view, int scrollState) {
+		if (scrollState == SCROLL_STATE_IDLE) {
+			velocity = 0;
+		}
+		boolean fling = scrollState == SCROLL_STATE_FLING;
+		if (fling != flinging) {
+			flinging = fling;
+			onFlingChanged(fling);
+		}
+	}
+
+	/**
+	 * On fling changed. Called when a fling starts, and when it stops or is
+	 * caught by a touch. Override to hold back work for rows which are only
+	 * shown for a few frames, such as image loading.
+	 *
+	 * @param isFlinging whether the list is flinging
+	 */
+	public void onFlingChanged(boolean isFlinging) {
+	}
+
+	/**
+	 * Checks if the list is flinging.
+	 *
+	 * @return true, if is flinging
+	 */
+	public boolean isFlinging() {
+		return flinging;
 	}
 
 	@Override
 	public void onScroll(AbsListView view, int firstVisibleItem,
 			int visibleItemCount, int totalItemCount) {
-		if (currentScrollCount >= ITEMS_TOTAL_LIMIT
-				|| totalItemCount < ITEMS_PER_PAGE) {
-			return;
-		}
+		onItemsScrolled(firstVisibleItem, visibleItemCount, totalItemCount);
+	}
+
+	/**
+	 * On items scrolled. Checks whether more items have to be loaded. Called by
+	 * {@link #onScroll(AbsListView, int, int, int)} and by list views which are
+	 * not an {@link AbsListView}.
+	 *
+	 * @param firstVisibleItem the position of the first visible item
+	 * @param visibleItemCount the number of visible items
+	 * @param totalItemCount the number of items in the list
+	 */
+	public void onItemsScrolled(int firstVisibleItem, int visibleItemCount,
+			int totalItemCount) {
+		updateVelocity(firstVisibleItem);
 		if (totalItemCount < previousTotalCount) {
 			currentScrollCount = ITEMS_PER_PAGE;
 			previousTotalCount = totalItemCount;
 		}
-		if (loading && previousTotalCount < totalItemCount) {
-			previousTotalCount = totalItemCount;
-			currentScrollCount += ITEMS_PER_PAGE;
-			loading = false;
+		if (loading || !hasMore || visibleItemCount >= totalItemCount) {
 			return;
 		}
-		if (!loading
-				&& totalItemCount - visibleItemCount - firstVisibleItem <= SCROLL_THRESHOLD
-				&& visibleItemCount < totalItemCount) {
+		float predictedRows = velocity * loadLatency * LOOK_AHEAD;
+		int threshold = Math.max(SCROLL_THRESHOLD, (int) predictedRows);
+		if (totalItemCount - visibleItemCount - firstVisibleItem <= threshold) {
+			int pageSize = Math.min(MAX_ITEMS_PER_PAGE,
+					Math.max(ITEMS_PER_PAGE, (int) (predictedRows * 2)));
 			loading = true;
-			loadData(currentScrollCount + ITEMS_PER_PAGE);
+			loadStart = SystemClock.uptimeMillis();
+			currentScrollCount = totalItemCount + pageSize;
+			loadData(currentScrollCount);
 		}
 	}
 
+	/**
+	 * On data loaded. Must be called when the items requested by
+	 * {@link #loadData(int)}, or any reload, are delivered to the list.
+	 *
+	 * @param totalItemCount the number of items loaded
+	 */
+	public void onDataLoaded(int totalItemCount) {
+		// Nothing more to load if the last load returned fewer rows than requested
+		onDataLoaded(totalItemCount, totalItemCount >= currentScrollCount);
+	}
+
+	/**
+	 * On data loaded. Used by lists which know whether more items exist, such
+	 * as lists showing a window over their data.
+	 *
+	 * @param totalItemCount the number of items loaded
+	 * @param moreItems whether more items can be loaded
+	 */
+	public void onDataLoaded(int totalItemCount, boolean moreItems) {
+		hasMore = moreItems;
+		if (loading) {
+			long latency = SystemClock.uptimeMillis() - loadStart;
+			loadLatency += SMOOTHING * (latency - loadLatency);
+			loading = false;
+		}
+		previousTotalCount = totalItemCount;
+	}
+
+	/**
+	 * Updates the smoothed scroll velocity towards the bottom of the list.
+	 *
+	 * @param firstVisibleItem the first visible item
+	 */
+	private void updateVelocity(int firstVisibleItem) {
+		long now = SystemClock.uptimeMillis();
+		long elapsed = now - lastScrollTime;
+		if (firstVisibleItem != lastFirstVisible && elapsed > 0) {
+			float sample = Math.max(0f, (float) (firstVisibleItem - lastFirstVisible) / elapsed);
+			velocity += SMOOTHING * (sample - velocity);
+			lastFirstVisible = firstVisibleItem;
+			lastScrollTime = now;
+		} else if (lastScrollTime == 0) {
+			lastScrollTime = now;
+		}
+	}
+
+	/**
+	 * Gets the smoothed scroll velocity.
+	 *
+	 * @return the velocity in items per millisecond
+	 */
+	public float getVelocity() {
+		return velocity;
+	}
+
 	/**
 	 * Reset scroll.
 	 */
@@ -79,6 +210,7 @@ public abstract class CustomScrollListener implements OnScrollListener {
 		currentScrollCount = ITEMS_PER_PAGE;
 		previousTotalCount = 0;
 		loading = false;
+		hasMore = true;
 	}
 
 	/**
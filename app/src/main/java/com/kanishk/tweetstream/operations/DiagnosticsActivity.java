@@ -0,0 +1,146 @@
+package com.kanishk.tweetstream.operations;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.kanishk.tweetstream.data.TweetSettings;
+import com.kanishk.tweetstream.metrics.FrameMonitor;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.kanishk.tweetstream.metrics.MetricsRegistry.Snapshot;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
+
+/**
+ * The Class DiagnosticsActivity. Shows the metrics of the app, refreshed every
+ * second while visible, with the rate of the counters over the last second.
+ * The metrics can be dumped to a file to be pulled from the device, and the
+ * storage, list and monitoring options of {@link TweetSettings} switched.
+ */
+public class DiagnosticsActivity extends Activity {
+
+	/** The Constant REFRESH_INTERVAL. The time(milliseconds) between refreshes. */
+	private static final long REFRESH_INTERVAL = 1000;
+
+	/** The handler running the refreshes. */
+	private final Handler handler = new Handler();
+
+	/** The view of the metrics. */
+	private TextView metricsView;
+
+	/** The snapshot shown last, the base of the rates. */
+	private Snapshot previous;
+
+	/** The refresh task. */
+	private final Runnable refreshTask = new Runnable() {
+		@Override
+		public void run() {
+			refresh();
+			handler.postDelayed(this, REFRESH_INTERVAL);
+		}
+	};
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_diagnostics);
+		metricsView = (TextView) findViewById(R.id.metrics);
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		previous = null;
+		refreshTask.run();
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		handler.removeCallbacks(refreshTask);
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.diagnostics, menu);
+		menu.findItem(R.id.sharded_storage).setChecked(
+				TweetSettings.isShardedStorage(this));
+		menu.findItem(R.id.recycler_list).setChecked(TweetSettings.isRecyclerList(this));
+		menu.findItem(R.id.frame_monitor).setChecked(TweetSettings.isFrameMonitor(this));
+		return super.onCreateOptionsMenu(menu);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		if (item.getItemId() == R.id.dump_metrics) {
+			dumpMetrics();
+			return true;
+		}
+		if (item.getItemId() == R.id.sharded_storage) {
+			item.setChecked(!item.isChecked());
+			TweetSettings.setShardedStorage(this, item.isChecked());
+			return true;
+		}
+		if (item.getItemId() == R.id.recycler_list) {
+			item.setChecked(!item.isChecked());
+			TweetSettings.setRecyclerList(this, item.isChecked());
+			return true;
+		}
+		if (item.getItemId() == R.id.frame_monitor) {
+			item.setChecked(!item.isChecked());
+			TweetSettings.setFrameMonitor(this, item.isChecked());
+			FrameMonitor.setEnabled(item.isChecked());
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	/**
+	 * Refreshes the metrics shown.
+	 */
+	private void refresh() {
+		Snapshot snapshot = MetricsRegistry.snapshot();
+		metricsView.setText(snapshot.describe(previous));
+		previous = snapshot;
+	}
+
+	/**
+	 * Dumps the metrics to a file in the external files directory of the app,
+	 * or the internal one if the storage isn't mounted.
+	 */
+	private void dumpMetrics() {
+		File external = getExternalFilesDir(null);
+		final File directory = external != null ? external : getFilesDir();
+		TaskScheduler.STORAGE.execute(new Runnable() {
+			@Override
+			public void run() {
+				String message;
+				try {
+					File file = MetricsRegistry.dump(directory);
+					message = getString(R.string.metrics_dumped, file.getAbsolutePath());
+				} catch (IOException e) {
+					Log.e(DiagnosticsActivity.class.toString(), e.toString());
+					message = getString(R.string.metrics_dump_failed);
+				}
+				final String text = message;
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						Toast toast = Toast.makeText(DiagnosticsActivity.this, text,
+								Toast.LENGTH_LONG);
+						toast.setGravity(Gravity.CENTER_HORIZONTAL, 0, 0);
+						toast.show();
+					}
+				});
+			}
+		});
+	}
+}
@@ -1,7 +1,6 @@
 package com.kanishk.tweetstream.operations;
 
 import android.app.Activity;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
@@ -13,13 +12,31 @@ import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v4.widget.SwipeRefreshLayout.OnRefreshListener;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.ListView;
+import android.widget.TextView;
 
+import com.kanishk.tweetstream.adapter.TextLayoutCache;
 import com.kanishk.tweetstream.adapter.TweetCursorAdapter;
+import com.kanishk.tweetstream.adapter.TweetRecyclerAdapter;
 import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.data.TweetSettings;
+import com.kanishk.tweetstream.data.TweetSnapshot;
+import com.kanishk.tweetstream.data.TweetSnapshotLoader;
+import com.kanishk.tweetstream.image.AvatarDiskCache;
+import com.kanishk.tweetstream.image.ImagePrefetcher;
+import com.kanishk.tweetstream.image.SingleFlightLoader;
+import com.kanishk.tweetstream.image.TrimmableMemoryCache;
+import com.kanishk.tweetstream.metrics.FrameMonitor;
+import com.kanishk.tweetstream.operations.WindowedListController.OnPendingChangeListener;
+import com.kanishk.tweetstream.scheduler.StartupTrace;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
 
@@ -28,15 +45,40 @@ import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
  *
  */
 public class DisplayFragment extends Fragment implements OnRefreshListener, 
-					LoaderCallbacks<Cursor> {
+					LoaderCallbacks<Cursor>, OnPendingChangeListener {
 	
 	/** The cursor adapter for list view. */
 	private TweetCursorAdapter adapter;
 
+	/** The check whether the list uses the RecyclerView backend or not, read
+	 * from {@link TweetSettings} when the fragment is created. */
+	private boolean recyclerList;
+
+	/** The adapter for the recycler view, used instead of the cursor adapter
+	 * with the RecyclerView backend. */
+	private TweetRecyclerAdapter recyclerAdapter;
+
+	/** The layout manager of the recycler view. */
+	private LinearLayoutManager layoutManager;
+
+	/** The loader callbacks of the recycler view backend. */
+	private LoaderCallbacks<TweetSnapshot> snapshotCallbacks;
+
+	/** The controller paging the list view through a bounded window, used
+	 * instead of the cursor loader with {@link TweetDataConstants#WINDOWED_LIST}. */
+	private WindowedListController windowController;
+
+	/** The list view. */
+	private ListView listView;
+
+	/** The view showing the number of new tweets not shown yet. */
+	private TextView newTweetsView;
+
 	/** The Constant TWEET_LOADER. */
 	private static final int TWEET_LOADER = 0;
 
-	/**  The static load options for async image loading. */
+	/**  The static load options for async image loading, built in the
+	 * background after the first frame. */
 	private static ImageLoaderConfiguration IMG_LOAD_OPTIONS;
 
 	/** The image loader object. */
@@ -62,13 +104,26 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 
     private boolean isInitialized;
 
+	/** The check whether the first rows are loaded or not. */
+	private boolean isDataLoaded;
+
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		this.scrollListener = initScrollListener(savedInstanceState);
 		this.handler = new Handler();
 		initImageOptions();
-		adapter = new TweetCursorAdapter(this.getActivity(), null, ImageLoader.getInstance());
+		recyclerList = TweetSettings.isRecyclerList(getActivity());
+		if (recyclerList) {
+			recyclerAdapter = new TweetRecyclerAdapter(getActivity(), ImageLoader.getInstance());
+			snapshotCallbacks = new SnapshotCallbacks();
+		} else {
+			adapter = new TweetCursorAdapter(this.getActivity(), null, ImageLoader.getInstance());
+			if (TweetDataConstants.WINDOWED_LIST && dataUri != null) {
+				// Queries the cached rows while the view is inflated
+				initWindowController();
+			}
+		}
 	}
 
 	@Override
@@ -84,22 +139,135 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
 		super.onCreateView(inflater, container, savedInstanceState);
+		if (recyclerList) {
+			return holdFirstFrame(createRecyclerView(inflater, container));
+		}
 		View view = inflater.inflate(R.layout.display_tweet, container, false);
 		swipeLayout = (SwipeRefreshLayout) view.findViewById(R.id.swripe_refresh);
-		ListView listView = (ListView) view.findViewById(R.id.list);
+		listView = (ListView) view.findViewById(R.id.list);
 		listView.setOnScrollListener(scrollListener);
+		listView.setRecyclerListener(adapter);
 		swipeLayout.setOnRefreshListener(this);
 		listView.setAdapter(adapter);
-        return view;
+		newTweetsView = (TextView) view.findViewById(R.id.new_tweets);
+		newTweetsView.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				if (windowController != null) {
+					windowController.revealPending();
+				}
+			}
+		});
+		if (windowController != null) {
+			windowController.setListView(listView);
+			onPendingChanged(windowController.getPendingCount());
+		}
+        return holdFirstFrame(view);
     }
 
+	/**
+	 * Holds the first frame of the app until the cached rows are loaded, so
+	 * it shows them instead of an empty list. The frame is not held for longer
+	 * than {@link StartupTrace#FIRST_FRAME_TIMEOUT}.
+	 *
+	 * @param view the root view
+	 * @return the view
+	 */
+	private View holdFirstFrame(final View view) {
+		if (StartupTrace.isFirstFrameDrawn()) {
+			return view;
+		}
+		view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+			@Override
+			public boolean onPreDraw() {
+				if (!isDataLoaded && !StartupTrace.isFirstFrameOverdue()) {
+					return false;
+				}
+				view.getViewTreeObserver().removeOnPreDrawListener(this);
+				StartupTrace.onFirstCachedFrame();
+				return true;
+			}
+		});
+		return view;
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+		FrameMonitor.start(getActivity());
+	}
+
+	@Override
+	public void onPause() {
+		super.onPause();
+		FrameMonitor.stop();
+	}
+
+	@Override
+	public void onDestroyView() {
+		super.onDestroyView();
+		if (imageLoader.isInited()) {
+			imageLoader.resume();
+		}
+		listView = null;
+		newTweetsView = null;
+		if (windowController != null) {
+			windowController.setListView(null);
+		}
+	}
+
+	/**
+	 * Creates the view of the recycler view backend.
+	 *
+	 * @param inflater the inflater
+	 * @param container the container
+	 * @return the view
+	 */
+	private View createRecyclerView(LayoutInflater inflater, ViewGroup container) {
+		View view = inflater.inflate(R.layout.display_tweet_recycler, container, false);
+		swipeLayout = (SwipeRefreshLayout) view.findViewById(R.id.swripe_refresh);
+		RecyclerView recyclerView = (RecyclerView) view.findViewById(R.id.list);
+		layoutManager = new LinearLayoutManager(getActivity());
+		recyclerView.setLayoutManager(layoutManager);
+		recyclerView.setAdapter(recyclerAdapter);
+		recyclerView.setOnScrollListener(new RecyclerView.OnScrollListener() {
+			@Override
+			public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+				int scrollState = CustomScrollListener.SCROLL_STATE_IDLE;
+				if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+					scrollState = CustomScrollListener.SCROLL_STATE_FLING;
+				} else if (newState == RecyclerView.SCROLL_STATE_DRAGGING) {
+					scrollState = CustomScrollListener.SCROLL_STATE_TOUCH_SCROLL;
+				}
+				scrollListener.onScrollStateChanged(null, scrollState);
+			}
+
+			@Override
+			public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+				int first = layoutManager.findFirstVisibleItemPosition();
+				int last = layoutManager.findLastVisibleItemPosition();
+				scrollListener.onItemsScrolled(first, last - first + 1,
+						recyclerAdapter.getItemCount());
+			}
+		});
+		swipeLayout.setOnRefreshListener(this);
+		return view;
+	}
+
     @Override
 	public void onActivityCreated(Bundle savedInstanceState) {
 		super.onActivityCreated(savedInstanceState);
         if(this.isLoading) {
             displayRefresh();
         }
-		getActivity().getSupportLoaderManager().initLoader(TWEET_LOADER, null, this);
+		if (recyclerList) {
+			getActivity().getSupportLoaderManager().initLoader(TWEET_LOADER, null,
+					snapshotCallbacks);
+		} else if (TweetDataConstants.WINDOWED_LIST) {
+			initWindowController();
+		} else {
+			getActivity().getSupportLoaderManager().initLoader(TWEET_LOADER, null, this);
+		}
         isInitialized = true;
 	}
 
@@ -110,13 +278,35 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 		outState.putInt(CustomScrollListener.PAGE_PREVIOUS_COUNT, scrollListener.getPreviousTotalCount());
 	}
 
+	/**
+	 * Creates and starts the window controller, once the data uri is set.
+	 */
+	private void initWindowController() {
+		if (windowController == null) {
+			windowController = new WindowedListController(getActivity().getContentResolver(),
+					dataUri, TweetDataConstants.WINDOW_SIZE, adapter, scrollListener);
+			windowController.setOnPendingChangeListener(this);
+			windowController.start();
+		}
+		windowController.setListView(listView);
+	}
+
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		if (windowController != null) {
+			windowController.stop();
+		}
+		Log.i(DisplayFragment.class.getSimpleName(), "Avatar loads: "
+				+ SingleFlightLoader.getFlightsStarted() + " started, "
+				+ SingleFlightLoader.getDuplicatesSaved() + " duplicates saved");
+	}
+
 	@Override
 	public Loader<Cursor> onCreateLoader(int arg0, Bundle arg1) {
 		CursorLoader loader = null;
 		if (arg0 == TWEET_LOADER) {
 			String orderBy = TweetDataConstants.ORDER_BY + scrollListener.getCurrentScrollCount();
-            ContentResolver resolver = getActivity().getContentResolver();
-            resolver.query(dataUri, TweetDataConstants.COLUMNS, null, null, orderBy);
 			loader = new CursorLoader(this.getActivity(), dataUri,
 					TweetDataConstants.COLUMNS, null, null,
 					orderBy);
@@ -126,7 +316,10 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 
 	@Override
 	public void onLoadFinished(Loader<Cursor> arg0, Cursor arg1) {
+		FrameMonitor.mark(FrameMonitor.TAG_CURSOR_SWAP);
 		adapter.changeCursor(arg1);
+		scrollListener.onDataLoaded(arg1 == null ? 0 : arg1.getCount());
+		adapter.precomputeLayouts(0, TextLayoutCache.PREFETCH_ROWS * 2);
 	}
 
 	@Override
@@ -134,6 +327,25 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 		adapter.changeCursor(null);
 	}
 
+	@Override
+	public void onPendingChanged(int count) {
+		if (newTweetsView == null) {
+			return;
+		}
+		if (count <= 0) {
+			newTweetsView.setVisibility(View.GONE);
+			return;
+		}
+		if (count > WindowedListController.PENDING_LIMIT) {
+			newTweetsView.setText(getString(R.string.new_tweets_many,
+					WindowedListController.PENDING_LIMIT));
+		} else {
+			newTweetsView.setText(getResources().getQuantityString(R.plurals.new_tweets,
+					count, count));
+		}
+		newTweetsView.setVisibility(View.VISIBLE);
+	}
+
 	@Override
 	public void onRefresh() {
 		refreshListener.loadTweets();
@@ -153,13 +365,50 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 	 * @return the custom scroll listener
 	 */
 	private CustomScrollListener initScrollListener(Bundle savedInstance) {
-		final LoaderCallbacks<Cursor> callBack = this;
 		CustomScrollListener listener = new CustomScrollListener() {
 	
 			@Override
 			public void loadData(int dataSize) {
-				getActivity().getSupportLoaderManager().
-				restartLoader(TWEET_LOADER, null, callBack);
+				if (windowController != null) {
+					windowController.loadOlder(dataSize - adapter.getCount());
+				} else {
+					restartTweetLoader();
+				}
+			}
+
+			@Override
+			public void onDataLoaded(int totalItemCount, boolean moreItems) {
+				super.onDataLoaded(totalItemCount, moreItems);
+				isDataLoaded = true;
+			}
+
+			@Override
+			public void onFlingChanged(boolean isFlinging) {
+				FrameMonitor.setFlinging(isFlinging);
+				if (!imageLoader.isInited()) {
+					return;
+				}
+				// Loads queued during the fling wait for it to end, and those of
+				// rows scrolled away meanwhile are cancelled by the adapters
+				if (isFlinging) {
+					imageLoader.pause();
+				} else {
+					imageLoader.resume();
+				}
+			}
+
+			@Override
+			public void onItemsScrolled(int firstVisibleItem, int visibleItemCount,
+					int totalItemCount) {
+				super.onItemsScrolled(firstVisibleItem, visibleItemCount, totalItemCount);
+				prepareRows(firstVisibleItem + visibleItemCount);
+				if (windowController != null && !windowController.isAtHead()
+						&& firstVisibleItem <= visibleItemCount) {
+					windowController.loadNewer(ITEMS_PER_PAGE);
+				} else if (windowController != null && firstVisibleItem == 0
+						&& windowController.getPendingCount() > 0) {
+					windowController.revealPending();
+				}
 			}
 		};
 		if(savedInstance != null) {
@@ -170,21 +419,97 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 	}
 	
 	/**
-	 * Initializes the image options.
+	 * Precomputes the text layouts and prefetches the images of the rows about
+	 * to be scrolled into view.
+	 *
+	 * @param from the position of the first row
+	 */
+	private void prepareRows(int from) {
+		if (recyclerList) {
+			recyclerAdapter.precomputeLayouts(from, TextLayoutCache.PREFETCH_ROWS);
+			recyclerAdapter.prefetchImages(from, ImagePrefetcher.PREFETCH_ROWS);
+		} else {
+			adapter.precomputeLayouts(from, TextLayoutCache.PREFETCH_ROWS);
+			adapter.prefetchImages(from, ImagePrefetcher.PREFETCH_ROWS);
+		}
+	}
+
+	/**
+	 * Restarts the tweet loader of the list backend in use.
+	 */
+	private void restartTweetLoader() {
+		if (recyclerList) {
+			getActivity().getSupportLoaderManager().restartLoader(TWEET_LOADER,
+					null, snapshotCallbacks);
+		} else {
+			getActivity().getSupportLoaderManager().restartLoader(TWEET_LOADER,
+					null, this);
+		}
+	}
+
+	/**
+	 * Initializes the image options. The image loader is set up after the
+	 * first frame, its configuration built in the background since indexing
+	 * the disk cache reads the cache directory. Rows bound meanwhile show the
+	 * loading image and are bound again once the loader is ready.
 	 */
 	protected void initImageOptions() {
+		imageLoader = ImageLoader.getInstance();
+		if (imageLoader.isInited()) {
+			return;
+		}
+		final Context context = getActivity().getApplicationContext();
+		StartupTrace.runAfterFirstFrame(new Runnable() {
+			@Override
+			public void run() {
+				TaskScheduler.IMAGES.execute(new Runnable() {
+					@Override
+					public void run() {
+						buildImageOptions(context);
+						handler.post(new Runnable() {
+							@Override
+							public void run() {
+								onImageOptionsBuilt(context);
+							}
+						});
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Builds the image options once. Called on a background thread.
+	 *
+	 * @param context the application context
+	 */
+	private static synchronized void buildImageOptions(Context context) {
 		if (IMG_LOAD_OPTIONS == null) {
-			Context context = getActivity().getApplicationContext();
 			IMG_LOAD_OPTIONS = new ImageLoaderConfiguration.Builder(context)
-					.diskCacheSize(TweetDataConstants.MAX_MEMORY_SIZE)
-					.memoryCacheSizePercentage(
-							TweetDataConstants.IMAGE_CACHE_PERCENT)
-					.threadPoolSize(TweetDataConstants.IMAGE_THREAD_POOL)
+					.diskCache(AvatarDiskCache.create(context))
+					.memoryCache(new TrimmableMemoryCache((int) (Runtime.getRuntime()
+							.maxMemory() / 100 * TweetDataConstants.IMAGE_CACHE_PERCENT)))
+					.taskExecutor(TaskScheduler.IMAGES)
+					.taskExecutorForCachedImages(TaskScheduler.IMAGES)
 					.build();
-			imageLoader = ImageLoader.getInstance();
+		}
+	}
+
+	/**
+	 * Initializes the image loader with the built options, if not done yet,
+	 * and binds the rows again to load their images.
+	 *
+	 * @param context the application context
+	 */
+	private void onImageOptionsBuilt(Context context) {
+		if (!imageLoader.isInited()) {
 			imageLoader.init(IMG_LOAD_OPTIONS);
+			ImagePrefetcher.getInstance().init(context);
+		}
+		if (recyclerList) {
+			recyclerAdapter.notifyDataSetChanged();
 		} else {
-			imageLoader = ImageLoader.getInstance();
+			adapter.notifyDataSetChanged();
 		}
 	}
 	
@@ -213,7 +538,10 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 	@Override
 	public void onStop() {
 		super.onStop();
-		imageLoader.stop();
+		if (imageLoader.isInited()) {
+			imageLoader.resume();
+			imageLoader.stop();
+		}
 	}
 
     /**
@@ -228,8 +556,44 @@ public class DisplayFragment extends Fragment implements OnRefreshListener,
 	 */
 	public void resetScrollListener() {
 		this.scrollListener.resetScroll();
+		if (windowController != null) {
+			windowController.reload();
+		}
 	} 
 	
+	/**
+	 * The Class SnapshotCallbacks. The loader callbacks of the recycler view
+	 * backend. New snapshots dispatch only the rows inserted since the previous
+	 * one, and the list follows new tweets only if it's scrolled to the top.
+	 */
+	private class SnapshotCallbacks implements LoaderCallbacks<TweetSnapshot> {
+
+		@Override
+		public Loader<TweetSnapshot> onCreateLoader(int id, Bundle args) {
+			return new TweetSnapshotLoader(getActivity(), dataUri,
+					scrollListener.getCurrentScrollCount(), TweetDataConstants.WINDOW_SIZE,
+					recyclerAdapter.getSnapshot());
+		}
+
+		@Override
+		public void onLoadFinished(Loader<TweetSnapshot> loader, TweetSnapshot data) {
+			boolean atTop = layoutManager == null
+					|| layoutManager.findFirstCompletelyVisibleItemPosition() <= 0;
+			FrameMonitor.mark(FrameMonitor.TAG_CURSOR_SWAP);
+			recyclerAdapter.swapSnapshot(data);
+			scrollListener.onDataLoaded(data.getCount());
+			recyclerAdapter.precomputeLayouts(0, TextLayoutCache.PREFETCH_ROWS * 2);
+			if (atTop && layoutManager != null) {
+				layoutManager.scrollToPosition(0);
+			}
+		}
+
+		@Override
+		public void onLoaderReset(Loader<TweetSnapshot> loader) {
+			recyclerAdapter.swapSnapshot(null);
+		}
+	}
+
 	/**
 	 * The listener interface for receiving onDisplayRefresh events.
 	 * The class that is interested in processing a onDisplayRefresh
@@ -1,7 +1,5 @@
 package com.kanishk.tweetstream.operations;
 
-import java.util.List;
-
 import android.app.SearchManager;
 import android.content.Intent;
 import android.net.Uri;
@@ -9,7 +7,6 @@ import android.os.Bundle;
 
 import com.kanishk.tweetstream.data.DBUpdateManager;
 import com.kanishk.tweetstream.data.TweetDataConstants;
-import com.kanishk.tweetstream.model.Tweet;
 
 public class SearchActivity extends TweetActivity {
 
@@ -41,7 +38,7 @@ public class SearchActivity extends TweetActivity {
 					SearchManager.QUERY);
 			setUpSearch(searchQuery);
 			displayFragment.setIsLoading(true);
-			taskFragment.setupInitSearch(searchQuery);
+			loadTweets();
 		}
 	}
 	
@@ -53,9 +50,8 @@ public class SearchActivity extends TweetActivity {
 	protected void checkIntent(Intent intent) {
 		if (Intent.ACTION_SEARCH.equals(intent.getAction())) {
 			String searchQuery = intent.getStringExtra(SearchManager.QUERY);
-			if(taskFragment.isLoading()) {
-				displayMessage(getString(R.string.search_loading));
-			} else if (!searchQuery.equals(this.searchText)) {
+			// A running download is cut short for the new search
+			if (!searchQuery.equals(this.searchText)) {
 				setUpSearch(searchQuery);
 				loadTweets();
 			}
@@ -73,24 +69,20 @@ public class SearchActivity extends TweetActivity {
 	@Override
 	public void loadTweets() {
 		if (hasNetAccess()) {
-			taskFragment.refresh(searchText, isNewSearchResult);
-			isNewSearchResult = false;
+			if (deferUntilBound()) {
+				return;
+			}
+			if (ingestService.searchTweets(searchText, isNewSearchResult)) {
+				isNewSearchResult = false;
+			} else {
+				displayMessage(getString(R.string.search_loading));
+			}
 		} else {
 			displayFragment.removeRefresh();
 			displayMessage(getString(R.string.net_connect_error));
 		}
 	}
 
-	@Override
-	public void onUpdateTweets(List<Tweet> tweet) {
-		displayFragment.removeRefresh();
-		if (tweet != null && !tweet.isEmpty()) {
-			DBUpdateManager.getInstance().insertSearchResults(tweet,
-					getContentResolver(), isNewSearchResult);
-		}
-		isNewSearchResult = false;
-	}
-
 	/**
 	 * Sets the up the search from the search text box.
 	 * 
@@ -1,49 +1,94 @@
 package com.kanishk.tweetstream.operations;
 
 import android.app.SearchManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
 import android.view.Gravity;
 import android.view.Menu;
+import android.view.MenuItem;
 import android.widget.SearchView;
 import android.widget.Toast;
 
-import com.kanishk.tweetstream.data.DBUpdateManager;
 import com.kanishk.tweetstream.data.TweetDataConstants;
-import com.kanishk.tweetstream.model.Tweet;
 import com.kanishk.tweetstream.operations.DisplayFragment.OnDisplayRefreshListener;
-import com.kanishk.tweetstream.operations.TweetTaskFragment.TaskFragmentListener;
-
-import java.util.List;
+import com.kanishk.tweetstream.scheduler.StartupTrace;
+import com.kanishk.tweetstream.task.TweetIngestService;
+import com.kanishk.tweetstream.task.TweetIngestService.IngestListener;
 
 /**
  * The Class TweetActivity. The activity for displaying tweets without filter.
+ * The tweets are downloaded by the {@link TweetIngestService}, which the
+ * activity binds to while visible. The activity binds after its first frame,
+ * which shows the tweets cached in the database.
  */
-public class TweetActivity extends FragmentActivity implements TaskFragmentListener, OnDisplayRefreshListener {
+public class TweetActivity extends FragmentActivity implements IngestListener, OnDisplayRefreshListener {
 
-	protected TweetTaskFragment taskFragment;
+	/** The ingest service, null while not bound. */
+	protected TweetIngestService ingestService;
 	
 	protected DisplayFragment displayFragment;
 
     private SearchView searchView;
 
+	/** The check whether a download is requested before the service is bound or not. */
+	private boolean isLoadPending;
+
+	/** The check whether the activity is started or not. */
+	private boolean isStarted;
+
+	/** The check whether the service is bound, or being bound, or not. */
+	private boolean isBinding;
+
+	/** The task binding the service, run after the first frame. */
+	private final Runnable bindTask = new Runnable() {
+		@Override
+		public void run() {
+			if (isStarted && !isBinding) {
+				isBinding = true;
+				bindService(new Intent(TweetActivity.this, TweetIngestService.class),
+						serviceConnection, BIND_AUTO_CREATE);
+			}
+		}
+	};
+
+	/** The connection to the ingest service. */
+	private final ServiceConnection serviceConnection = new ServiceConnection() {
+
+		@Override
+		public void onServiceConnected(ComponentName name, IBinder service) {
+			ingestService = ((TweetIngestService.IngestBinder) service).getService();
+			ingestService.setIngestListener(TweetActivity.this);
+			if (isLoadPending) {
+				isLoadPending = false;
+				loadTweets();
+			} else if (ingestService.isLoading()) {
+				displayFragment.setIsLoading(true);
+				if (displayFragment.isInitialized()) {
+					displayFragment.displayRefresh();
+				}
+			}
+		}
+
+		@Override
+		public void onServiceDisconnected(ComponentName name) {
+			ingestService = null;
+		}
+	};
+
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
+		StartupTrace.begin();
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_tweet);
 		FragmentManager manager = getSupportFragmentManager();
-		taskFragment = (TweetTaskFragment) getSupportFragmentManager()
-				.findFragmentByTag(TweetDataConstants.TASK_FRAGMENT);
-		if (taskFragment == null) {
-			taskFragment = new TweetTaskFragment();
-			manager.beginTransaction().add(taskFragment, 
-					TweetDataConstants.TASK_FRAGMENT).commit();
-		}
 		if(savedInstanceState != null) {
 			displayFragment = (DisplayFragment) manager.findFragmentById(R.id.container);
             setUpDisplayFragment();
@@ -57,10 +102,50 @@ public class TweetActivity extends FragmentActivity implements TaskFragmentListe
 
     private void  setUpDisplayFragment() {
         displayFragment.setDataUri(getDataUri());
-        if (taskFragment.isLoading()) {
-            displayFragment.setIsLoading(true);
-        }
     }
+
+	@Override
+	protected void onStart() {
+		super.onStart();
+		isStarted = true;
+		StartupTrace.runAfterFirstFrame(bindTask);
+	}
+
+	@Override
+	protected void onStop() {
+		super.onStop();
+		isStarted = false;
+		if (ingestService != null) {
+			ingestService.removeIngestListener(this);
+			ingestService = null;
+		}
+		if (isBinding) {
+			isBinding = false;
+			unbindService(serviceConnection);
+		}
+	}
+
+	/**
+	 * Checks if the ingest service is downloading tweets.
+	 *
+	 * @return true, if is loading
+	 */
+	protected boolean isLoading() {
+		return ingestService != null && ingestService.isLoading();
+	}
+
+	/**
+	 * Defers a download until the ingest service is bound.
+	 *
+	 * @return true, if the service is not bound yet and the download is deferred
+	 */
+	protected boolean deferUntilBound() {
+		if (ingestService == null) {
+			isLoadPending = true;
+			return true;
+		}
+		return false;
+	}
 	
 	protected Uri getDataUri() {
 		return TweetDataConstants.CONTENT_URI;
@@ -79,6 +164,15 @@ public class TweetActivity extends FragmentActivity implements TaskFragmentListe
 		return super.onCreateOptionsMenu(menu);
 	}
 
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		if (item.getItemId() == R.id.diagnostics) {
+			startActivity(new Intent(this, DiagnosticsActivity.class));
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
 	/**
 	 * Checks intent. Checks whether the intent is of search from the action bar
 	 * 
@@ -119,12 +213,9 @@ public class TweetActivity extends FragmentActivity implements TaskFragmentListe
 	}
 
 	@Override
-	public void onUpdateTweets(List<Tweet> tweetList) {
+	public void onIngestFinished() {
+		displayFragment.setIsLoading(false);
 		displayFragment.removeRefresh();
-		if(tweetList != null && !tweetList.isEmpty()) {
-			DBUpdateManager dbManager = DBUpdateManager.getInstance();
-			dbManager.insertRows(tweetList, getContentResolver());			
-		}
 	}
 
 	/**
@@ -142,7 +233,9 @@ public class TweetActivity extends FragmentActivity implements TaskFragmentListe
 	@Override
 	public void loadTweets() {
 		if (hasNetAccess()) {
-			taskFragment.refresh();
+			if (!deferUntilBound()) {
+				ingestService.loadTweets();
+			}
 		} else {
 			displayMessage(getString(R.string.net_connect_error));
 			displayFragment.removeRefresh();
@@ -0,0 +1,420 @@
+package com.kanishk.tweetstream.operations;
+
+import java.util.concurrent.Executor;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.view.View;
+import android.widget.ListView;
+
+import com.kanishk.tweetstream.adapter.TextLayoutCache;
+import com.kanishk.tweetstream.adapter.TweetCursorAdapter;
+import com.kanishk.tweetstream.data.TweetWindow;
+import com.kanishk.tweetstream.memory.MemoryGovernor;
+import com.kanishk.tweetstream.memory.MemoryGovernor.OnMemoryStageListener;
+import com.kanishk.tweetstream.metrics.FrameMonitor;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
+import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
+
+/**
+ * The Class WindowedListController. Feeds the tweet list from a
+ * {@link TweetWindow}, so only a bounded number of rows is kept whatever the
+ * scroll distance. Window operations run in order on a background thread.
+ * Their results are applied on the main thread, keeping the rows on screen
+ * in place while rows are added or dropped at either end, and releasing the
+ * decoded images of the dropped rows.
+ * <p>
+ * New rows are only bound while the list is at the top. When it's scrolled
+ * down they are counted as pending instead, and revealed in one batch on
+ * request or once the list is back at the top.
+ * <p>
+ * Under memory pressure the window keeps fewer rows around the visible ones,
+ * and grows back as the list scrolls once the pressure eases.
+ */
+public class WindowedListController implements OnMemoryStageListener {
+
+	/** The Constant PENDING_LIMIT. The maximum number of pending rows counted. */
+	public static final int PENDING_LIMIT = 99;
+
+	/** The Constant MIN_CAPACITY. The fewest rows the window keeps under
+	 * memory pressure. */
+	private static final int MIN_CAPACITY = CustomScrollListener.ITEMS_PER_PAGE * 2;
+
+	/** The Constant KEEP_POSITION. Keeps the first visible row in place. */
+	private static final int KEEP_POSITION = 0;
+
+	/** The Constant FOLLOW_HEAD. Keeps the list at the top if it's there. */
+	private static final int FOLLOW_HEAD = 1;
+
+	/** The Constant SCROLL_TO_TOP. Moves the list to the top. */
+	private static final int SCROLL_TO_TOP = 2;
+
+	/** The window. */
+	private final TweetWindow window;
+
+	/** The maximum number of rows kept without memory pressure. */
+	private final int capacity;
+
+	/** The adapter. */
+	private final TweetCursorAdapter adapter;
+
+	/** The scroll listener told about completed loads. */
+	private final CustomScrollListener scrollListener;
+
+	/** The resolver. */
+	private final ContentResolver resolver;
+
+	/** The data uri. */
+	private final Uri dataUri;
+
+	/** The handler of the main thread. */
+	private final Handler handler;
+
+	/** The executor running the window operations in order. */
+	private final Executor executor;
+
+	/** The observer refreshing the head of the window on content change. */
+	private final ContentObserver observer;
+
+	/** The list view, null while the fragment has no view. */
+	private ListView listView;
+
+	/** The check whether a newer page is being loaded or not. */
+	private boolean loadingNewer;
+
+	/** The check whether a head refresh is queued or not. */
+	private volatile boolean refreshQueued;
+
+	/** The check whether a pending count is queued or not. */
+	private boolean countQueued;
+
+	/** The number of new rows not bound yet. */
+	private int pendingCount;
+
+	/** The pending listener. */
+	private OnPendingChangeListener pendingListener;
+
+	/**
+	 * Instantiates a new windowed list controller.
+	 *
+	 * @param resolver the content resolver
+	 * @param dataUri the data uri
+	 * @param capacity the maximum number of rows kept
+	 * @param adapter the adapter
+	 * @param scrollListener the scroll listener
+	 */
+	public WindowedListController(ContentResolver resolver, Uri dataUri, int capacity,
+			TweetCursorAdapter adapter, CustomScrollListener scrollListener) {
+		this.resolver = resolver;
+		this.dataUri = dataUri;
+		this.window = new TweetWindow(resolver, dataUri, capacity);
+		this.capacity = capacity;
+		this.adapter = adapter;
+		this.scrollListener = scrollListener;
+		this.handler = new Handler();
+		this.executor = TaskScheduler.LIST;
+		this.observer = new ContentObserver(handler) {
+			@Override
+			public void onChange(boolean selfChange) {
+				if (window.isAtHead() && !isListAtTop()) {
+					countPending();
+				} else {
+					refreshHead(false);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Sets the list view the window is shown in.
+	 *
+	 * @param listView the list view, null when the view is destroyed
+	 */
+	public void setListView(ListView listView) {
+		this.listView = listView;
+	}
+
+	/**
+	 * Sets the listener told about the number of pending rows.
+	 *
+	 * @param listener the listener
+	 */
+	public void setOnPendingChangeListener(OnPendingChangeListener listener) {
+		this.pendingListener = listener;
+	}
+
+	/**
+	 * Starts observing the table and the memory stage, and loads the head of
+	 * the window.
+	 */
+	public void start() {
+		resolver.registerContentObserver(dataUri, true, observer);
+		MemoryGovernor.register(this);
+		refreshHead(true);
+	}
+
+	/**
+	 * Stops observing the table and the memory stage.
+	 */
+	public void stop() {
+		resolver.unregisterContentObserver(observer);
+		MemoryGovernor.unregister(this);
+	}
+
+	@Override
+	public void onMemoryStage(int stage) {
+		final int newCapacity = Math.max(MemoryGovernor.scale(capacity, stage), MIN_CAPACITY);
+		// The row rather than its position, which the queued operations may move
+		final long anchorId = listView == null ? -1
+				: adapter.getItemId(listView.getFirstVisiblePosition());
+		submit(new Operation() {
+			@Override
+			TweetWindow.Change run() {
+				return window.setCapacity(newCapacity, anchorId);
+			}
+		}, KEEP_POSITION);
+	}
+
+	/**
+	 * Reloads the head of the table, such as after the table is cleared. The
+	 * window moves back to the head if it was scrolled away from it.
+	 */
+	public void reload() {
+		setPendingCount(0);
+		refreshQueued = true;
+		submit(new Operation() {
+			@Override
+			TweetWindow.Change run() {
+				refreshQueued = false;
+				return window.refreshHead(CustomScrollListener.ITEMS_PER_PAGE);
+			}
+		}, SCROLL_TO_TOP);
+	}
+
+	/**
+	 * Binds the pending rows and moves the list to the top.
+	 */
+	public void revealPending() {
+		reload();
+	}
+
+	/**
+	 * Gets the number of new rows not bound yet.
+	 *
+	 * @return the pending count
+	 */
+	public int getPendingCount() {
+		return pendingCount;
+	}
+
+	/**
+	 * Checks if the window holds the newest rows of the table.
+	 *
+	 * @return true, if is at head
+	 */
+	public boolean isAtHead() {
+		return window.isAtHead();
+	}
+
+	/**
+	 * Reloads the head of the window. Unless forced, only a window holding the
+	 * newest rows is reloaded, and a window scrolled away from the head picks
+	 * the new rows when scrolled back.
+	 *
+	 * @param force whether the window moves back to the head
+	 */
+	private void refreshHead(final boolean force) {
+		if (refreshQueued && !force) {
+			return;
+		}
+		refreshQueued = true;
+		submit(new Operation() {
+			@Override
+			TweetWindow.Change run() {
+				refreshQueued = false;
+				return force || window.isAtHead() ? window.refreshHead(
+						CustomScrollListener.ITEMS_PER_PAGE) : null;
+			}
+		}, FOLLOW_HEAD);
+	}
+
+	/**
+	 * Counts the rows newer than the window in the background, without
+	 * binding them.
+	 */
+	private void countPending() {
+		if (countQueued) {
+			return;
+		}
+		countQueued = true;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final int count = window.countNewer(PENDING_LIMIT + 1);
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						countQueued = false;
+						if (window.isAtHead()) {
+							setPendingCount(count);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Sets the number of pending rows and tells the listener.
+	 *
+	 * @param count the count
+	 */
+	private void setPendingCount(int count) {
+		if (count != pendingCount) {
+			pendingCount = count;
+			if (pendingListener != null) {
+				pendingListener.onPendingChanged(count);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the list is scrolled to the top.
+	 *
+	 * @return true, if the first row is fully visible or there's no list
+	 */
+	private boolean isListAtTop() {
+		if (listView == null) {
+			return true;
+		}
+		View child = listView.getChildAt(0);
+		return listView.getFirstVisiblePosition() == 0
+				&& (child == null || child.getTop() >= listView.getPaddingTop());
+	}
+
+	/**
+	 * Loads rows older than the window.
+	 *
+	 * @param count the number of rows to load
+	 */
+	public void loadOlder(final int count) {
+		submit(new Operation() {
+			@Override
+			TweetWindow.Change run() {
+				return window.loadOlder(count);
+			}
+		}, KEEP_POSITION);
+	}
+
+	/**
+	 * Loads rows newer than the window, if the window is not at the head.
+	 *
+	 * @param count the number of rows to load
+	 */
+	public void loadNewer(final int count) {
+		if (loadingNewer) {
+			return;
+		}
+		loadingNewer = true;
+		submit(new Operation() {
+			@Override
+			TweetWindow.Change run() {
+				return window.isAtHead() ? null : window.loadNewer(count);
+			}
+		}, KEEP_POSITION);
+	}
+
+	/**
+	 * Submits a window operation and applies its change on the main thread.
+	 *
+	 * @param operation the operation
+	 * @param positioning how the list is positioned after the change
+	 */
+	private void submit(final Operation operation, final int positioning) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final TweetWindow.Change change = operation.run();
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						loadingNewer = false;
+						if (change != null) {
+							apply(change, positioning);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Applies a window change to the list, keeping the first visible row in
+	 * place unless asked otherwise.
+	 *
+	 * @param change the change
+	 * @param positioning how the list is positioned after the change
+	 */
+	private void apply(TweetWindow.Change change, int positioning) {
+		int first = 0;
+		int top = 0;
+		boolean atTop = isListAtTop();
+		if (listView != null) {
+			first = listView.getFirstVisiblePosition();
+			View child = listView.getChildAt(0);
+			top = child == null ? 0 : child.getTop();
+		}
+		FrameMonitor.mark(FrameMonitor.TAG_CURSOR_SWAP);
+		adapter.changeCursor(change.cursor);
+		scrollListener.onDataLoaded(change.cursor.getCount(), change.hasOlder);
+		if (change.addedTop > 0 && window.isAtHead()) {
+			setPendingCount(0);
+		}
+		if (listView != null) {
+			if (change.reset || positioning == SCROLL_TO_TOP) {
+				first = 0;
+				listView.setSelection(0);
+			} else if (!(positioning == FOLLOW_HEAD && atTop)) {
+				first = Math.max(0, first + change.addedTop - change.removedTop);
+				listView.setSelectionFromTop(first, top);
+			}
+		}
+		adapter.precomputeLayouts(first, TextLayoutCache.PREFETCH_ROWS * 2);
+		if (change.released != null && ImageLoader.getInstance().isInited()) {
+			for (String[] row : change.released) {
+				MemoryCacheUtils.removeFromCache(adapter.getImageUri(row[2], row[0]),
+						ImageLoader.getInstance().getMemoryCache());
+			}
+		}
+	}
+
+	/**
+	 * The listener interface for receiving changes of the number of pending
+	 * rows.
+	 */
+	public static interface OnPendingChangeListener {
+
+		/**
+		 * On pending changed.
+		 *
+		 * @param count the number of new rows not bound yet
+		 */
+		void onPendingChanged(int count);
+	}
+
+	/**
+	 * The Class Operation. A window operation run on the background thread.
+	 */
+	private abstract static class Operation {
+
+		/**
+		 * Runs the operation.
+		 *
+		 * @return the change, null if nothing changed
+		 */
+		abstract TweetWindow.Change run();
+	}
+}
@@ -0,0 +1,330 @@
+package com.kanishk.tweetstream.scheduler;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * The Class PriorityExecutor. A named thread pool with its own thread priority
+ * and a bounded queue. A task submitted to a full queue runs on the submitting
+ * thread, which slows the submitter down instead of losing the task. Ordered
+ * executors have a single thread and an unbounded queue instead, so their
+ * tasks never run on the submitter and always run one at a time in submit
+ * order. The executor keeps the number of tasks submitted, completed and run
+ * by their submitter, and the time tasks wait in the queue and take to run.
+ */
+public class PriorityExecutor extends ThreadPoolExecutor {
+
+	/** The Constant UNBOUNDED. The queue bound of the ordered executors. */
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	/** The Constant KEEP_ALIVE. The time(seconds) idle threads are kept. */
+	private static final int KEEP_ALIVE = 30;
+
+	/** The Constant TIMER. The handler delayed tasks wait on. */
+	private static final Handler TIMER = new Handler(Looper.getMainLooper());
+
+	/** The name. */
+	private final String name;
+
+	/** The queue bound. */
+	private final int queueSize;
+
+	/** The number of tasks submitted. */
+	private final AtomicLong submitted = new AtomicLong();
+
+	/** The number of tasks completed. */
+	private final AtomicLong completed = new AtomicLong();
+
+	/** The number of tasks run by their submitter because the queue was full. */
+	private final AtomicLong callerRuns = new AtomicLong();
+
+	/** The total time(milliseconds) tasks waited in the queue. */
+	private final AtomicLong totalWait = new AtomicLong();
+
+	/** The longest time(milliseconds) a task waited in the queue. */
+	private final AtomicLong maxWait = new AtomicLong();
+
+	/** The total time(milliseconds) tasks took to run. */
+	private final AtomicLong totalRun = new AtomicLong();
+
+	/**
+	 * Instantiates a new ordered priority executor, running its tasks one at
+	 * a time in submit order on a single thread.
+	 *
+	 * @param name the name, also given to the thread
+	 * @param priority the thread priority, one of the {@link Process} priorities
+	 */
+	public PriorityExecutor(String name, int priority) {
+		this(name, 1, UNBOUNDED, priority, false);
+	}
+
+	/**
+	 * Instantiates a new priority executor.
+	 *
+	 * @param name the name, also given to the threads
+	 * @param threads the number of threads
+	 * @param queueSize the queue bound
+	 * @param priority the thread priority, one of the {@link Process} priorities
+	 * @param lifo whether the most recent tasks run first
+	 */
+	public PriorityExecutor(String name, int threads, int queueSize, int priority,
+			boolean lifo) {
+		super(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS, createQueue(queueSize, lifo),
+				new PriorityThreadFactory(name, priority), new CallerRunsHandler());
+		this.name = name;
+		this.queueSize = queueSize;
+		allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		submitted.incrementAndGet();
+		super.execute(new TimedTask(command));
+	}
+
+	/**
+	 * Executes a task after a delay.
+	 *
+	 * @param command the task
+	 * @param delayMillis the delay(milliseconds)
+	 */
+	public void executeDelayed(final Runnable command, long delayMillis) {
+		TIMER.postDelayed(new Runnable() {
+			@Override
+			public void run() {
+				execute(command);
+			}
+		}, delayMillis);
+	}
+
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the number of tasks waiting in the queue.
+	 *
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return getQueue().size();
+	}
+
+	/**
+	 * Gets the queue bound.
+	 *
+	 * @return the queue size, {@link #UNBOUNDED} for the ordered executors
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * Gets the number of tasks submitted.
+	 *
+	 * @return the submitted count
+	 */
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	/**
+	 * Gets the number of tasks completed.
+	 *
+	 * @return the completed count
+	 */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * Gets the number of tasks run by their submitter because the queue was
+	 * full.
+	 *
+	 * @return the caller runs count
+	 */
+	public long getCallerRunsCount() {
+		return callerRuns.get();
+	}
+
+	/**
+	 * Gets the mean time tasks waited in the queue.
+	 *
+	 * @return the mean wait(milliseconds)
+	 */
+	public long getMeanWait() {
+		long count = completed.get();
+		return count == 0 ? 0 : totalWait.get() / count;
+	}
+
+	/**
+	 * Gets the longest time a task waited in the queue.
+	 *
+	 * @return the max wait(milliseconds)
+	 */
+	public long getMaxWait() {
+		return maxWait.get();
+	}
+
+	/**
+	 * Gets the mean time tasks took to run.
+	 *
+	 * @return the mean run time(milliseconds)
+	 */
+	public long getMeanRunTime() {
+		long count = completed.get();
+		return count == 0 ? 0 : totalRun.get() / count;
+	}
+
+	@Override
+	public String toString() {
+		return name + " queue=" + getQueueDepth()
+				+ (queueSize == UNBOUNDED ? "" : "/" + queueSize)
+				+ " active=" + getActiveCount()
+				+ " submitted=" + submitted.get()
+				+ " completed=" + completed.get()
+				+ " callerRuns=" + callerRuns.get()
+				+ " waitMean=" + getMeanWait() + "ms"
+				+ " waitMax=" + maxWait.get() + "ms"
+				+ " runMean=" + getMeanRunTime() + "ms";
+	}
+
+	/**
+	 * Records a completed task.
+	 *
+	 * @param wait the time(milliseconds) it waited in the queue
+	 * @param run the time(milliseconds) it took to run
+	 */
+	private void record(long wait, long run) {
+		completed.incrementAndGet();
+		totalWait.addAndGet(wait);
+		totalRun.addAndGet(run);
+		long max = maxWait.get();
+		while (wait > max && !maxWait.compareAndSet(max, wait)) {
+			max = maxWait.get();
+		}
+	}
+
+	/**
+	 * Creates the queue.
+	 *
+	 * @param queueSize the queue bound
+	 * @param lifo whether the most recent tasks are taken first
+	 * @return the queue
+	 */
+	private static BlockingQueue<Runnable> createQueue(int queueSize, boolean lifo) {
+		if (!lifo) {
+			return new LinkedBlockingDeque<>(queueSize);
+		}
+		return new LinkedBlockingDeque<Runnable>(queueSize) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean offer(Runnable e) {
+				return offerFirst(e);
+			}
+		};
+	}
+
+	/**
+	 * The Class TimedTask. A task stamped with its submit time.
+	 */
+	private class TimedTask implements Runnable {
+
+		/** The task. */
+		private final Runnable task;
+
+		/** The submit time. */
+		private final long submitTime;
+
+		/**
+		 * Instantiates a new timed task.
+		 *
+		 * @param task the task
+		 */
+		TimedTask(Runnable task) {
+			this.task = task;
+			this.submitTime = SystemClock.uptimeMillis();
+		}
+
+		@Override
+		public void run() {
+			long start = SystemClock.uptimeMillis();
+			try {
+				task.run();
+			} finally {
+				record(start - submitTime, SystemClock.uptimeMillis() - start);
+			}
+		}
+	}
+
+	/**
+	 * The Class CallerRunsHandler. Runs a rejected task on the submitting
+	 * thread, unless the executor is shut down.
+	 */
+	private static class CallerRunsHandler implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (!executor.isShutdown()) {
+				((PriorityExecutor) executor).callerRuns.incrementAndGet();
+				r.run();
+			}
+		}
+	}
+
+	/**
+	 * The Class PriorityThreadFactory. Creates named threads running at a
+	 * given priority.
+	 */
+	private static class PriorityThreadFactory implements ThreadFactory {
+
+		/** The name prefix. */
+		private final String name;
+
+		/** The thread priority. */
+		private final int priority;
+
+		/** The number of threads created. */
+		private final AtomicInteger count = new AtomicInteger();
+
+		/**
+		 * Instantiates a new priority thread factory.
+		 *
+		 * @param name the name prefix
+		 * @param priority the thread priority
+		 */
+		PriorityThreadFactory(String name, int priority) {
+			this.name = name;
+			this.priority = priority;
+		}
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(priority);
+					r.run();
+				}
+			}, name + "-" + count.incrementAndGet());
+		}
+	}
+}
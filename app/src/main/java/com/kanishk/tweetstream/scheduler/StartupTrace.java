@@ -0,0 +1,184 @@
+package com.kanishk.tweetstream.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+
+/**
+ * The Class StartupTrace. Traces the cold start of the app and holds back the
+ * work not needed for the first frame. The first frame shows the newest
+ * tweets cached in the database. Work such as setting up the image loader or
+ * connecting to the stream is deferred until that frame is drawn, or until
+ * {@link #FIRST_FRAME_TIMEOUT} has passed. The trace reports the time from
+ * the start to the first cached frame and to the first live tweet. Must be
+ * used on the main thread, except for the getters.
+ */
+public final class StartupTrace {
+
+	/** The Constant FIRST_FRAME_TIMEOUT. The time(milliseconds) after which the
+	 * deferred work runs even if the first frame is not drawn yet. */
+	public static final int FIRST_FRAME_TIMEOUT = 1000;
+
+	/** The Constant TAG. */
+	private static final String TAG = StartupTrace.class.getSimpleName();
+
+	/** The Constant HANDLER. The handler of the main thread. */
+	private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+	/** The work deferred until the first frame. */
+	private static final List<Runnable> deferred = new ArrayList<>();
+
+	/** The Constant RELEASE_TASK. Runs the deferred work on timeout. */
+	private static final Runnable RELEASE_TASK = new Runnable() {
+		@Override
+		public void run() {
+			Log.w(TAG, "First frame not drawn after " + FIRST_FRAME_TIMEOUT + "ms");
+			releaseDeferred();
+		}
+	};
+
+	/** The start time(uptime milliseconds), 0 until started. */
+	private static long startTime;
+
+	/** The time(milliseconds) to the first cached frame, -1 until drawn. */
+	private static volatile long firstFrameTime = -1;
+
+	/** The time(milliseconds) to the first live tweet, -1 until received. */
+	private static volatile long firstLiveTweetTime = -1;
+
+	/** The check whether the deferred work is released or not. */
+	private static boolean isReleased;
+
+	static {
+		MetricsRegistry.gauge("startup.first_cached_frame", new Gauge() {
+			@Override
+			public long getValue() {
+				return firstFrameTime;
+			}
+		});
+		MetricsRegistry.gauge("startup.first_live_tweet", new Gauge() {
+			@Override
+			public long getValue() {
+				return firstLiveTweetTime;
+			}
+		});
+	}
+
+	/**
+	 * Starts the trace. Does nothing after the first call in the process.
+	 */
+	public static void begin() {
+		if (startTime == 0) {
+			startTime = SystemClock.uptimeMillis();
+			HANDLER.postDelayed(RELEASE_TASK, FIRST_FRAME_TIMEOUT);
+		}
+	}
+
+	/**
+	 * Runs a task once the first frame is drawn. Tasks submitted after that,
+	 * or without a trace started, run on the next turn of the main thread.
+	 *
+	 * @param task the task
+	 */
+	public static void runAfterFirstFrame(Runnable task) {
+		if (isReleased || startTime == 0) {
+			HANDLER.post(task);
+		} else {
+			deferred.add(task);
+		}
+	}
+
+	/**
+	 * Checks if the first cached frame is drawn.
+	 *
+	 * @return true, if drawn
+	 */
+	public static boolean isFirstFrameDrawn() {
+		return firstFrameTime >= 0;
+	}
+
+	/**
+	 * Checks if the first frame is still awaited after
+	 * {@link #FIRST_FRAME_TIMEOUT}. Screens holding their first frame for the
+	 * cached data stop holding it then.
+	 *
+	 * @return true, if overdue
+	 */
+	public static boolean isFirstFrameOverdue() {
+		return startTime != 0
+				&& SystemClock.uptimeMillis() - startTime > FIRST_FRAME_TIMEOUT;
+	}
+
+	/**
+	 * On first cached frame. Called as the first frame showing the cached
+	 * tweets is drawn. Releases the deferred work. Does nothing after the first
+	 * call.
+	 */
+	public static void onFirstCachedFrame() {
+		if (startTime == 0 || isFirstFrameDrawn()) {
+			return;
+		}
+		firstFrameTime = SystemClock.uptimeMillis() - startTime;
+		Log.i(TAG, "Time to first cached frame: " + firstFrameTime + "ms");
+		releaseDeferred();
+	}
+
+	/**
+	 * On first live tweet. Called as tweets downloaded from the stream are
+	 * received. Does nothing after the first call.
+	 */
+	public static void onFirstLiveTweet() {
+		if (startTime == 0 || firstLiveTweetTime >= 0) {
+			return;
+		}
+		firstLiveTweetTime = SystemClock.uptimeMillis() - startTime;
+		Log.i(TAG, "Time to first live tweet: " + firstLiveTweetTime + "ms");
+	}
+
+	/**
+	 * Gets the time to the first cached frame.
+	 *
+	 * @return the time(milliseconds), -1 if not drawn yet
+	 */
+	public static long getTimeToFirstCachedFrame() {
+		return firstFrameTime;
+	}
+
+	/**
+	 * Gets the time to the first live tweet.
+	 *
+	 * @return the time(milliseconds), -1 if not received yet
+	 */
+	public static long getTimeToFirstLiveTweet() {
+		return firstLiveTweetTime;
+	}
+
+	/**
+	 * Runs the deferred work, each task on its own turn of the main thread so
+	 * the frame being drawn is not held up.
+	 */
+	private static void releaseDeferred() {
+		if (isReleased) {
+			return;
+		}
+		isReleased = true;
+		HANDLER.removeCallbacks(RELEASE_TASK);
+		for (Runnable task : deferred) {
+			HANDLER.post(task);
+		}
+		deferred.clear();
+	}
+
+	/**
+	 * Instantiates a new startup trace.
+	 */
+	private StartupTrace() {
+	}
+}
@@ -0,0 +1,118 @@
+package com.kanishk.tweetstream.scheduler;
+
+import android.os.Process;
+
+import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+
+/**
+ * The Class TaskScheduler. The executors of the background work of the app,
+ * one per subsystem. Each has its own threads, priority and queue bound, so a
+ * blocked stream read or a burst of image loads cannot hold up unrelated
+ * work such as releasing a closed connection. The single thread executors
+ * are ordered, as their tasks rely on running one at a time.
+ */
+public final class TaskScheduler {
+
+	/** The Constant NETWORK. Connects to the stream API. */
+	public static final PriorityExecutor NETWORK = new PriorityExecutor("network", 2, 8,
+			Process.THREAD_PRIORITY_BACKGROUND, false);
+
+	/** The Constant STREAM. Reads the lines of the open streams. */
+	public static final PriorityExecutor STREAM = new PriorityExecutor("stream", 2, 4,
+			Process.THREAD_PRIORITY_BACKGROUND, false);
+
+	/** The Constant PARSING. Parses the stream. */
+	public static final PriorityExecutor PARSING = new PriorityExecutor("parsing", 2, 8,
+			Process.THREAD_PRIORITY_BACKGROUND, false);
+
+	/** The Constant STORAGE. Writes tweets, one batch at a time in order. */
+	public static final PriorityExecutor STORAGE = new PriorityExecutor("storage",
+			Process.THREAD_PRIORITY_BACKGROUND);
+
+	/** The Constant JOURNAL. Loads the ingest journal into the database. */
+	public static final PriorityExecutor JOURNAL = new PriorityExecutor("journal",
+			Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+
+	/** The Constant CLEANUP. Releases connections and other resources. */
+	public static final PriorityExecutor CLEANUP = new PriorityExecutor("cleanup",
+			Process.THREAD_PRIORITY_BACKGROUND);
+
+	/** The Constant LIST. Pages the rows of the list, one operation at a time
+	 * in order. */
+	public static final PriorityExecutor LIST = new PriorityExecutor("list",
+			Process.THREAD_PRIORITY_DEFAULT);
+
+	/** The Constant LAYOUT. Precomputes text layouts. */
+	public static final PriorityExecutor LAYOUT = new PriorityExecutor("layout",
+			Process.THREAD_PRIORITY_BACKGROUND);
+
+	/** The Constant IMAGES. Loads the images on screen. */
+	public static final PriorityExecutor IMAGES = new PriorityExecutor("images",
+			TweetDataConstants.IMAGE_THREAD_POOL, 256, Process.THREAD_PRIORITY_BACKGROUND, false);
+
+	/** The Constant PREFETCH. Prefetches images, the most recent requests first. */
+	public static final PriorityExecutor PREFETCH = new PriorityExecutor("prefetch", 2, 64,
+			Process.THREAD_PRIORITY_LOWEST, true);
+
+	/** The Constant ALL. All the executors. */
+	public static final PriorityExecutor[] ALL = {NETWORK, STREAM, PARSING, STORAGE, JOURNAL,
+			CLEANUP, LIST, LAYOUT, IMAGES, PREFETCH};
+
+	static {
+		for (final PriorityExecutor executor : ALL) {
+			String prefix = "executor." + executor.getName() + ".";
+			MetricsRegistry.gauge(prefix + "queue_depth", new Gauge() {
+				@Override
+				public long getValue() {
+					return executor.getQueueDepth();
+				}
+			});
+			MetricsRegistry.gauge(prefix + "completed", new Gauge() {
+				@Override
+				public long getValue() {
+					return executor.getCompletedCount();
+				}
+			});
+			MetricsRegistry.gauge(prefix + "caller_runs", new Gauge() {
+				@Override
+				public long getValue() {
+					return executor.getCallerRunsCount();
+				}
+			});
+			MetricsRegistry.gauge(prefix + "mean_wait", new Gauge() {
+				@Override
+				public long getValue() {
+					return executor.getMeanWait();
+				}
+			});
+			MetricsRegistry.gauge(prefix + "max_wait", new Gauge() {
+				@Override
+				public long getValue() {
+					return executor.getMaxWait();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Gets the queue depth and latency stats of all the executors, one line
+	 * per executor.
+	 *
+	 * @return the stats
+	 */
+	public static String getStats() {
+		StringBuilder stats = new StringBuilder();
+		for (PriorityExecutor executor : ALL) {
+			stats.append(executor).append('\n');
+		}
+		return stats.toString();
+	}
+
+	/**
+	 * Instantiates a new task scheduler.
+	 */
+	private TaskScheduler() {
+	}
+}
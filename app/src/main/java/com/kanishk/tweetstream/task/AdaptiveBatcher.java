@@ -0,0 +1,183 @@
+package com.kanishk.tweetstream.task;
+
+import java.util.Arrays;
+
+/**
+ * The Class AdaptiveBatcher. Decides when a batch of tweets read from the
+ * stream is handed to the database. A batch is closed once it holds the
+ * number of tweets expected to arrive within the flush delay, or once its
+ * first tweet has waited for the flush delay. The arrival rate is measured
+ * as tweets come in. The flush delay follows the p99 delivery latency of the
+ * recent tweets: it's cut when the p99 misses the target, and grows back
+ * slowly while it meets it. Bursts thus fill large batches, written in fewer
+ * transactions, while tweets of a quiet stream are delivered promptly.
+ */
+public class AdaptiveBatcher {
+
+	/** The Constant MIN_BATCH. The minimum batch size. */
+	public static final int MIN_BATCH = 10;
+
+	/** The Constant MAX_BATCH. The maximum batch size. */
+	public static final int MAX_BATCH = 500;
+
+	/** The Constant IDLE_TIMEOUT. The time(milliseconds) an empty batch waits
+	 * for its first tweet. */
+	public static final long IDLE_TIMEOUT = 5000;
+
+	/** The Constant MIN_FLUSH_DELAY. The minimum flush delay(milliseconds). */
+	private static final long MIN_FLUSH_DELAY = 50;
+
+	/** The Constant LATENCY_WINDOW. The number of recent latencies the p99 is
+	 * measured over. */
+	private static final int LATENCY_WINDOW = 512;
+
+	/** The Constant DECREASE. The factor the flush delay is cut by. */
+	private static final float DECREASE = 0.7f;
+
+	/** The Constant INCREASE_STEP. The share of the target the flush delay
+	 * grows by. */
+	private static final float INCREASE_STEP = 0.05f;
+
+	/** The Constant HEADROOM. The share of the target under which the p99
+	 * lets the flush delay grow. */
+	private static final float HEADROOM = 0.8f;
+
+	/** The Constant MAX_DELAY_SHARE. The share of the target the flush delay
+	 * grows up to. A tweet waiting the whole flush delay alone is still
+	 * delivered within the target. */
+	private static final float MAX_DELAY_SHARE = 0.9f;
+
+	/** The Constant SMOOTHING. The weight of a new interval in the mean
+	 * arrival interval. */
+	private static final float SMOOTHING = 0.1f;
+
+	/** The target p99 latency(milliseconds). */
+	private final long latencyTarget;
+
+	/** The recent latencies, a ring buffer. */
+	private final long[] latencies;
+
+	/** The number of latencies recorded. */
+	private long latencyCount;
+
+	/** The flush delay(milliseconds). */
+	private long flushDelay;
+
+	/** The mean time(milliseconds) between two arrivals, 0 if unknown. */
+	private float meanInterval;
+
+	/** The time of the last arrival, 0 if none in the current batch. */
+	private long lastArrival;
+
+	/** The p99 latency of the last flush. */
+	private long lastP99;
+
+	/**
+	 * Instantiates a new adaptive batcher.
+	 *
+	 * @param latencyTarget the target p99 latency(milliseconds)
+	 */
+	public AdaptiveBatcher(long latencyTarget) {
+		this.latencyTarget = latencyTarget;
+		this.latencies = new long[LATENCY_WINDOW];
+		this.flushDelay = latencyTarget / 2;
+	}
+
+	/**
+	 * Gets the size a batch is closed at, the number of tweets expected
+	 * within the flush delay.
+	 *
+	 * @return the batch size
+	 */
+	public synchronized int getBatchSize() {
+		if (meanInterval <= 0) {
+			return MIN_BATCH;
+		}
+		int expected = (int) (flushDelay / meanInterval);
+		return Math.max(MIN_BATCH, Math.min(MAX_BATCH, expected));
+	}
+
+	/**
+	 * Gets the time a batch is closed after its first tweet arrived.
+	 *
+	 * @return the flush delay(milliseconds)
+	 */
+	public synchronized long getFlushDelay() {
+		return flushDelay;
+	}
+
+	/**
+	 * Gets the p99 delivery latency measured at the last flush.
+	 *
+	 * @return the p99 latency(milliseconds)
+	 */
+	public synchronized long getP99() {
+		return lastP99;
+	}
+
+	/**
+	 * Gets the measured arrival rate.
+	 *
+	 * @return the tweets per second, 0 if unknown
+	 */
+	public synchronized float getArrivalRate() {
+		return meanInterval <= 0 ? 0 : 1000 / meanInterval;
+	}
+
+	/**
+	 * On arrival of a tweet in the current batch.
+	 *
+	 * @param time the arrival time(uptime milliseconds)
+	 */
+	public synchronized void onArrival(long time) {
+		if (lastArrival > 0) {
+			// Tweets arriving in the same millisecond count as 1ms apart
+			float interval = Math.max(1, time - lastArrival);
+			meanInterval = meanInterval <= 0 ? interval
+					: meanInterval + SMOOTHING * (interval - meanInterval);
+		}
+		lastArrival = time;
+	}
+
+	/**
+	 * On flush of a batch. Records the latencies of its tweets and adapts the
+	 * flush delay to the p99 of the recent latencies.
+	 *
+	 * @param time the flush time(uptime milliseconds)
+	 * @param arrivals the arrival times of the tweets
+	 * @param count the number of tweets
+	 */
+	public synchronized void onFlush(long time, long[] arrivals, int count) {
+		lastArrival = 0;
+		if (count == 0) {
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = time - arrivals[i];
+		}
+		int size = (int) Math.min(latencyCount, LATENCY_WINDOW);
+		long[] sorted = Arrays.copyOf(latencies, size);
+		Arrays.sort(sorted);
+		lastP99 = sorted[(int) Math.ceil(size * 0.99) - 1];
+		if (lastP99 > latencyTarget) {
+			flushDelay = Math.max(MIN_FLUSH_DELAY, (long) (flushDelay * DECREASE));
+		} else if (lastP99 < latencyTarget * HEADROOM) {
+			flushDelay = Math.min((long) (latencyTarget * MAX_DELAY_SHARE),
+					flushDelay + (long) (latencyTarget * INCREASE_STEP));
+		}
+	}
+
+	/**
+	 * Forgets the arrival rate, such as when switching to another stream.
+	 */
+	public synchronized void resetRate() {
+		meanInterval = 0;
+		lastArrival = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "rate=" + getArrivalRate() + "/s batch=" + getBatchSize()
+				+ " flushDelay=" + flushDelay + "ms p99=" + lastP99 + "ms";
+	}
+}
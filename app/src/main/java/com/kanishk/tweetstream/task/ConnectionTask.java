@@ -7,16 +7,21 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import android.net.Uri;
 import android.os.AsyncTask;
 import android.util.Log;
 
-import com.kanishk.tweetstream.model.Tweet;
+import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.kanishk.tweetstream.model.TweetRecord;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
 
 /**
  * The Class ConnectionTask. The async task to connect to the twitter API, parse
  * the response and notify the UI thread.
  */
-public class ConnectionTask extends AsyncTask<String, Tweet, List<Tweet>> {
+public class ConnectionTask extends AsyncTask<String, TweetRecord, List<TweetRecord>> {
 
 	/**
 	 * The Constant MAX_TWEETS. The delay time(milliseconds) to read a single
@@ -25,6 +30,12 @@ public class ConnectionTask extends AsyncTask<String, Tweet, List<Tweet>> {
 	 */
 	private static final int MAX_DELAY = 10;
 
+	/** The Constant HTTP_ERRORS. The connections refused by the stream API. */
+	private static final Counter HTTP_ERRORS = MetricsRegistry.counter("stream.http_errors");
+
+	/** The Constant ERRORS. The downloads failed or timed out. */
+	private static final Counter ERRORS = MetricsRegistry.counter("stream.errors");
+
 	/** The twitter client. */
 	private TwitterClient twitterClient;
 
@@ -37,6 +48,9 @@ public class ConnectionTask extends AsyncTask<String, Tweet, List<Tweet>> {
 	/** The twitter task. */
 	private TwitterTask twitterTask;
 
+	/** The batcher of the client. */
+	private AdaptiveBatcher batcher;
+
 	/**
 	 * Instantiates a new twitter task.
 	 * 
@@ -49,11 +63,14 @@ public class ConnectionTask extends AsyncTask<String, Tweet, List<Tweet>> {
 			TwitterClient client) {
 		this.twitterClient = client;
 		this.tweetListener = tweetListener;
+		this.batcher = client.getBatcher();
 	}
 
 	@Override
-	protected List<Tweet> doInBackground(String... params) {
-		List<Tweet> result = null;
+	protected List<TweetRecord> doInBackground(String... params) {
+		List<TweetRecord> result = null;
+		Uri dataURI = params.length == 0 ? TweetDataConstants.CONTENT_URI
+				: TweetDataConstants.CONTENT_SEARCH_URI;
 		try {
 			if (params.length == 0) {
 				clientResponse = twitterClient.getResponse();
@@ -62,17 +79,21 @@ public class ConnectionTask extends AsyncTask<String, Tweet, List<Tweet>> {
 			}
 			twitterClient = null;
 			if (clientResponse != null && clientResponse.isSuccess() && !isCancelled()) {
-                twitterTask = new TwitterTask();
-                twitterTask.executeOnExecutor(THREAD_POOL_EXECUTOR, clientResponse);
+                twitterTask = new TwitterTask(batcher, dataURI);
+                twitterTask.executeOnExecutor(TaskScheduler.PARSING, clientResponse);
                 result = twitterTask.get(MAX_DELAY, TimeUnit.SECONDS);
 			} else if(clientResponse != null && !clientResponse.isSuccess()) {
+				HTTP_ERRORS.increment();
 				String response = clientResponse.streamReader().readLine();
 				Log.e(ConnectionTask.class.toString(), response);
 			}
 		} catch (IOException | ExecutionException | InterruptedException
 				| TimeoutException e) {
+			ERRORS.increment();
 			Log.e(e.toString(), e.toString());
-            twitterTask.cancel(true);
+            if (twitterTask != null) {
+                twitterTask.cancel(true);
+            }
 			result = new ArrayList<>(0);
 		}
 		if (!isRunning()) {
@@ -82,7 +103,14 @@ public class ConnectionTask extends AsyncTask<String, Tweet, List<Tweet>> {
 	}
 
 	@Override
-	protected void onPostExecute(List<Tweet> result) {
+	protected void onPostExecute(List<TweetRecord> result) {
+		tweetListener.updateUI(result);
+	}
+
+	@Override
+	protected void onCancelled(List<TweetRecord> result) {
+		// The listener waits for the end of the download either way, with the
+		// tweets of a batch completed before the cancel
 		tweetListener.updateUI(result);
 	}
 
@@ -108,7 +136,7 @@ public class ConnectionTask extends AsyncTask<String, Tweet, List<Tweet>> {
 	 * Close and release. Closes and releases the resources of this task.
 	 */
 	public void closeAndRelease() {
-		AsyncTask.THREAD_POOL_EXECUTOR.execute(new HelperThread(this));
+		TaskScheduler.CLEANUP.execute(new HelperThread(this));
 	}
 
 	/**
@@ -129,7 +157,7 @@ public class ConnectionTask extends AsyncTask<String, Tweet, List<Tweet>> {
 		 * @param tweet
 		 *            the tweetList
 		 */
-		void updateUI(List<Tweet> tweet);
+		void updateUI(List<TweetRecord> tweet);
 	}
 
 	/**
@@ -0,0 +1,245 @@
+package com.kanishk.tweetstream.task;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.kanishk.tweetstream.memory.MemoryGovernor;
+import com.kanishk.tweetstream.memory.MemoryGovernor.OnMemoryStageListener;
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
+
+/**
+ * The Class LineQueue. Reads the lines of a stream response on the
+ * {@link TaskScheduler#STREAM} executor into a bounded queue, stamping each
+ * line with its arrival time. Readers wait on the queue with a timeout, so a
+ * batch can be closed on time while the stream is quiet. A full queue stops
+ * the reading until lines are taken. Keep-alive blank lines are skipped.
+ * Lines are read into pooled character buffers instead of strings; readers
+ * hand each line back with {@link #recycle(Line)} once parsed. Fewer free
+ * lines are kept under memory pressure.
+ */
+public class LineQueue implements Runnable, OnMemoryStageListener {
+
+	/** The Constant CAPACITY. The maximum number of lines queued. */
+	public static final int CAPACITY = 256;
+
+	/** The Constant MAX_LINE. The longest line(characters) read, longer lines
+	 * are dropped. */
+	public static final int MAX_LINE = 64 * 1024;
+
+	/** The Constant READ_BUFFER. The number of characters read at a time. */
+	private static final int READ_BUFFER = 8 * 1024;
+
+	/** The Constant DROPPED. The lines dropped for being too long. */
+	private static final Counter DROPPED = MetricsRegistry.counter("stream.lines_dropped");
+
+	/** The reader. */
+	private final BufferedReader reader;
+
+	/** The lines. */
+	private final BlockingQueue<Line> lines;
+
+	/** The lines handed back, reused for the next lines read. */
+	private final BlockingQueue<Line> free;
+
+	/** The check whether the stream is closed or not. */
+	private volatile boolean closed;
+
+	/** The maximum number of free lines kept at the current memory stage. */
+	private volatile int maxFree = CAPACITY + 1;
+
+	/**
+	 * Instantiates a new line queue. The reading starts with {@link #start()}.
+	 *
+	 * @param reader the reader of the stream
+	 */
+	public LineQueue(BufferedReader reader) {
+		this.reader = reader;
+		this.lines = new LinkedBlockingQueue<>(CAPACITY);
+		this.free = new ArrayBlockingQueue<>(CAPACITY + 1);
+	}
+
+	/**
+	 * Starts reading the stream. The depth of the queue is reported by the
+	 * stream queue gauge.
+	 */
+	public void start() {
+		MetricsRegistry.gauge("stream.queue_depth", new Gauge() {
+			@Override
+			public long getValue() {
+				return lines.size();
+			}
+		});
+		MemoryGovernor.register(this);
+		TaskScheduler.STREAM.execute(this);
+	}
+
+	@Override
+	public void onMemoryStage(int stage) {
+		maxFree = MemoryGovernor.scale(CAPACITY + 1, stage);
+		while (free.size() > maxFree && free.poll() != null) {
+			// Drops the free lines beyond the share of the stage
+		}
+	}
+
+	@Override
+	public void run() {
+		char[] chars = new char[READ_BUFFER];
+		Line line = obtainLine();
+		try {
+			int read;
+			while (!closed && (read = reader.read(chars, 0, chars.length)) >= 0) {
+				int start = 0;
+				for (int i = 0; i < read; i++) {
+					if (chars[i] == '\n') {
+						line.append(chars, start, i - start);
+						start = i + 1;
+						if (line.isComplete()) {
+							line.time = SystemClock.uptimeMillis();
+							lines.put(line);
+							line = obtainLine();
+						} else {
+							line.reset();
+						}
+					}
+				}
+				line.append(chars, start, read - start);
+			}
+		} catch (IOException e) {
+			if (!closed) {
+				Log.e(LineQueue.class.toString(), e.toString());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Takes the next line, waiting for it up to a timeout.
+	 *
+	 * @param timeout the timeout(milliseconds)
+	 * @return the line, null if none arrived in time or the stream is closed
+	 * and read to its end
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Line poll(long timeout) throws InterruptedException {
+		return lines.poll(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Hands a line back once parsed. It must not be used afterwards.
+	 *
+	 * @param line the line
+	 */
+	public void recycle(Line line) {
+		line.reset();
+		if (free.size() < maxFree) {
+			free.offer(line);
+		}
+	}
+
+	/**
+	 * Checks if the stream is closed and all its lines are taken.
+	 *
+	 * @return true, if is closed
+	 */
+	public boolean isClosed() {
+		return closed && lines.isEmpty();
+	}
+
+	/**
+	 * Closes the queue, dropping the queued lines. The reading ends once the
+	 * stream itself is closed.
+	 */
+	public void close() {
+		closed = true;
+		lines.clear();
+		MemoryGovernor.unregister(this);
+	}
+
+	/**
+	 * Gets a free line, or a new one if none is free.
+	 *
+	 * @return the line
+	 */
+	private Line obtainLine() {
+		Line line = free.poll();
+		return line == null ? new Line() : line;
+	}
+
+	/**
+	 * The Class Line. A line of the stream and its arrival time.
+	 */
+	public static class Line {
+
+		/** The characters, valid up to the length. */
+		public char[] chars = new char[4 * 1024];
+
+		/** The length. */
+		public int length;
+
+		/** The arrival time(uptime milliseconds). */
+		public long time;
+
+		/** The check whether the line is longer than {@link #MAX_LINE} or not. */
+		private boolean overflow;
+
+		/**
+		 * Appends characters, growing the buffer if needed.
+		 *
+		 * @param source the source
+		 * @param offset the offset of the first character
+		 * @param count the number of characters
+		 */
+		void append(char[] source, int offset, int count) {
+			if (overflow) {
+				return;
+			}
+			if (length + count > MAX_LINE) {
+				overflow = true;
+				DROPPED.increment();
+				return;
+			}
+			if (length + count > chars.length) {
+				char[] grown = new char[Math.max(chars.length * 2, length + count)];
+				System.arraycopy(chars, 0, grown, 0, length);
+				chars = grown;
+			}
+			System.arraycopy(source, offset, chars, length, count);
+			length += count;
+		}
+
+		/**
+		 * Checks if the line is complete, not blank and not dropped. Trims
+		 * the carriage return ending it.
+		 *
+		 * @return true, if the line is to be queued
+		 */
+		boolean isComplete() {
+			if (length > 0 && chars[length - 1] == '\r') {
+				length--;
+			}
+			return !overflow && length > 0;
+		}
+
+		/**
+		 * Resets the line for reuse.
+		 */
+		void reset() {
+			length = 0;
+			time = 0;
+			overflow = false;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package com.kanishk.tweetstream.task;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -8,11 +9,21 @@ import java.net.HttpURLConnection;
 
 import javax.net.ssl.HttpsURLConnection;
 
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+
 /**
  * The Class Response. A wrapper class to connection related properties(status, input stream).
  * Also useful for releasing the resources.
  */
 public class Response {
+
+	/** The Constant MAX_DRAIN. The maximum number of characters of an error
+	 * response read to return its connection to the pool. */
+	private static final int MAX_DRAIN = 4096;
+
+	/** The Constant BYTES. The bytes read from the streams. */
+	private static final Counter BYTES = MetricsRegistry.counter("stream.bytes");
 	
 	/** The response stream. */
 	private InputStream responseStream;
@@ -29,6 +40,15 @@ public class Response {
 	/** The is valid. */
 	private boolean isValid;
 
+	/** The queue of the lines of the response, created on first use. */
+	private LineQueue lines;
+
+	/** The timing of the connect. */
+	private StreamConnector.ConnectTiming connectTiming;
+
+	/** The undelivered count of the last limit notice. */
+	private long limitTrack;
+
 	/**
 	 * Instantiates a new response.
 	 *
@@ -40,7 +60,7 @@ public class Response {
 		connection.connect();
 		responseCode = connection.getResponseCode();
 		if(isSuccess()) {
-			responseStream = connection.getInputStream();
+			responseStream = new CountingInputStream(connection.getInputStream());
 			isValid = true;
 		} else {
 			responseStream = connection.getErrorStream();
@@ -66,6 +86,15 @@ public class Response {
 	 * @throws java.io.IOException Signals that an I/O exception has occurred.
 	 */
 	public void releaseResources() throws IOException {
+		if (lines != null) {
+			lines.close();
+		}
+		if (!isSuccess() && isDrained()) {
+			// The fully read connection goes back to the pool
+			reader.close();
+			isValid = false;
+			return;
+		}
 		if(this.connection != null) {
 			connection.disconnect();
 		}
@@ -76,6 +105,63 @@ public class Response {
 		isValid = false;
 	}
 	
+	/**
+	 * Reads what's left of an error response, up to {@link #MAX_DRAIN}
+	 * characters.
+	 *
+	 * @return true, if the response is read to its end
+	 */
+	private boolean isDrained() {
+		if (reader == null) {
+			return false;
+		}
+		try {
+			char[] buffer = new char[512];
+			int total = 0;
+			int read;
+			while ((read = reader.read(buffer)) >= 0) {
+				total += read;
+				if (total > MAX_DRAIN) {
+					return false;
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the timing of the connect.
+	 *
+	 * @return the connect timing, null if not timed
+	 */
+	public StreamConnector.ConnectTiming getConnectTiming() {
+		return connectTiming;
+	}
+
+	/**
+	 * Sets the timing of the connect.
+	 *
+	 * @param connectTiming the new connect timing
+	 */
+	void setConnectTiming(StreamConnector.ConnectTiming connectTiming) {
+		this.connectTiming = connectTiming;
+	}
+
+	/**
+	 * Takes in a limit notice of the stream, whose undelivered count adds up
+	 * since the connection.
+	 *
+	 * @param track the undelivered count of the notice
+	 * @return the number of tweets not delivered since the previous notice
+	 */
+	synchronized long onLimitNotice(long track) {
+		long dropped = Math.max(0, track - limitTrack);
+		limitTrack = Math.max(limitTrack, track);
+		return dropped;
+	}
+
 	/**
 	 * Stream reader.
 	 *
@@ -85,12 +171,59 @@ public class Response {
 		return reader;
 	}
 	
+	/**
+	 * Gets the queue of the lines of the response, starting to read them on
+	 * the first call. Once used, the lines are read only through the queue.
+	 *
+	 * @return the line queue
+	 */
+	public synchronized LineQueue lines() {
+		if (lines == null) {
+			lines = new LineQueue(reader);
+			lines.start();
+		}
+		return lines;
+	}
+
 	/**
 	 * Checks if is valid.
 	 *
-	 * @return true, if is valid
+	 * @return true, if is valid and the stream is not closed
 	 */
 	public boolean isValid() {
-		return isValid;
+		return isValid && (lines == null || !lines.isClosed());
+	}
+
+	/**
+	 * The Class CountingInputStream. Counts the bytes read from the stream.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		/**
+		 * Instantiates a new counting input stream.
+		 *
+		 * @param in the stream
+		 */
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int value = super.read();
+			if (value >= 0) {
+				BYTES.increment();
+			}
+			return value;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = super.read(buffer, offset, count);
+			if (read > 0) {
+				BYTES.add(read);
+			}
+			return read;
+		}
 	}
 }
@@ -0,0 +1,478 @@
+package com.kanishk.tweetstream.task;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+
+/**
+ * The Class StreamConnector. Opens the HTTPS connections to the stream API
+ * through one TLS context, so reconnects resume the TLS session of an
+ * earlier connection instead of running a full handshake. All connections
+ * share one socket factory, which lets the platform pool connections whose
+ * response is fully read. A stream response is never fully read, so a stream
+ * connection is not pooled and reconnects rely on session resumption. Each
+ * connect records its handshake time, whether the session was resumed or the
+ * connection pooled, and the time to the first byte of the response.
+ */
+public class StreamConnector {
+
+	/** The Constant SESSION_CACHE_SIZE. The number of TLS sessions kept. */
+	public static final int SESSION_CACHE_SIZE = 8;
+
+	/** The Constant SESSION_TIMEOUT. The time(seconds) a TLS session is kept. */
+	public static final int SESSION_TIMEOUT = 4 * 60 * 60;
+
+	/** The Constant TAG. */
+	private static final String TAG = StreamConnector.class.getSimpleName();
+
+	/** The instance. */
+	private static StreamConnector instance;
+
+	/** The socket factory shared by all the connections. */
+	private final TimingSocketFactory socketFactory;
+
+	/** The timing of the connect running on the current thread. */
+	private final ThreadLocal<ConnectTiming> currentTiming = new ThreadLocal<>();
+
+	/** The number of connects. */
+	private final AtomicLong connects = new AtomicLong();
+
+	/** The number of connects with a full handshake. */
+	private final AtomicLong fullHandshakes = new AtomicLong();
+
+	/** The number of connects resuming a TLS session. */
+	private final AtomicLong resumedHandshakes = new AtomicLong();
+
+	/** The number of connects reusing a pooled connection. */
+	private final AtomicLong pooledConnects = new AtomicLong();
+
+	/** The total time(milliseconds) of the full handshakes. */
+	private final AtomicLong totalFullHandshake = new AtomicLong();
+
+	/** The total time(milliseconds) of the resumed handshakes. */
+	private final AtomicLong totalResumedHandshake = new AtomicLong();
+
+	/** The total time(milliseconds) to the first byte. */
+	private final AtomicLong totalFirstByte = new AtomicLong();
+
+	/**
+	 * Gets the instance trusting the system certificates. Its stats are
+	 * reported as the connector gauges.
+	 *
+	 * @return the instance
+	 * @throws IOException if the TLS context cannot be created
+	 */
+	public static synchronized StreamConnector getInstance() throws IOException {
+		if (instance == null) {
+			try {
+				instance = new StreamConnector(null);
+				registerGauges(instance);
+			} catch (GeneralSecurityException e) {
+				throw new IOException(e);
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Registers the gauges of a connector.
+	 *
+	 * @param connector the connector
+	 */
+	private static void registerGauges(final StreamConnector connector) {
+		MetricsRegistry.gauge("connector.connects", new Gauge() {
+			@Override
+			public long getValue() {
+				return connector.getConnectCount();
+			}
+		});
+		MetricsRegistry.gauge("connector.full_handshakes", new Gauge() {
+			@Override
+			public long getValue() {
+				return connector.getFullHandshakeCount();
+			}
+		});
+		MetricsRegistry.gauge("connector.resumed_handshakes", new Gauge() {
+			@Override
+			public long getValue() {
+				return connector.getResumedHandshakeCount();
+			}
+		});
+		MetricsRegistry.gauge("connector.pooled_connects", new Gauge() {
+			@Override
+			public long getValue() {
+				return connector.getPooledConnectCount();
+			}
+		});
+		MetricsRegistry.gauge("connector.mean_full_handshake", new Gauge() {
+			@Override
+			public long getValue() {
+				return connector.getMeanFullHandshake();
+			}
+		});
+		MetricsRegistry.gauge("connector.mean_resumed_handshake", new Gauge() {
+			@Override
+			public long getValue() {
+				return connector.getMeanResumedHandshake();
+			}
+		});
+		MetricsRegistry.gauge("connector.mean_first_byte", new Gauge() {
+			@Override
+			public long getValue() {
+				return connector.getMeanFirstByte();
+			}
+		});
+	}
+
+	/**
+	 * Instantiates a new stream connector.
+	 *
+	 * @param trustManagers the trust managers, null for the system ones
+	 * @throws GeneralSecurityException if the TLS context cannot be created
+	 */
+	public StreamConnector(TrustManager[] trustManagers) throws GeneralSecurityException {
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, trustManagers, null);
+		SSLSessionContext sessions = context.getClientSessionContext();
+		if (sessions != null) {
+			sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+			sessions.setSessionTimeout(SESSION_TIMEOUT);
+		}
+		this.socketFactory = new TimingSocketFactory(context.getSocketFactory());
+	}
+
+	/**
+	 * Opens a connection using the shared socket factory. Nothing is sent
+	 * until it's connected with {@link #connect(HttpsURLConnection)}.
+	 *
+	 * @param url the url
+	 * @param timeout the connect timeout(milliseconds)
+	 * @return the connection
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public HttpsURLConnection open(URL url, int timeout) throws IOException {
+		HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
+		connection.setSSLSocketFactory(socketFactory);
+		connection.setConnectTimeout(timeout);
+		return connection;
+	}
+
+	/**
+	 * Connects and reads the response status and headers, timing the
+	 * handshake and the first byte. Do not call this method from a UI thread.
+	 *
+	 * @param connection the connection opened by this connector
+	 * @return the response
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public Response connect(HttpsURLConnection connection) throws IOException {
+		ConnectTiming timing = new ConnectTiming();
+		currentTiming.set(timing);
+		try {
+			Response response = new Response(connection);
+			timing.finish();
+			record(timing);
+			response.setConnectTiming(timing);
+			Log.d(TAG, connection.getURL().getHost() + " " + timing);
+			return response;
+		} finally {
+			currentTiming.remove();
+		}
+	}
+
+	/**
+	 * Gets the number of connects.
+	 *
+	 * @return the connect count
+	 */
+	public long getConnectCount() {
+		return connects.get();
+	}
+
+	/**
+	 * Gets the number of connects with a full handshake.
+	 *
+	 * @return the full handshake count
+	 */
+	public long getFullHandshakeCount() {
+		return fullHandshakes.get();
+	}
+
+	/**
+	 * Gets the number of connects resuming a TLS session.
+	 *
+	 * @return the resumed handshake count
+	 */
+	public long getResumedHandshakeCount() {
+		return resumedHandshakes.get();
+	}
+
+	/**
+	 * Gets the number of connects reusing a pooled connection.
+	 *
+	 * @return the pooled connect count
+	 */
+	public long getPooledConnectCount() {
+		return pooledConnects.get();
+	}
+
+	/**
+	 * Gets the mean time of the full handshakes.
+	 *
+	 * @return the mean time(milliseconds)
+	 */
+	public long getMeanFullHandshake() {
+		long count = fullHandshakes.get();
+		return count == 0 ? 0 : totalFullHandshake.get() / count;
+	}
+
+	/**
+	 * Gets the mean time of the resumed handshakes.
+	 *
+	 * @return the mean time(milliseconds)
+	 */
+	public long getMeanResumedHandshake() {
+		long count = resumedHandshakes.get();
+		return count == 0 ? 0 : totalResumedHandshake.get() / count;
+	}
+
+	/**
+	 * Gets the mean time to the first byte.
+	 *
+	 * @return the mean time(milliseconds)
+	 */
+	public long getMeanFirstByte() {
+		long count = connects.get();
+		return count == 0 ? 0 : totalFirstByte.get() / count;
+	}
+
+	@Override
+	public String toString() {
+		return "connects=" + connects.get()
+				+ " full=" + fullHandshakes.get() + "/" + getMeanFullHandshake() + "ms"
+				+ " resumed=" + resumedHandshakes.get() + "/" + getMeanResumedHandshake() + "ms"
+				+ " pooled=" + pooledConnects.get()
+				+ " firstByteMean=" + getMeanFirstByte() + "ms";
+	}
+
+	/**
+	 * Records a finished connect.
+	 *
+	 * @param timing the timing
+	 */
+	private void record(ConnectTiming timing) {
+		connects.incrementAndGet();
+		totalFirstByte.addAndGet(timing.getFirstByteTime());
+		if (timing.isPooled()) {
+			pooledConnects.incrementAndGet();
+		} else if (timing.isResumed()) {
+			resumedHandshakes.incrementAndGet();
+			totalResumedHandshake.addAndGet(Math.max(0, timing.getHandshakeTime()));
+		} else {
+			fullHandshakes.incrementAndGet();
+			totalFullHandshake.addAndGet(Math.max(0, timing.getHandshakeTime()));
+		}
+	}
+
+	/**
+	 * The Class ConnectTiming. The timing of a single connect.
+	 */
+	public static class ConnectTiming implements HandshakeCompletedListener {
+
+		/** The start time(uptime milliseconds). */
+		private final long startTime;
+
+		/** The time(uptime milliseconds) the TLS socket was created, 0 if none. */
+		private volatile long socketTime;
+
+		/** The wall time(milliseconds) the TLS socket was created. */
+		private volatile long socketWallTime;
+
+		/** The time(uptime milliseconds) the handshake completed, 0 until then. */
+		private volatile long handshakeEndTime;
+
+		/** The TLS socket, null if a pooled connection was reused. */
+		private volatile SSLSocket socket;
+
+		/** The time(milliseconds) to the first byte. */
+		private long firstByteTime;
+
+		/** The check whether the TLS session was resumed or not. */
+		private boolean isResumed;
+
+		/**
+		 * Instantiates a new connect timing.
+		 */
+		ConnectTiming() {
+			this.startTime = SystemClock.uptimeMillis();
+		}
+
+		/**
+		 * On socket created.
+		 *
+		 * @param sslSocket the TLS socket
+		 */
+		void onSocketCreated(SSLSocket sslSocket) {
+			socketTime = SystemClock.uptimeMillis();
+			socketWallTime = System.currentTimeMillis();
+			socket = sslSocket;
+			sslSocket.addHandshakeCompletedListener(this);
+		}
+
+		@Override
+		public void handshakeCompleted(HandshakeCompletedEvent event) {
+			handshakeEndTime = SystemClock.uptimeMillis();
+		}
+
+		/**
+		 * Finishes the timing once the response headers are read. A session
+		 * created before the socket was resumed from an earlier connection.
+		 */
+		void finish() {
+			firstByteTime = SystemClock.uptimeMillis() - startTime;
+			SSLSocket sslSocket = socket;
+			if (sslSocket != null) {
+				isResumed = sslSocket.getSession().getCreationTime() < socketWallTime;
+				sslSocket.removeHandshakeCompletedListener(this);
+			}
+		}
+
+		/**
+		 * Gets the handshake time.
+		 *
+		 * @return the time(milliseconds), 0 for a pooled connection, -1 if not
+		 * reported
+		 */
+		public long getHandshakeTime() {
+			if (socket == null) {
+				return 0;
+			}
+			return handshakeEndTime == 0 ? -1 : handshakeEndTime - socketTime;
+		}
+
+		/**
+		 * Gets the time from the start of the connect to the first byte of the
+		 * response, including the handshake.
+		 *
+		 * @return the time(milliseconds)
+		 */
+		public long getFirstByteTime() {
+			return firstByteTime;
+		}
+
+		/**
+		 * Checks if the TLS session was resumed.
+		 *
+		 * @return true, if resumed
+		 */
+		public boolean isResumed() {
+			return isResumed;
+		}
+
+		/**
+		 * Checks if a pooled connection was reused, with no handshake.
+		 *
+		 * @return true, if pooled
+		 */
+		public boolean isPooled() {
+			return socket == null;
+		}
+
+		@Override
+		public String toString() {
+			String handshake = isPooled() ? "pooled" : (isResumed ? "resumed" : "full");
+			return "handshake=" + getHandshakeTime() + "ms(" + handshake + ")"
+					+ " firstByte=" + firstByteTime + "ms";
+		}
+	}
+
+	/**
+	 * The Class TimingSocketFactory. Creates the TLS sockets through the
+	 * shared context and hands them to the timing of the connect running on
+	 * the calling thread.
+	 */
+	private class TimingSocketFactory extends SSLSocketFactory {
+
+		/** The delegate. */
+		private final SSLSocketFactory delegate;
+
+		/**
+		 * Instantiates a new timing socket factory.
+		 *
+		 * @param delegate the delegate
+		 */
+		TimingSocketFactory(SSLSocketFactory delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return delegate.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return delegate.getSupportedCipherSuites();
+		}
+
+		@Override
+		public Socket createSocket(Socket s, String host, int port, boolean autoClose)
+				throws IOException {
+			return onCreated(delegate.createSocket(s, host, port, autoClose));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			return onCreated(delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost,
+				int localPort) throws IOException {
+			return onCreated(delegate.createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException {
+			return onCreated(delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+				int localPort) throws IOException {
+			return onCreated(delegate.createSocket(address, port, localAddress, localPort));
+		}
+
+		/**
+		 * Hands a created socket to the timing of the current connect.
+		 *
+		 * @param socket the socket
+		 * @return the socket
+		 */
+		private Socket onCreated(Socket socket) {
+			ConnectTiming timing = currentTiming.get();
+			if (timing != null && socket instanceof SSLSocket) {
+				timing.onSocketCreated((SSLSocket) socket);
+			}
+			return socket;
+		}
+	}
+}
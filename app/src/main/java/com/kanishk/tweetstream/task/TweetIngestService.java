@@ -0,0 +1,254 @@
+package com.kanishk.tweetstream.task;
+
+import java.util.List;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.util.Log;
+
+import com.kanishk.tweetstream.data.DBUpdateManager;
+import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.metrics.TweetLatency;
+import com.kanishk.tweetstream.model.TweetRecord;
+import com.kanishk.tweetstream.scheduler.StartupTrace;
+import com.kanishk.tweetstream.task.ConnectionTask.TweetUpdateListener;
+
+/**
+ * The Class TweetIngestService. The service owning the connection to the
+ * stream API. It downloads tweets on request and writes them straight to the
+ * content provider, so the screens only observe the data. Screens bind to the
+ * service while visible. The service is also started for each download, so a
+ * download outlives rotation and screen changes, and it stops once the
+ * download ends with no screen bound. Screens bind after their first frame,
+ * so the service is not set up during a cold start. A search asked for while
+ * another stream is downloading cuts that download short and starts once it
+ * ends.
+ */
+public class TweetIngestService extends Service implements TweetUpdateListener {
+
+	/** The binder. */
+	private final IBinder binder = new IngestBinder();
+
+	/** The twitter client. */
+	private TwitterClient twitterClient;
+
+	/** The listener. */
+	private IngestListener listener;
+
+	/** The filter text of the stream, null for the sample stream. */
+	private String filterText;
+
+	/** The search text of the search waiting for the running download, null if none. */
+	private String pendingSearch;
+
+	/** The check whether the waiting search is a new search or not. */
+	private boolean pendingNewSearch;
+
+	/** The check whether the search table is cleared before the next insert or not. */
+	private boolean clearSearch;
+
+	/** The check whether a download is running or not. */
+	private boolean isLoading;
+
+	/** The check whether a screen is bound or not. */
+	private boolean isBound;
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		DBUpdateManager.getInstance().initJournal(this);
+		twitterClient = new TwitterClient(this);
+	}
+
+	@Override
+	public IBinder onBind(Intent intent) {
+		isBound = true;
+		return binder;
+	}
+
+	@Override
+	public void onRebind(Intent intent) {
+		isBound = true;
+	}
+
+	@Override
+	public boolean onUnbind(Intent intent) {
+		isBound = false;
+		listener = null;
+		if (!isLoading) {
+			stopSelf();
+		}
+		return true;
+	}
+
+	@Override
+	public int onStartCommand(Intent intent, int flags, int startId) {
+		return START_NOT_STICKY;
+	}
+
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		pendingSearch = null;
+		twitterClient.closeAndRelease();
+		Log.i(TweetIngestService.class.getSimpleName(),
+				"Tweet latency\n" + TweetLatency.describe());
+	}
+
+	/**
+	 * Downloads tweets from the sample stream into the tweet table.
+	 *
+	 * @return true, if the download started; false if one is already running
+	 */
+	public boolean loadTweets() {
+		return download(null, false);
+	}
+
+	/**
+	 * Downloads tweets from the filter stream into the search table.
+	 *
+	 * @param searchText the search text
+	 * @param isNewSearch whether it's a new search, clearing the previous results
+	 * @return true, if the download started or waits for the running one; false
+	 * if the same search is already running
+	 */
+	public boolean searchTweets(String searchText, boolean isNewSearch) {
+		return download(searchText, isNewSearch);
+	}
+
+	/**
+	 * Checks if a download is running.
+	 *
+	 * @return true, if is loading
+	 */
+	public boolean isLoading() {
+		return isLoading;
+	}
+
+	/**
+	 * Sets the listener told when a download ends.
+	 *
+	 * @param listener the listener, null to remove it
+	 */
+	public void setIngestListener(IngestListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Removes the listener told when a download ends, if it's still the one
+	 * set. Another screen may have set its own meanwhile.
+	 *
+	 * @param oldListener the listener to remove
+	 */
+	public void removeIngestListener(IngestListener oldListener) {
+		if (listener == oldListener) {
+			listener = null;
+		}
+	}
+
+	/**
+	 * Starts a download, connecting again if the stream changes.
+	 *
+	 * @param searchText the search text, null for the sample stream
+	 * @param isNewSearch whether it's a new search
+	 * @return true, if the download started
+	 */
+	private boolean download(String searchText, boolean isNewSearch) {
+		if (isLoading) {
+			if (searchText == null || (!isNewSearch && searchText.equals(filterText))) {
+				return false;
+			}
+			// Started from updateUI, once the cancelled download reports
+			pendingSearch = searchText;
+			pendingNewSearch |= isNewSearch;
+			twitterClient.closeAndRelease();
+			return true;
+		}
+		boolean changed = searchText == null ? filterText != null
+				: isNewSearch || !searchText.equals(filterText);
+		filterText = searchText;
+		if (isNewSearch) {
+			// Journaled ahead of the tweets of the new search
+			clearSearch = !DBUpdateManager.getInstance().journalClear(
+					TweetDataConstants.CONTENT_SEARCH_URI);
+		}
+		if (changed) {
+			twitterClient.resetStream();
+		}
+		isLoading = true;
+		startService(new Intent(this, TweetIngestService.class));
+		if (searchText == null) {
+			twitterClient.downloadTweets();
+		} else {
+			twitterClient.downloadTweets(searchText, false);
+		}
+		return true;
+	}
+
+	/**
+	 * Inserts the tweets of a download into the table of its stream, and
+	 * starts the search waiting for it, if any.
+	 *
+	 * @param tweetList the tweets, null if the download failed or was
+	 * cancelled before a batch completed
+	 */
+	@Override
+	public void updateUI(List<TweetRecord> tweetList) {
+		isLoading = false;
+		if (tweetList != null && !tweetList.isEmpty()) {
+			StartupTrace.onFirstLiveTweet();
+			DBUpdateManager manager = DBUpdateManager.getInstance();
+			if (filterText == null) {
+				manager.insertRows(tweetList, getContentResolver());
+			} else {
+				manager.insertSearchResults(tweetList, getContentResolver(), clearSearch);
+				clearSearch = false;
+			}
+		}
+		if (pendingSearch != null) {
+			String searchText = pendingSearch;
+			boolean isNewSearch = pendingNewSearch;
+			pendingSearch = null;
+			pendingNewSearch = false;
+			// The listener is told when the search ends
+			download(searchText, isNewSearch);
+			return;
+		}
+		if (listener != null) {
+			listener.onIngestFinished();
+		}
+		if (!isBound) {
+			stopSelf();
+		}
+	}
+
+	/**
+	 * The Class IngestBinder. The binder giving the bound screens the service.
+	 */
+	public class IngestBinder extends Binder {
+
+		/**
+		 * Gets the service.
+		 *
+		 * @return the service
+		 */
+		public TweetIngestService getService() {
+			return TweetIngestService.this;
+		}
+	}
+
+	/**
+	 * The listener interface for receiving the end of downloads. Implemented
+	 * by the screens bound to the service.
+	 */
+	public static interface IngestListener {
+
+		/**
+		 * On ingest finished. Called on the main thread once a download ends
+		 * and its tweets are handed to the database.
+		 */
+		void onIngestFinished();
+	}
+}
@@ -0,0 +1,446 @@
+package com.kanishk.tweetstream.task;
+
+import com.kanishk.tweetstream.model.StringInterner;
+import com.kanishk.tweetstream.model.TweetRecord;
+
+/**
+ * The Class TweetRecordParser. Reads the fields of a tweet from a JSON line of
+ * the stream straight into a {@link TweetRecord}. Only the text and creation
+ * time of the tweet and the screen name, name and profile image url of its
+ * user are read, and
+ * the rest of the line is skipped without creating objects. String values are
+ * decoded into a buffer reused across lines, and the user strings are taken
+ * from the intern table. Limit notices, counting the tweets the stream did not
+ * deliver, are read as well. A parser is not thread safe.
+ */
+public class TweetRecordParser {
+
+	/** The Constant TEXT. */
+	private static final char[] TEXT = "text".toCharArray();
+
+	/** The Constant CREATED_AT. */
+	private static final char[] CREATED_AT = "created_at".toCharArray();
+
+	/** The Constant MONTHS. The month abbreviations of the creation times. */
+	private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+	/** The Constant LIMIT. */
+	private static final char[] LIMIT = "limit".toCharArray();
+
+	/** The Constant TRACK. */
+	private static final char[] TRACK = "track".toCharArray();
+
+	/** The Constant USER. */
+	private static final char[] USER = "user".toCharArray();
+
+	/** The Constant SCREEN_NAME. */
+	private static final char[] SCREEN_NAME = "screen_name".toCharArray();
+
+	/** The Constant NAME. */
+	private static final char[] NAME = "name".toCharArray();
+
+	/** The Constant PROFILE_IMAGE_URL. */
+	private static final char[] PROFILE_IMAGE_URL = "profile_image_url".toCharArray();
+
+	/** The intern table of the user strings. */
+	private final StringInterner interner;
+
+	/** The buffer the string values are decoded into. */
+	private char[] buffer = new char[1024];
+
+	/** The length of the last decoded value. */
+	private int valueLength;
+
+	/** The undelivered count of the last line, if it was a limit notice. */
+	private long limitTrack;
+
+	/** The line being parsed. */
+	private char[] json;
+
+	/** The end of the line. */
+	private int end;
+
+	/** The position in the line. */
+	private int pos;
+
+	/**
+	 * Instantiates a new tweet record parser.
+	 *
+	 * @param interner the intern table of the user strings
+	 */
+	public TweetRecordParser(StringInterner interner) {
+		this.interner = interner;
+	}
+
+	/**
+	 * Parses a line into a record. Lines which are not tweets, such as delete
+	 * notices, and malformed lines leave the record without text.
+	 *
+	 * @param line the characters of the line
+	 * @param length the length of the line
+	 * @param record the record, cleared first
+	 * @return true, if the line is a tweet with a text
+	 */
+	public boolean parse(char[] line, int length, TweetRecord record) {
+		record.clear();
+		limitTrack = -1;
+		json = line;
+		end = length;
+		pos = 0;
+		try {
+			if (!consume('{')) {
+				return false;
+			}
+			if (consume('}')) {
+				return false;
+			}
+			do {
+				if (!readString()) {
+					return false;
+				}
+				if (!consume(':')) {
+					return false;
+				}
+				if (isValue(TEXT) && peek() == '"') {
+					if (!readString()) {
+						return false;
+					}
+					record.setText(new String(buffer, 0, valueLength));
+				} else if (isValue(CREATED_AT) && peek() == '"') {
+					if (!readString()) {
+						return false;
+					}
+					record.setCreatedAt(parseTime(buffer, valueLength));
+				} else if (isValue(USER) && peek() == '{') {
+					if (!parseUser(record)) {
+						return false;
+					}
+				} else if (isValue(LIMIT) && peek() == '{') {
+					if (!parseLimit()) {
+						return false;
+					}
+				} else if (!skipValue()) {
+					return false;
+				}
+			} while (consume(','));
+			return consume('}') && record.getText() != null;
+		} finally {
+			json = null;
+		}
+	}
+
+	/**
+	 * Gets the number of tweets the stream did not deliver since the
+	 * connection, if the last line parsed was a limit notice.
+	 *
+	 * @return the undelivered count, -1 if the line was not a limit notice
+	 */
+	public long getLimitTrack() {
+		return limitTrack;
+	}
+
+	/**
+	 * Parses the object of a limit notice.
+	 *
+	 * @return true, if the object is well formed
+	 */
+	private boolean parseLimit() {
+		consume('{');
+		if (consume('}')) {
+			return true;
+		}
+		do {
+			if (!readString() || !consume(':')) {
+				return false;
+			}
+			if (isValue(TRACK) && peek() >= '0' && peek() <= '9') {
+				long track = 0;
+				while (pos < end && json[pos] >= '0' && json[pos] <= '9') {
+					track = track * 10 + (json[pos++] - '0');
+				}
+				limitTrack = track;
+			} else if (!skipValue()) {
+				return false;
+			}
+		} while (consume(','));
+		return consume('}');
+	}
+
+	/**
+	 * Parses the user object.
+	 *
+	 * @param record the record
+	 * @return true, if the object is well formed
+	 */
+	private boolean parseUser(TweetRecord record) {
+		consume('{');
+		if (consume('}')) {
+			return true;
+		}
+		do {
+			if (!readString() || !consume(':')) {
+				return false;
+			}
+			if (peek() != '"') {
+				if (!skipValue()) {
+					return false;
+				}
+			} else if (isValue(SCREEN_NAME)) {
+				if (!readString()) {
+					return false;
+				}
+				record.setScreenName(interner.intern(buffer, 0, valueLength));
+			} else if (isValue(NAME)) {
+				if (!readString()) {
+					return false;
+				}
+				record.setName(interner.intern(buffer, 0, valueLength));
+			} else if (isValue(PROFILE_IMAGE_URL)) {
+				if (!readString()) {
+					return false;
+				}
+				record.setImageUrl(interner.intern(buffer, 0, valueLength));
+			} else if (!skipValue()) {
+				return false;
+			}
+		} while (consume(','));
+		return consume('}');
+	}
+
+	/**
+	 * Parses a creation time, in the "Wed Aug 27 13:08:45 +0000 2008" format of
+	 * the stream, without creating a date format.
+	 *
+	 * @param chars the characters
+	 * @param length the number of characters
+	 * @return the time(milliseconds), 0 if it's malformed
+	 */
+	static long parseTime(char[] chars, int length) {
+		if (length != 30 || chars[3] != ' ' || chars[10] != ' ' || chars[19] != ' '
+				|| chars[25] != ' ') {
+			return 0;
+		}
+		int month = -1;
+		for (int i = 0; i < MONTHS.length(); i += 3) {
+			if (MONTHS.charAt(i) == chars[4] && MONTHS.charAt(i + 1) == chars[5]
+					&& MONTHS.charAt(i + 2) == chars[6]) {
+				month = i / 3 + 1;
+				break;
+			}
+		}
+		int day = parseDigits(chars, 8, 2);
+		int hour = parseDigits(chars, 11, 2);
+		int minute = parseDigits(chars, 14, 2);
+		int second = parseDigits(chars, 17, 2);
+		int offset = parseDigits(chars, 21, 4);
+		int year = parseDigits(chars, 26, 4);
+		if (month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0
+				|| offset < 0 || year < 0) {
+			return 0;
+		}
+		int offsetMinutes = (offset / 100) * 60 + offset % 100;
+		if (chars[20] == '-') {
+			offsetMinutes = -offsetMinutes;
+		}
+		// Days from the epoch of the civil date in the Gregorian calendar,
+		// counting years from March so that leap days end a year
+		int y = month <= 2 ? year - 1 : year;
+		int era = y / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		long days = era * 146097L + dayOfEra - 719468;
+		long seconds = days * 86400 + hour * 3600 + minute * 60 + second - offsetMinutes * 60;
+		return seconds * 1000;
+	}
+
+	/**
+	 * Parses a fixed number of decimal digits.
+	 *
+	 * @return the number, -1 if a character is not a digit
+	 */
+	private static int parseDigits(char[] chars, int offset, int count) {
+		int value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Checks if the last decoded value is a given key.
+	 *
+	 * @param key the key
+	 * @return true, if it is
+	 */
+	private boolean isValue(char[] key) {
+		if (valueLength != key.length) {
+			return false;
+		}
+		for (int i = 0; i < valueLength; i++) {
+			if (buffer[i] != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the string at the position into the buffer.
+	 *
+	 * @return true, if a well formed string was read
+	 */
+	private boolean readString() {
+		if (!consume('"')) {
+			return false;
+		}
+		valueLength = 0;
+		while (pos < end) {
+			char c = json[pos++];
+			if (c == '"') {
+				return true;
+			}
+			if (c == '\\') {
+				if (pos >= end) {
+					return false;
+				}
+				c = json[pos++];
+				switch (c) {
+				case 'n':
+					c = '\n';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 'b':
+					c = '\b';
+					break;
+				case 'f':
+					c = '\f';
+					break;
+				case 'u':
+					if (pos + 4 > end) {
+						return false;
+					}
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(json[pos++], 16);
+						if (digit < 0) {
+							return false;
+						}
+						code = (code << 4) | digit;
+					}
+					c = (char) code;
+					break;
+				default:
+					// '"', '\\' and '/' stand for themselves
+					break;
+				}
+			}
+			append(c);
+		}
+		return false;
+	}
+
+	/**
+	 * Appends a character to the buffer, growing it if needed.
+	 *
+	 * @param c the character
+	 */
+	private void append(char c) {
+		if (valueLength == buffer.length) {
+			char[] grown = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, grown, 0, valueLength);
+			buffer = grown;
+		}
+		buffer[valueLength++] = c;
+	}
+
+	/**
+	 * Skips the value at the position, of any type.
+	 *
+	 * @return true, if a well formed value was skipped
+	 */
+	private boolean skipValue() {
+		char c = peek();
+		if (c == '"') {
+			return skipString();
+		}
+		if (c == '{' || c == '[') {
+			int depth = 0;
+			while (pos < end) {
+				c = json[pos];
+				if (c == '"') {
+					if (!skipString()) {
+						return false;
+					}
+					continue;
+				}
+				pos++;
+				if (c == '{' || c == '[') {
+					depth++;
+				} else if ((c == '}' || c == ']') && --depth == 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+		// A number, true, false or null
+		int start = pos;
+		while (pos < end && ",}] \t\r\n".indexOf(json[pos]) < 0) {
+			pos++;
+		}
+		return pos > start;
+	}
+
+	/**
+	 * Skips the string at the position without decoding it.
+	 *
+	 * @return true, if a well formed string was skipped
+	 */
+	private boolean skipString() {
+		pos++;
+		while (pos < end) {
+			char c = json[pos++];
+			if (c == '\\') {
+				pos++;
+			} else if (c == '"') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the next character after white space, without consuming it.
+	 *
+	 * @return the character, 0 at the end of the line
+	 */
+	private char peek() {
+		while (pos < end && json[pos] <= ' ') {
+			pos++;
+		}
+		return pos < end ? json[pos] : 0;
+	}
+
+	/**
+	 * Consumes a character if it's the next one after white space.
+	 *
+	 * @param c the character
+	 * @return true, if consumed
+	 */
+	private boolean consume(char c) {
+		if (peek() == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+}
@@ -10,9 +10,11 @@ import oauth.signpost.OAuthConsumer;
 import oauth.signpost.basic.DefaultOAuthConsumer;
 import oauth.signpost.exception.OAuthException;
 
-import android.os.AsyncTask;
-
 import com.kanishk.tweetstream.data.TweetDataConstants;
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.Gauge;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.kanishk.tweetstream.scheduler.TaskScheduler;
 import com.kanishk.tweetstream.task.ConnectionTask.TweetUpdateListener;
 
 /**
@@ -46,10 +48,17 @@ public class TwitterClient {
 	
 	private static final int CONNECTION_TIMEOUT = 10000;
 
+	/** The Constant CONNECTS. The connections opened to the stream API. */
+	private static final Counter CONNECTS = MetricsRegistry.counter("stream.connects");
+
+	/** The Constant RECONNECTS. The connections opened after the previous one
+	 * was closed or failed, rather than reset for another stream. */
+	private static final Counter RECONNECTS = MetricsRegistry.counter("stream.reconnects");
+
 	/** The tweet listener. */
 	private TweetUpdateListener tweetListener;
 
-	/** The authorize sign. */
+	/** The authorize sign, created on the first connection. */
 	private OAuthConsumer authorizeSign;
 
 	/** The response. */
@@ -58,16 +67,65 @@ public class TwitterClient {
 	/** The task. */
 	private ConnectionTask task;
 
+	/** The batcher closing the batches of tweets. */
+	private final AdaptiveBatcher batcher = new AdaptiveBatcher(
+			TweetDataConstants.DELIVERY_LATENCY_TARGET);
+
 	/**
-	 * Instantiates a new twitter client.
+	 * Instantiates a new twitter client. The OAuth consumer is created on the
+	 * first connection, off the main thread.
 	 * 
 	 * @param tweetListener
 	 *            the tweet listener
 	 */
 	public TwitterClient(TweetUpdateListener tweetListener) {
 		this.tweetListener = tweetListener;
-		authorizeSign = new DefaultOAuthConsumer(CONSUMER_KEY, CONSUMER_SECRET);
-		authorizeSign.setTokenWithSecret(ACCESS_TOKEN, ACCESS_TOKEN_SECRET);
+		registerBatcherGauges(batcher);
+	}
+
+	/**
+	 * Registers the gauges of a batcher, replacing those of earlier clients.
+	 *
+	 * @param batcher the batcher
+	 */
+	private static void registerBatcherGauges(final AdaptiveBatcher batcher) {
+		MetricsRegistry.gauge("batcher.size", new Gauge() {
+			@Override
+			public long getValue() {
+				return batcher.getBatchSize();
+			}
+		});
+		MetricsRegistry.gauge("batcher.flush_delay", new Gauge() {
+			@Override
+			public long getValue() {
+				return batcher.getFlushDelay();
+			}
+		});
+		MetricsRegistry.gauge("batcher.p99", new Gauge() {
+			@Override
+			public long getValue() {
+				return batcher.getP99();
+			}
+		});
+		MetricsRegistry.gauge("batcher.arrival_rate", new Gauge() {
+			@Override
+			public long getValue() {
+				return Math.round(batcher.getArrivalRate());
+			}
+		});
+	}
+
+	/**
+	 * Gets the authorize sign, creating it on the first call.
+	 *
+	 * @return the authorize sign
+	 */
+	private synchronized OAuthConsumer getAuthorizeSign() {
+		if (authorizeSign == null) {
+			authorizeSign = new DefaultOAuthConsumer(CONSUMER_KEY, CONSUMER_SECRET);
+			authorizeSign.setTokenWithSecret(ACCESS_TOKEN, ACCESS_TOKEN_SECRET);
+		}
+		return authorizeSign;
 	}
 
 	/**
@@ -99,7 +157,8 @@ public class TwitterClient {
 
 	/**
 	 * Creates HTTP connection based on authorization. Uses an existing connection if
-	 * querying to the same stream.
+	 * querying to the same stream. New connections are made through the
+	 * {@link StreamConnector}, resuming the TLS session of earlier ones.
 	 * @param urlText
 	 *            the url endpoint of the stream API.
 	 * @return the response the wrapper class of the response containing connection object,
@@ -109,16 +168,17 @@ public class TwitterClient {
 	 */
 	private Response createConnection(String urlText) throws IOException {
 		if (this.response == null || !this.response.isValid()) {
+			CONNECTS.increment();
+			if (this.response != null) {
+				RECONNECTS.increment();
+			}
             try {
-                Response clientResponse;
-                URL url = new URL(urlText);
-				HttpsURLConnection connection = (HttpsURLConnection) url
-						.openConnection();
-				connection.setConnectTimeout(CONNECTION_TIMEOUT);
+                StreamConnector connector = StreamConnector.getInstance();
+				HttpsURLConnection connection = connector.open(new URL(urlText),
+						CONNECTION_TIMEOUT);
 				connection.setRequestMethod(HTTP_METHOD);
-				authorizeSign.sign(connection);
-				clientResponse = new Response(connection);
-				this.response = clientResponse;
+				getAuthorizeSign().sign(connection);
+				this.response = connector.connect(connection);
 			} catch (OAuthException e) {
 				throw new IOException(e);
 			}
@@ -146,7 +206,7 @@ public class TwitterClient {
 				task.closeAndRelease();
 			}
 			task = new ConnectionTask(tweetListener, this);
-			task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, searchText);
+			task.executeOnExecutor(TaskScheduler.NETWORK, searchText);
 		}
 	}
 
@@ -158,10 +218,30 @@ public class TwitterClient {
 	public void downloadTweets() {
 		if (task == null || !task.isRunning()) {
 			task = new ConnectionTask(tweetListener, this);
-			task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+			task.executeOnExecutor(TaskScheduler.NETWORK);
 		}
 	}
 	
+	/**
+	 * Resets the stream. The next download connects again instead of reading
+	 * the open stream, such as when switching between the sample and the
+	 * filter stream.
+	 */
+	public void resetStream() {
+		response = null;
+		batcher.resetRate();
+		closeAndRelease();
+	}
+
+	/**
+	 * Gets the batcher closing the batches of tweets read from the stream.
+	 *
+	 * @return the batcher
+	 */
+	public AdaptiveBatcher getBatcher() {
+		return batcher;
+	}
+
 	/**
 	 * Closes all open connections, cancels running tasks and release the resources.
 	 */
@@ -1,47 +1,77 @@
 package com.kanishk.tweetstream.task;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.json.JSONException;
-
+import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.SystemClock;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.kanishk.tweetstream.model.Tweet;
+import com.kanishk.tweetstream.data.DBUpdateManager;
+import com.kanishk.tweetstream.metrics.Counter;
+import com.kanishk.tweetstream.metrics.LatencyHistogram;
+import com.kanishk.tweetstream.metrics.MetricsRegistry;
+import com.kanishk.tweetstream.model.TweetRecord;
 
 /**
  * The Class TwitterTask. The async task to connect to the twitter API, parse the response
- * and notify the UI thread.
+ * and notify the UI thread. The tweets are gathered in a batch closed by an
+ * {@link AdaptiveBatcher}, parsed into pooled {@link TweetRecord}s. Each tweet
+ * is written to the ingest journal as soon as it's parsed.
  */
-public class TwitterTask extends AsyncTask<Response, Void, List<Tweet>> {
+public class TwitterTask extends AsyncTask<Response, Void, List<TweetRecord>> {
+
+	/** The Constant PARSER. The parser of each parsing thread. */
+	private static final ThreadLocal<TweetRecordParser> PARSER = new ThreadLocal<TweetRecordParser>() {
+		@Override
+		protected TweetRecordParser initialValue() {
+			return new TweetRecordParser(TweetRecord.USER_STRINGS);
+		}
+	};
+
+	/** The Constant TWEETS. The tweets read from the stream. */
+	private static final Counter TWEETS = MetricsRegistry.counter("stream.tweets");
+
+	/** The Constant LIMIT_DROPS. The tweets the stream did not deliver, from its
+	 * limit notices. */
+	private static final Counter LIMIT_DROPS = MetricsRegistry.counter("stream.limit_drops");
+
+	/** The Constant READ_ERRORS. */
+	private static final Counter READ_ERRORS = MetricsRegistry.counter("stream.read_errors");
 
-	/** The Constant MAX_TWEETS. Maximum number of tweets to fetch in a single task. */
-	private static final int MAX_TWEETS = 50;
-	
-	/** The Constant MAX_TWEETS. The delay time(milliseconds) to read a single line. A delay
-	 * of more than 3 seconds to read a single line will cause the */
-	private static final int MAX_DELAY = 3000;
+	/** The Constant PARSE_TIME. The time to parse a tweet. */
+	private static final LatencyHistogram PARSE_TIME = MetricsRegistry.histogram(
+			"parse.tweet", "ns");
 
-	/** The gson. */
-	private static Gson GSON = new Gson();
+	/** The batcher. */
+	private final AdaptiveBatcher batcher;
 
-	/** The sys time. */
-	private long sysTime;
-	
-	private List<Tweet> tweetList;
+	/** The uri of the table the tweets are written to. */
+	private final Uri dataURI;
+
+	private List<TweetRecord> tweetList;
+
+	/**
+	 * Instantiates a new twitter task.
+	 *
+	 * @param batcher the batcher closing the batches
+	 * @param dataURI the uri of the table the tweets are written to
+	 */
+	public TwitterTask(AdaptiveBatcher batcher, Uri dataURI) {
+		this.batcher = batcher;
+		this.dataURI = dataURI;
+	}
 
 	@Override
-	protected List<Tweet> doInBackground(Response... params) {
+	protected List<TweetRecord> doInBackground(Response... params) {
 		try {
 			if(params.length > 0) {
 				getTweets(params[0]);				
 			}
 		} catch (IOException e) {
+			READ_ERRORS.increment();
 			Log.e(e.toString(), e.getMessage());
 		}
 		if(isCancelled()) {
@@ -51,73 +81,70 @@ public class TwitterTask extends AsyncTask<Response, Void, List<Tweet>> {
 	}
 
 	/**
-	 * Gets the tweets.
+	 * Gets the tweets. Gathers the tweets until the batch reaches the size set
+	 * by the batcher, or its first tweet has waited for the flush delay. An
+	 * empty batch waits up to {@link AdaptiveBatcher#IDLE_TIMEOUT} for its
+	 * first tweet.
 	 *
 	 * @param response the response
-	 * @return the tweets
 	 * @throws java.io.IOException Signals that an I/O exception has occurred.
 	 */
 	private void getTweets(Response response) throws IOException {
-		tweetList = new ArrayList<>(MAX_TWEETS);
-		BufferedReader reader = response.streamReader();
-		String json = null;
-		int count = 0;
-		sysTime = SystemClock.elapsedRealtime();
-		do {
-			try {
-				// Stop running if cancelled
-				if(isCancelled()) {
+		int batchSize = batcher.getBatchSize();
+		tweetList = new ArrayList<>(batchSize);
+		long[] arrivals = new long[batchSize];
+		LineQueue lines = response.lines();
+		TweetRecordParser parser = PARSER.get();
+		DBUpdateManager journal = DBUpdateManager.getInstance();
+		TweetRecord record = TweetRecord.obtain();
+		long start = SystemClock.uptimeMillis();
+		long deadline = start + AdaptiveBatcher.IDLE_TIMEOUT;
+		try {
+			while (tweetList.size() < batchSize && !isCancelled()) {
+				long wait = deadline - SystemClock.uptimeMillis();
+				if (wait <= 0) {
 					break;
 				}
-				json = reader.readLine();
-				if(isCancelled()) {
-					break;
+				LineQueue.Line line = lines.poll(wait);
+				if (line == null) {
+					if (lines.isClosed()) {
+						response.releaseResources();
+						break;
+					}
+					continue;
 				}
-				//Returns the list if taking a long time to read from stream.
-				if (duration(sysTime) > MAX_DELAY) {
-					break;
+				long parseStart = System.nanoTime();
+				boolean parsed = parser.parse(line.chars, line.length, record);
+				long parseTime = System.nanoTime() - parseStart;
+				long arrival = line.time;
+				record.setReceivedTime(line.time);
+				lines.recycle(line);
+				if (!parsed && parser.getLimitTrack() >= 0) {
+					LIMIT_DROPS.add(response.onLimitNotice(parser.getLimitTrack()));
 				}
-				Tweet tweet = getParsedTweet(json);
-				if (tweet != null) {
-					tweetList.add(tweet);
+				if (parsed) {
+					PARSE_TIME.record(parseTime);
+					record.setParsedTime(SystemClock.uptimeMillis());
+					journal.journalTweet(dataURI, record);
+					// The batcher controls the wait from the batch opening on,
+					// the wait of a backlog queued between downloads is recorded
+					// by the tweet latency from the received time
+					arrivals[tweetList.size()] = Math.max(arrival, start);
+					tweetList.add(record);
+					record = TweetRecord.obtain();
+					batcher.onArrival(arrival);
+					if (tweetList.size() == 1) {
+						// A backlog queued before the batch opened fills it
+						// instead of closing it at its first tweet
+						deadline = Math.max(arrival, start) + batcher.getFlushDelay();
+					}
 				}
-			} catch (IOException e) {
-				response.releaseResources();
-				break;
-			} catch (JSONException e) {
-				Log.e(e.toString(), e.getMessage());
 			}
-			count++;
-		} while (count < MAX_TWEETS && json != null);
-	}
-
-	/**
-	 * Gets the parsed tweet from the JSON string.
-	 * @param json the json
-	 * @return the parsed tweet object
-	 * @throws org.json.JSONException the JSON exception
-	 */
-	private Tweet getParsedTweet(String json) throws JSONException {
-		Tweet tweet = null;
-		if (json != null && !json.isEmpty()) {
-			tweet = GSON.fromJson(json, Tweet.class);
-			if (tweet.getText() == null)
-				return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
-		return tweet;
-	}
-
-	/**
-	 * Duration. Measures the time interval(in seconds) from the last Systime.
-	 *
-	 * @param time the previous time whose difference from current time
-	 * will be measured.
-	 * @return the duration
-	 */
-	private long duration(long time) {
-		long current = SystemClock.elapsedRealtime();
-		long duration = current - time;
-		this.sysTime = current;
-		return duration;
+		record.recycle();
+		TWEETS.add(tweetList.size());
+		batcher.onFlush(SystemClock.uptimeMillis(), arrivals, tweetList.size());
 	}
 }